@@ -23,4 +23,18 @@ public class ActorServiceException {
         }
     }
 
+    public static class TooManyRequests extends BaseException
+    {
+        private long retryAfterSeconds;
+
+        public TooManyRequests(String code, String message, int responseCode, long retryAfterSeconds) {
+            super(code,message,responseCode);
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+
 }
@@ -1,6 +1,7 @@
 package org.sunbird;
 
 import akka.actor.ActorRef;
+import org.incredible.certProcessor.views.PdfConverter;
 import org.sunbird.actor.core.ActorCache;
 import org.sunbird.actor.core.ActorService;
 
@@ -27,6 +28,8 @@ public class Application {
 
     // instantiate actor system and actors
     public void init() {
+        // fonts are scanned once, before the first certificate is rendered
+        PdfConverter.init();
         List<String> actorClassPaths = new ArrayList<>();
         actorClassPaths.add("org.sunbird");
         ActorService.getInstance().init(actorSystemName, actorClassPaths);
@@ -5,18 +5,18 @@ import org.apache.commons.lang3.StringUtils;
 import org.incredible.certProcessor.CertModel;
 import org.incredible.pojos.SignatoryExtension;
 import org.incredible.pojos.ob.Issuer;
-import org.sunbird.request.Request;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class CertMapper {
 
-    private static Map<String, String> properties;
+    private Map<String, String> properties;
 
     public CertMapper(Map<String, String> properties) {
         this.properties = properties;
@@ -25,10 +25,20 @@ public class CertMapper {
     public List<CertModel> toList(Map<String, Object> request) {
         Map<String, Object> json = (Map<String, Object>) request.get(JsonKey.CERTIFICATE);
         List<Map<String, Object>> dataList = (List<Map<String, Object>>) json.get(JsonKey.DATA);
-        Issuer issuer = getIssuer((Map<String, Object>) json.get(JsonKey.ISSUER), (String) ((Map) request.get(JsonKey.CERTIFICATE)).get(JsonKey.ORG_ID));
+        return dataList.stream().map(recipientMapper(json)).collect(Collectors.toList());
+    }
+
+    /**
+     * mapper of the recipients of given certificate, issuer and signatories are built once and shared by all of them
+     *
+     * @param json certificate object of the request, its data list is not used
+     * @return function mapping one entry of certificate data to its CertModel
+     */
+    public Function<Map<String, Object>, CertModel> recipientMapper(Map<String, Object> json) {
+        Issuer issuer = getIssuer((Map<String, Object>) json.get(JsonKey.ISSUER), (String) json.get(JsonKey.ORG_ID));
         SignatoryExtension[] signatoryArr = getSignatoryArray((List<Map<String, Object>>) json.get(JsonKey.SIGNATORY_LIST));
-        List<CertModel> certList = dataList.stream().map(data -> getCertModel(data)).collect(Collectors.toList());
-        certList.stream().forEach(cert -> {
+        return data -> {
+            CertModel cert = getCertModel(data);
             cert.setIssuer(issuer);
             cert.setSignatoryList(signatoryArr);
             cert.setCourseName((String) json.get(JsonKey.COURSE_NAME));
@@ -41,8 +51,8 @@ public class CertMapper {
                 cert.setIssuedDate((String) json.get(JsonKey.ISSUE_DATE));
             }
             cert.setCertificateName((String) json.get(JsonKey.CERTIFICATE_NAME));
-        });
-        return certList;
+            return cert;
+        };
     }
 
     private String getCurrentDate() {
@@ -51,12 +61,12 @@ public class CertMapper {
         return dtf.format(now);
     }
 
-    private static SignatoryExtension[] getSignatoryArray(List<Map<String, Object>> signatoryList) {
+    private SignatoryExtension[] getSignatoryArray(List<Map<String, Object>> signatoryList) {
         return signatoryList.stream().map(signatory ->
                 getSignatory(signatory)).toArray(SignatoryExtension[]::new);
     }
 
-    private static SignatoryExtension getSignatory(Map<String, Object> signatory) {
+    private SignatoryExtension getSignatory(Map<String, Object> signatory) {
         SignatoryExtension signatoryExt = new SignatoryExtension(properties.get(JsonKey.SIGNATORY_EXTENSION));
         signatoryExt.setIdentity((String) signatory.get(JsonKey.ID));
         signatoryExt.setDesignation((String) signatory.get(JsonKey.DESIGNATION));
@@ -66,7 +76,7 @@ public class CertMapper {
     }
 
 
-    private static Issuer getIssuer(Map<String, Object> issuerData, String rootOrgId) {
+    private Issuer getIssuer(Map<String, Object> issuerData, String rootOrgId) {
         Issuer issuer = new Issuer(properties.get(JsonKey.CONTEXT));
         issuer.setName((String) issuerData.get(JsonKey.NAME));
         issuer.setUrl((String) issuerData.get(JsonKey.URL));
@@ -90,7 +100,7 @@ public class CertMapper {
         return certModel;
     }
 
-    private static List<String> validatePublicKeys(List<String> publicKeys, String rootOrgId) {
+    private List<String> validatePublicKeys(List<String> publicKeys, String rootOrgId) {
         List<String> validatedPublicKeys = new ArrayList<>();
         publicKeys.forEach((publicKey) -> {
             if (!publicKey.startsWith("http")) {
@@ -20,6 +20,28 @@ public class CertsConstant {
     private static final String ACCESS_CODE_LENGTH = "6";
     public static final String DOWNLOAD_LINK_EXPIRY_TIMEOUT = "download_link_expiry_timeout";
     private static final String LINK_TIMEOUT = "600";
+    private static final int SIGN_PARALLELISM = 4;
+    private static final int UPLOAD_PARALLELISM = 4;
+    private static final int STAGE_BUFFER_SIZE = 2;
+    private static final int MAX_IN_FLIGHT_RECIPIENTS = 500;
+    private static final String BLOCKING_IO_MODE = "auto";
+    private static final int BLOCKING_IO_POOL_SIZE = 64;
+    private static final int SIGN_MAX_CONCURRENCY = 64;
+    private static final int STORAGE_MAX_CONCURRENCY = 64;
+    private static final int TEMPLATE_MAX_CONCURRENCY = 8;
+    private static final int IDEMPOTENCY_MAX_ENTRIES = 200;
+    private static final int IDEMPOTENCY_TTL_MINUTES = 30;
+    private static final String TEMPLATE_CACHE_DIR = "conf/template-cache/";
+    private static final int TEMPLATE_CACHE_MAX_MB = 512;
+    private static final int RESOURCE_CACHE_MAX_MB = 64;
+    private static final int RESOURCE_CACHE_TTL_MINUTES = 10;
+    private static final int RENDER_TIMEOUT_SECONDS = 60;
+    private static final int RENDER_MAX_PAGES = 20;
+    private static final int RENDER_MAX_MB = 20;
+    private static final int STAMP_MIN_RECIPIENTS = 20;
+    private static final String JOB_JOURNAL_DIR = "conf/jobs/";
+    private static final int JOB_WORKERS = 1;
+    private static final int JOB_RETENTION_HOURS = 24;
     private static final String SIGNATORY_EXTENSION = "v1/extensions/SignatoryExtension";
     private static final String DOMAIN_URL = getDomainUrlFromEnv();
     private static final String CONTAINER_NAME = getContainerNameFromEnv();
@@ -172,4 +194,200 @@ public class CertsConstant {
         return SLUG;
     }
 
+    /**
+     * recipients signed at the same time, bounded by the capacity of the signing service
+     */
+    public int getSignParallelism() {
+        return getIntPropertyFromEnv(JsonKey.SIGN_PARALLELISM, SIGN_PARALLELISM);
+    }
+
+    /**
+     * recipients rendered to html and pdf at the same time, rendering is cpu bound so it defaults to the cores
+     */
+    public int getRenderParallelism() {
+        return getIntPropertyFromEnv(JsonKey.RENDER_PARALLELISM, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * recipients uploaded at the same time, bounded by the capacity of the cloud storage
+     */
+    public int getUploadParallelism() {
+        return getIntPropertyFromEnv(JsonKey.UPLOAD_PARALLELISM, UPLOAD_PARALLELISM);
+    }
+
+    /**
+     * recipients a generation stage may hold for the next one before it is back pressured
+     */
+    public int getStageBufferSize() {
+        return getIntPropertyFromEnv(JsonKey.STAGE_BUFFER_SIZE, STAGE_BUFFER_SIZE);
+    }
+
+    /**
+     * recipients admitted for generation at the same time across requests and jobs, further requests get 429
+     */
+    public int getMaxInFlightRecipients() {
+        return getIntPropertyFromEnv(JsonKey.MAX_IN_FLIGHT_RECIPIENTS, MAX_IN_FLIGHT_RECIPIENTS);
+    }
+
+    /**
+     * threads of the blocking remote calls: virtual, platform or auto (virtual when the jvm supports it)
+     */
+    public String getBlockingIoMode() {
+        String mode = getPropertyFromEnv(JsonKey.BLOCKING_IO_MODE);
+        return StringUtils.isNotBlank(mode) ? mode.trim().toLowerCase() : BLOCKING_IO_MODE;
+    }
+
+    /**
+     * platform threads of the blocking remote calls, used when virtual threads are not available
+     */
+    public int getBlockingIoPoolSize() {
+        return getIntPropertyFromEnv(JsonKey.BLOCKING_IO_POOL_SIZE, BLOCKING_IO_POOL_SIZE);
+    }
+
+    /**
+     * calls to the enc service for signing at the same time across batches
+     */
+    public int getSignMaxConcurrency() {
+        return getIntPropertyFromEnv(JsonKey.SIGN_MAX_CONCURRENCY, SIGN_MAX_CONCURRENCY);
+    }
+
+    /**
+     * uploads and downloads to the cloud storage at the same time across batches
+     */
+    public int getStorageMaxConcurrency() {
+        return getIntPropertyFromEnv(JsonKey.STORAGE_MAX_CONCURRENCY, STORAGE_MAX_CONCURRENCY);
+    }
+
+    /**
+     * html template downloads at the same time across batches
+     */
+    public int getTemplateMaxConcurrency() {
+        return getIntPropertyFromEnv(JsonKey.TEMPLATE_MAX_CONCURRENCY, TEMPLATE_MAX_CONCURRENCY);
+    }
+
+    /**
+     * generate replies kept for retries with the same idempotency key, least recently used ones are dropped first
+     */
+    public int getIdempotencyMaxEntries() {
+        return getIntPropertyFromEnv(JsonKey.IDEMPOTENCY_MAX_ENTRIES, IDEMPOTENCY_MAX_ENTRIES);
+    }
+
+    /**
+     * minutes a finished generate reply is kept for retries
+     */
+    public int getIdempotencyTtlMinutes() {
+        return getIntPropertyFromEnv(JsonKey.IDEMPOTENCY_TTL_MINUTES, IDEMPOTENCY_TTL_MINUTES);
+    }
+
+    /**
+     * directory of the extracted html templates shared by all orgs and tags, kept across restarts
+     */
+    public String getTemplateCacheDir() {
+        String cacheDir = getPropertyFromEnv(JsonKey.TEMPLATE_CACHE_DIR);
+        return StringUtils.isNotBlank(cacheDir) ? cacheDir : TEMPLATE_CACHE_DIR;
+    }
+
+    /**
+     * size of the template cache in megabytes, least recently used templates are removed above it
+     */
+    public int getTemplateCacheMaxMb() {
+        return getIntPropertyFromEnv(JsonKey.TEMPLATE_CACHE_MAX_MB, TEMPLATE_CACHE_MAX_MB);
+    }
+
+    /**
+     * size in megabytes of the cache of remote images and styles referenced by certificates
+     */
+    public int getResourceCacheMaxMb() {
+        return getIntPropertyFromEnv(JsonKey.RESOURCE_CACHE_MAX_MB, RESOURCE_CACHE_MAX_MB);
+    }
+
+    /**
+     * minutes a cached remote resource is used before it is revalidated
+     */
+    public int getResourceCacheTtlMinutes() {
+        return getIntPropertyFromEnv(JsonKey.RESOURCE_CACHE_TTL_MINUTES, RESOURCE_CACHE_TTL_MINUTES);
+    }
+
+    /**
+     * seconds the pdf of one certificate may take to render before the recipient fails
+     */
+    public int getRenderTimeoutSeconds() {
+        return getIntPropertyFromEnv(JsonKey.RENDER_TIMEOUT_SECONDS, RENDER_TIMEOUT_SECONDS);
+    }
+
+    /**
+     * pages the pdf of one certificate may have, a certificate growing past it fails
+     */
+    public int getRenderMaxPages() {
+        return getIntPropertyFromEnv(JsonKey.RENDER_MAX_PAGES, RENDER_MAX_PAGES);
+    }
+
+    /**
+     * size in megabytes the pdf of one certificate may have, a certificate growing past it fails
+     */
+    public int getRenderMaxMb() {
+        return getIntPropertyFromEnv(JsonKey.RENDER_MAX_MB, RENDER_MAX_MB);
+    }
+
+    /**
+     * true when the certificates of a batch are stamped on a background converted once for the batch
+     */
+    public boolean isStampRender() {
+        return Boolean.parseBoolean(StringUtils.trim(getPropertyFromEnv(JsonKey.STAMP_RENDER)));
+    }
+
+    /**
+     * recipients a batch needs for stamping, preparing the background costs a few conversions
+     */
+    public int getStampMinRecipients() {
+        return getIntPropertyFromEnv(JsonKey.STAMP_MIN_RECIPIENTS, STAMP_MIN_RECIPIENTS);
+    }
+
+    /**
+     * profile the certificate pdfs are written with, compact or the default of the converter
+     */
+    public String getPdfProfile() {
+        return StringUtils.trim(getPropertyFromEnv(JsonKey.PDF_PROFILE));
+    }
+
+    /**
+     * dpi the images of a compact pdf are downsampled to, 0 keeps them as they are
+     */
+    public int getPdfImageDpi() {
+        return getIntPropertyFromEnv(JsonKey.PDF_IMAGE_DPI, 0);
+    }
+
+    /**
+     * true when certificates are rendered into memory buffers and uploaded from them instead of working files
+     */
+    public boolean isInMemoryRender() {
+        return Boolean.parseBoolean(StringUtils.trim(getPropertyFromEnv(JsonKey.IN_MEMORY_RENDER)));
+    }
+
+    /**
+     * directory of the journal which keeps accepted async jobs across restarts
+     */
+    public String getJobJournalDir() {
+        String journalDir = getPropertyFromEnv(JsonKey.JOB_JOURNAL_DIR);
+        return StringUtils.isNotBlank(journalDir) ? journalDir : JOB_JOURNAL_DIR;
+    }
+
+    public int getJobWorkers() {
+        return getIntPropertyFromEnv(JsonKey.JOB_WORKERS, JOB_WORKERS);
+    }
+
+    public int getJobRetentionHours() {
+        return getIntPropertyFromEnv(JsonKey.JOB_RETENTION_HOURS, JOB_RETENTION_HOURS);
+    }
+
+    private static int getIntPropertyFromEnv(String property, int defaultValue) {
+        String value = getPropertyFromEnv(property);
+        try {
+            return StringUtils.isNotBlank(value) ? Integer.parseInt(value.trim()) : defaultValue;
+        } catch (NumberFormatException ex) {
+            logger.error("CertsConstant:getIntPropertyFromEnv:invalid value " + value + " for " + property + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
 }
@@ -80,6 +80,8 @@ public interface JsonKey {
     String KEY_ID = "keyId";
     String JSON_URL = "jsonUrl";
     String PDF_URL = "pdfUrl";
+    String BATCH_PDF = "batchPdf";
+    String BATCH_PDF_URL = "batchPdfUrl";
     String UNIQUE_ID = "id";
     String GENERATE_CERT = "generateCert";
     String PUBLIC_KEY_URL = "PUBLIC_KEY_URL";
@@ -89,4 +91,62 @@ public interface JsonKey {
     String ACCESS_CODE = "accessCode";
     String JSON_DATA = "jsonData";
     String SLUG = "sunbird_cert_slug";
+    String STATUS = "status";
+    String FAILED = "failed";
+    String SIGN_PARALLELISM = "sunbird_cert_sign_parallelism";
+    String RENDER_PARALLELISM = "sunbird_cert_render_parallelism";
+    String UPLOAD_PARALLELISM = "sunbird_cert_upload_parallelism";
+    String STAGE_BUFFER_SIZE = "sunbird_cert_stage_buffer_size";
+    String MAX_IN_FLIGHT_RECIPIENTS = "sunbird_cert_max_in_flight_recipients";
+    String BLOCKING_IO_MODE = "sunbird_cert_blocking_io_mode";
+    String BLOCKING_IO_POOL_SIZE = "sunbird_cert_blocking_io_pool_size";
+    String SIGN_MAX_CONCURRENCY = "sunbird_cert_sign_max_concurrency";
+    String STORAGE_MAX_CONCURRENCY = "sunbird_cert_storage_max_concurrency";
+    String TEMPLATE_MAX_CONCURRENCY = "sunbird_cert_template_max_concurrency";
+    String IDEMPOTENCY_KEY = "idempotencyKey";
+    String IDEMPOTENCY_MAX_ENTRIES = "sunbird_cert_idempotency_max_entries";
+    String IDEMPOTENCY_TTL_MINUTES = "sunbird_cert_idempotency_ttl_minutes";
+    String TEMPLATE_CACHE_DIR = "sunbird_cert_template_cache_dir";
+    String TEMPLATE_CACHE_MAX_MB = "sunbird_cert_template_cache_max_mb";
+    String IN_MEMORY_RENDER = "sunbird_cert_in_memory_render";
+    String RESOURCE_CACHE_MAX_MB = "sunbird_cert_resource_cache_max_mb";
+    String RESOURCE_CACHE_TTL_MINUTES = "sunbird_cert_resource_cache_ttl_minutes";
+    String RENDER_TIMEOUT_SECONDS = "sunbird_cert_render_timeout_seconds";
+    String RENDER_MAX_PAGES = "sunbird_cert_render_max_pages";
+    String RENDER_MAX_MB = "sunbird_cert_render_max_mb";
+    String STAMP_RENDER = "sunbird_cert_stamp_render";
+    String PDF_PROFILE = "sunbird_cert_pdf_profile";
+    String PDF_IMAGE_DPI = "sunbird_cert_pdf_image_dpi";
+    String STAMP_MIN_RECIPIENTS = "sunbird_cert_stamp_min_recipients";
+    String REQUEST = "request";
+    String REGISTER_TEMPLATE = "registerTemplate";
+    String UNREGISTER_TEMPLATE = "unregisterTemplate";
+    String GET_TEMPLATES = "getTemplates";
+    String TEMPLATES = "templates";
+    String PINNED = "pinned";
+    String VARIABLES = "variables";
+    String ENGINE = "engine";
+    String TEMPLATE_MILLIS = "templateMillis";
+    String ANALYSE_MILLIS = "analyseMillis";
+    String RENDER_MILLIS = "renderMillis";
+    String GENERATE_CERT_ASYNC = "generateCertAsync";
+    String GET_METRICS = "getMetrics";
+    String GENERATE_CERT_STREAM = "generateCertStream";
+    String STREAM = "stream";
+    String TYPE = "type";
+    String INDEX = "index";
+    String ELAPSED_MILLIS = "elapsedMillis";
+    String DATA_COUNT = "dataCount";
+    String REQUEST_BODY_FILE = "requestBodyFile";
+    String GET_JOB_STATUS = "getJobStatus";
+    String JOB_ID = "jobId";
+    String TOTAL = "total";
+    String PROCESSED = "processed";
+    String FAILED_COUNT = "failedCount";
+    String RESULTS = "results";
+    String CREATED_ON = "createdOn";
+    String UPDATED_ON = "updatedOn";
+    String JOB_JOURNAL_DIR = "sunbird_cert_job_journal_dir";
+    String JOB_WORKERS = "sunbird_cert_job_workers";
+    String JOB_RETENTION_HOURS = "sunbird_cert_job_retention_hours";
 }
@@ -0,0 +1,67 @@
+package org.sunbird.cert.actor;
+
+import org.apache.log4j.Logger;
+import org.sunbird.BaseActor;
+import org.sunbird.BaseException;
+import org.sunbird.JsonKey;
+import org.sunbird.actor.core.ActorConfig;
+import org.sunbird.cert.job.CertificateJob;
+import org.sunbird.cert.job.JobManager;
+import org.sunbird.message.IResponseMessage;
+import org.sunbird.message.ResponseCode;
+import org.sunbird.request.Request;
+import org.sunbird.response.Response;
+
+import java.text.MessageFormat;
+
+/**
+ * This actor accepts certificate generation requests as background jobs and reports their status.
+ */
+@ActorConfig(
+        tasks = {JsonKey.GENERATE_CERT_ASYNC, JsonKey.GET_JOB_STATUS},
+        asyncTasks = {},
+        dispatcher = "generation-dispatcher"
+)
+public class CertificateJobActor extends BaseActor {
+    private Logger logger = Logger.getLogger(CertificateJobActor.class);
+
+    @Override
+    public void preStart() throws Exception {
+        super.preStart();
+        // jobs left over in the journal are resumed as soon as the actor system is up
+        JobManager.init(getContext().getSystem());
+    }
+
+    @Override
+    public void onReceive(Request request) throws Throwable {
+        String operation = request.getOperation();
+        if (JsonKey.GENERATE_CERT_ASYNC.equalsIgnoreCase(operation)) {
+            submitJob(request);
+        } else if (JsonKey.GET_JOB_STATUS.equalsIgnoreCase(operation)) {
+            getJobStatus(request);
+        } else {
+            onReceiveUnsupportedMessage(operation);
+        }
+    }
+
+    private void submitJob(Request request) throws BaseException {
+        CertificateJob job = JobManager.getInstance().submit(request.getRequest());
+        logger.info("CertificateJobActor:submitJob:job accepted " + job.getJobId());
+        Response response = new Response();
+        response.put(JsonKey.JOB_ID, job.getJobId());
+        response.put(JsonKey.STATUS, CertificateJob.Status.ACCEPTED.getValue());
+        response.put(JsonKey.TOTAL, job.getTotal());
+        sender().tell(response, getSelf());
+    }
+
+    private void getJobStatus(Request request) throws BaseException {
+        String jobId = (String) request.getRequest().get(JsonKey.JOB_ID);
+        CertificateJob job = JobManager.getInstance().getJob(jobId);
+        if (null == job) {
+            throw new BaseException("RESOURCE_NOT_FOUND", MessageFormat.format(IResponseMessage.JOB_NOT_FOUND, jobId), ResponseCode.RESOURCE_NOT_FOUND.getCode());
+        }
+        Response response = new Response();
+        response.getResult().putAll(job.toMap());
+        sender().tell(response, getSelf());
+    }
+}
@@ -0,0 +1,76 @@
+package org.sunbird.cert.actor;
+
+import org.apache.log4j.Logger;
+import org.sunbird.BaseActor;
+import org.sunbird.CertsConstant;
+import org.sunbird.JsonKey;
+import org.sunbird.actor.core.ActorConfig;
+import org.sunbird.cert.actor.operation.CertActorOperation;
+import org.sunbird.cloud.storage.IStorageService;
+import org.sunbird.cloud.storage.factory.StorageConfig;
+import org.sunbird.cloud.storage.factory.StorageServiceFactory;
+import org.sunbird.request.Request;
+import org.sunbird.response.Response;
+import scala.Some;
+
+/**
+ * This actor is responsible for signing the download url of a certificate.
+ * It runs on its own dispatcher so the cheap signing calls are not queued behind long generations.
+ */
+@ActorConfig(
+        tasks = {JsonKey.GET_SIGN_URL},
+        asyncTasks = {},
+        dispatcher = "sign-url-dispatcher"
+)
+public class CertificateSignUrlActor extends BaseActor {
+    private Logger logger = Logger.getLogger(CertificateSignUrlActor.class);
+    private static CertsConstant certVar = new CertsConstant();
+
+    @Override
+    public void onReceive(Request request) throws Throwable {
+        String operation = request.getOperation();
+        if (CertActorOperation.GET_SIGN_URL.getOperation().equalsIgnoreCase(operation)) {
+            generateSignUrl(request);
+        } else {
+            onReceiveUnsupportedMessage(operation);
+        }
+    }
+
+	private void generateSignUrl(Request request) {
+        try {
+            logger.info("CertificateSignUrlActor:generateSignUrl:generate request got : ".concat(request.getRequest()+""));
+            String uri = (String) request.getRequest().get(JsonKey.PDF_URL);
+            logger.info("CertificateSignUrlActor:generateSignUrl:generate sign url method called for uri: ".concat(uri));
+            IStorageService storageService = getStorageService();
+            String signUrl = storageService.getSignedURL(certVar.getCONTAINER_NAME(), uri, Some.apply(getTimeoutInSeconds()),
+                    Some.apply("r"));
+            logger.info("CertificateSignUrlActor:generateSignUrl:signedUrl got: ".concat(signUrl));
+            Response response = new Response();
+            response.put(JsonKey.RESPONSE, JsonKey.SUCCESS);
+            response.put(JsonKey.SIGNED_URL, signUrl);
+            sender().tell(response, self());
+        }
+        catch (Exception e){
+            logger.error("CertificateSignUrlActor:generateSignUrl: error in genrerating sign url "+ e);
+            Response response = new Response();
+            response.put(JsonKey.RESPONSE, "failure");
+            response.put(JsonKey.SIGNED_URL, "");
+            sender().tell(response, self());
+        }
+
+	}
+
+
+    private IStorageService getStorageService() {
+		StorageConfig storageConfig = new StorageConfig(certVar.getCloudStorageType(), certVar.getAzureStorageKey(), certVar.getAzureStorageSecret());
+		logger.info("CertificateSignUrlActor:getStorageService:storage object formed:".concat(storageConfig.toString()));
+		IStorageService storageService = StorageServiceFactory.getStorageService(storageConfig);
+		return storageService;
+	}
+
+    private int getTimeoutInSeconds() {
+        String timeoutInSecondsStr = CertsConstant.getExpiryLink(CertsConstant.DOWNLOAD_LINK_EXPIRY_TIMEOUT);
+        logger.info("CertificateSignUrlActor:getTimeoutInSeconds:timeout got: ".concat(timeoutInSecondsStr));
+        return Integer.parseInt(timeoutInSecondsStr);
+      }
+}
@@ -0,0 +1,187 @@
+package org.sunbird.cert.actor;
+
+import akka.NotUsed;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.japi.Pair;
+import akka.stream.javadsl.Source;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.incredible.certProcessor.CertModel;
+import org.sunbird.BaseActor;
+import org.sunbird.BaseException;
+import org.sunbird.JsonKey;
+import org.sunbird.actor.core.ActorConfig;
+import org.sunbird.cert.admission.AdmissionControl;
+import org.sunbird.cert.processor.BatchCertificateProcessor;
+import org.sunbird.cert.processor.CertificateBatch;
+import org.sunbird.cert.processor.CertificateProcessor;
+import org.sunbird.cert.processor.CertificateRequestReader;
+import org.sunbird.message.IResponseMessage;
+import org.sunbird.request.Request;
+import org.sunbird.response.Response;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.io.File;
+import java.text.MessageFormat;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * This actor is responsible for certificate generation with a streamed response.
+ * It only prepares the batch and replies with the source of the result records, the generation runs when
+ * the caller consumes the source: one record per recipient as soon as it is uploaded, then a summary record.
+ * When the request body was spooled to a file, recipients are read from it one at a time while generating.
+ */
+@ActorConfig(
+        tasks = {JsonKey.GENERATE_CERT_STREAM},
+        asyncTasks = {},
+        dispatcher = "generation-dispatcher"
+)
+public class CertificateStreamActor extends BaseActor {
+    private Logger logger = Logger.getLogger(CertificateStreamActor.class);
+    private static AdmissionControl admissionControl = AdmissionControl.getInstance();
+    private static final String RESULT = "result";
+    private static final String SUMMARY = "summary";
+
+    @Override
+    public void onReceive(Request request) throws Throwable {
+        if (JsonKey.GENERATE_CERT_STREAM.equalsIgnoreCase(request.getOperation())) {
+            generateCertificateStream(request);
+        } else {
+            onReceiveUnsupportedMessage(request.getOperation());
+        }
+    }
+
+    private void generateCertificateStream(Request request) throws BaseException {
+        String bodyFile = (String) request.getRequest().get(JsonKey.REQUEST_BODY_FILE);
+        CertificateBatch batch;
+        int total;
+        try {
+            batch = CertificateBatch.fromRequest(request.getRequest());
+            Map<String, Object> certificate = (Map<String, Object>) request.getRequest().get(JsonKey.CERTIFICATE);
+            total = null == bodyFile ? batch.getCertModelList().size() : (int) certificate.get(JsonKey.DATA_COUNT);
+            admissionControl.admit(total);
+        } catch (BaseException ex) {
+            deleteBodyFile(bodyFile);
+            throw ex;
+        }
+        AtomicInteger pending = new AtomicInteger(total);
+        Runnable releaseAll = () -> {
+            admissionControl.release(pending.getAndSet(0));
+            admissionControl.requestDone();
+            deleteBodyFile(bodyFile);
+        };
+        ActorSystem system = getContext().getSystem();
+        ActorRef sender = sender();
+        ActorRef self = getSelf();
+        // the template is downloaded off the dispatcher, the reply is sent once it is loaded
+        batch.loadTemplateAsync().whenComplete((loaded, ex) -> {
+            if (null != ex) {
+                releaseAll.run();
+                sender.tell(ex instanceof CompletionException && null != ex.getCause() ? ex.getCause() : ex, self);
+                return;
+            }
+            Response response = new Response();
+            response.put(JsonKey.STREAM, getRecords(batch, total, bodyFile, pending, releaseAll, request.getTimeout(), system));
+            sender.tell(response, self);
+        });
+    }
+
+    /**
+     * source of the result records, the generation starts when the source is first consumed
+     */
+    private Source<Map<String, Object>, ?> getRecords(CertificateBatch batch, int total, String bodyFile, AtomicInteger pending,
+                                                      Runnable releaseAll, int timeout, ActorSystem system) {
+        BatchCertificateProcessor processor = new BatchCertificateProcessor(batch.getCertificateProcessor(), system);
+        AtomicBoolean claimed = new AtomicBoolean();
+        AtomicInteger failed = new AtomicInteger();
+        Source<Map<String, Object>, ?> records = Source.lazily(() -> {
+            if (!claimed.compareAndSet(false, true)) {
+                return Source.<Map<String, Object>>empty();
+            }
+            long startTime = System.currentTimeMillis();
+            Source<Pair<Integer, Map<String, Object>>, NotUsed> results = null == bodyFile
+                    ? processor.source(batch.getCertModelList())
+                    : processor.source(readRecipients(new File(bodyFile), batch.getRecipientMapper()));
+            return results
+                    .map(result -> {
+                        Map<String, Object> record = new HashMap<>(result.second());
+                        record.put(JsonKey.TYPE, RESULT);
+                        record.put(JsonKey.INDEX, result.first());
+                        if (JsonKey.FAILED.equals(record.get(JsonKey.STATUS))) {
+                            failed.incrementAndGet();
+                        }
+                        pending.decrementAndGet();
+                        admissionControl.release(1);
+                        return record;
+                    })
+                    .concat(Source.lazily(() -> Source.fromCompletionStage(processor.completeBatchPdf().thenApply(Optional::ofNullable))
+                            .map(batchPdfUrl -> getSummary(total, failed.get(), startTime, batchPdfUrl.orElse(null)))))
+                    .watchTermination((mat, done) -> {
+                        done.whenComplete((result, ex) -> {
+                            releaseAll.run();
+                            // a stream cancelled before its summary leaves the merged pdf incomplete
+                            batch.getCertificateProcessor().discardBatchPdf();
+                        });
+                        return mat;
+                    });
+        });
+        // a reply nobody consumes (caller timed out) must not keep its recipients admitted
+        system.scheduler().scheduleOnce(FiniteDuration.create(timeout * 2L, TimeUnit.SECONDS), () -> {
+            if (claimed.compareAndSet(false, true)) {
+                logger.info("CertificateStreamActor:generateCertificateStream:stream of " + total + " recipients was never consumed");
+                releaseAll.run();
+            }
+        }, system.dispatcher());
+        return records;
+    }
+
+    /**
+     * recipients of a streamed request body, read one entry at a time as the pipeline asks for more and
+     * validated as they are read, an invalid entry becomes a failed result instead of failing the batch
+     */
+    private Source<BatchCertificateProcessor.RecipientWork, NotUsed> readRecipients(File bodyFile, Function<Map<String, Object>, CertModel> recipientMapper) {
+        return new CertificateRequestReader(bodyFile).dataSource()
+                .zipWithIndex()
+                .map(entry -> toRecipient(entry.second().intValue(), entry.first(), recipientMapper));
+    }
+
+    private BatchCertificateProcessor.RecipientWork toRecipient(int index, Map<String, Object> data, Function<Map<String, Object>, CertModel> recipientMapper) {
+        Object recipientName = data.get(JsonKey.RECIPIENT_NAME);
+        if (!(recipientName instanceof String) || StringUtils.isEmpty((String) recipientName)) {
+            String errorMsg = MessageFormat.format(IResponseMessage.MANDATORY_PARAMETER_MISSING,
+                    JsonKey.CERTIFICATE + "." + JsonKey.DATA + "." + JsonKey.RECIPIENT_NAME);
+            Object recipientId = data.get(JsonKey.RECIPIENT_ID);
+            return BatchCertificateProcessor.RecipientWork.failed(index,
+                    CertificateProcessor.getFailureResult(recipientId instanceof String ? (String) recipientId : null, errorMsg));
+        }
+        return BatchCertificateProcessor.RecipientWork.of(index, recipientMapper.apply(data));
+    }
+
+    private void deleteBodyFile(String bodyFile) {
+        if (null != bodyFile) {
+            FileUtils.deleteQuietly(new File(bodyFile));
+        }
+    }
+
+    private Map<String, Object> getSummary(int total, int failed, long startTime, String batchPdfUrl) {
+        Map<String, Object> summary = new HashMap<>();
+        summary.put(JsonKey.TYPE, SUMMARY);
+        summary.put(JsonKey.TOTAL, total);
+        summary.put(JsonKey.SUCCESS, total - failed);
+        summary.put(JsonKey.FAILED_COUNT, failed);
+        summary.put(JsonKey.ELAPSED_MILLIS, System.currentTimeMillis() - startTime);
+        if (null != batchPdfUrl) {
+            summary.put(JsonKey.BATCH_PDF_URL, batchPdfUrl);
+        }
+        return summary;
+    }
+}
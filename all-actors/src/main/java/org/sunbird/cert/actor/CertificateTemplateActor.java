@@ -0,0 +1,74 @@
+package org.sunbird.cert.actor;
+
+import akka.actor.ActorRef;
+import org.apache.log4j.Logger;
+import org.sunbird.BaseActor;
+import org.sunbird.BaseException;
+import org.sunbird.JsonKey;
+import org.sunbird.actor.core.ActorConfig;
+import org.sunbird.cert.template.TemplateRegistry;
+import org.sunbird.request.Request;
+import org.sunbird.response.Response;
+
+import java.util.concurrent.CompletionException;
+
+/**
+ * This actor registers html templates ahead of the batches using them, warming them up and keeping them
+ * pinned in the template cache, and unregisters them.
+ */
+@ActorConfig(
+        tasks = {JsonKey.REGISTER_TEMPLATE, JsonKey.UNREGISTER_TEMPLATE, JsonKey.GET_TEMPLATES},
+        asyncTasks = {},
+        dispatcher = "generation-dispatcher"
+)
+public class CertificateTemplateActor extends BaseActor {
+    private Logger logger = Logger.getLogger(CertificateTemplateActor.class);
+    private TemplateRegistry templateRegistry = TemplateRegistry.getInstance();
+
+    @Override
+    public void onReceive(Request request) throws Throwable {
+        String operation = request.getOperation();
+        if (JsonKey.REGISTER_TEMPLATE.equalsIgnoreCase(operation)) {
+            registerTemplate(request);
+        } else if (JsonKey.UNREGISTER_TEMPLATE.equalsIgnoreCase(operation)) {
+            unregisterTemplate(request);
+        } else if (JsonKey.GET_TEMPLATES.equalsIgnoreCase(operation)) {
+            getTemplates();
+        } else {
+            onReceiveUnsupportedMessage(operation);
+        }
+    }
+
+    private void registerTemplate(Request request) {
+        String htmlTemplate = (String) request.getRequest().get(JsonKey.HTML_TEMPLATE);
+        ActorRef sender = sender();
+        ActorRef self = getSelf();
+        // warm up runs off the dispatcher, the reply is sent once it is done
+        templateRegistry.register(htmlTemplate).whenComplete((report, ex) -> {
+            if (null != ex) {
+                Throwable cause = ex instanceof CompletionException && null != ex.getCause() ? ex.getCause() : ex;
+                logger.error("CertificateTemplateActor:registerTemplate:warm up of " + htmlTemplate + " failed : " + cause.getMessage(), cause);
+                sender.tell(cause, self);
+                return;
+            }
+            Response response = new Response();
+            response.getResult().putAll(report);
+            sender.tell(response, self);
+        });
+    }
+
+    private void unregisterTemplate(Request request) throws BaseException {
+        String htmlTemplate = (String) request.getRequest().get(JsonKey.HTML_TEMPLATE);
+        templateRegistry.unregister(htmlTemplate);
+        Response response = new Response();
+        response.put(JsonKey.HTML_TEMPLATE, htmlTemplate);
+        response.put(JsonKey.PINNED, false);
+        sender().tell(response, getSelf());
+    }
+
+    private void getTemplates() {
+        Response response = new Response();
+        response.put(JsonKey.TEMPLATES, templateRegistry.getTemplates());
+        sender().tell(response, getSelf());
+    }
+}
@@ -7,7 +7,13 @@ package org.sunbird.cert.actor.operation;
  */
 public enum CertActorOperation {
 	GENERATE_CERTIFICATE("generateCert"),
-	GET_SIGN_URL("getSignUrl");
+	GET_SIGN_URL("getSignUrl"),
+	GENERATE_CERTIFICATE_ASYNC("generateCertAsync"),
+	GET_JOB_STATUS("getJobStatus"),
+	GENERATE_CERTIFICATE_STREAM("generateCertStream"),
+	REGISTER_TEMPLATE("registerTemplate"),
+	UNREGISTER_TEMPLATE("unregisterTemplate"),
+	GET_TEMPLATES("getTemplates");
 
 	private String operation;
 
@@ -0,0 +1,283 @@
+package org.sunbird.cert.admission;
+
+import org.apache.log4j.Logger;
+import org.sunbird.ActorServiceException;
+import org.sunbird.CertsConstant;
+import org.sunbird.message.IResponseMessage;
+import org.sunbird.message.ResponseCode;
+import org.sunbird.metrics.CertMetrics;
+
+import java.text.MessageFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class admits generation work by the number of recipients in flight, not by the number of requests,
+ * so one large batch weighs as much as many small ones. Work over the capacity is rejected right away with
+ * the time after which enough recipients should have drained, instead of waiting in a mailbox.
+ * A request larger than the whole capacity is still admitted when nothing else is in flight.
+ * Queued jobs are not rejected, they hold a {@link Lease} and their recipients are admitted a chunk at a time
+ * as their pipeline takes them, waiting for capacity when there is none.
+ */
+public class AdmissionControl {
+    private static Logger logger = Logger.getLogger(AdmissionControl.class);
+    private static final long RATE_WINDOW_MILLIS = 10000;
+    private static final long DEFAULT_RETRY_AFTER_SECONDS = 5;
+    private static final long MAX_RETRY_AFTER_SECONDS = 300;
+    private static AdmissionControl instance;
+
+    private final int capacity;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger admittedRequests = new AtomicInteger();
+    private final Queue<Waiter> waiting = new ArrayDeque<>();
+    private final CertMetrics metrics = CertMetrics.getInstance();
+    private long windowStart = System.currentTimeMillis();
+    private long windowCompleted;
+    private double drainRate;
+
+    /**
+     * @param capacity recipients admitted in flight
+     */
+    AdmissionControl(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    private void registerGauges() {
+        metrics.gauge("admission.capacity", () -> capacity);
+        metrics.gauge("admission.inFlightRecipients", inFlight::get);
+        metrics.gauge("admission.inFlightRequests", admittedRequests::get);
+        metrics.gauge("admission.drainRatePerSecond", () -> Math.round(getDrainRate() * 100) / 100.0);
+        metrics.gauge("admission.estimatedWaitSeconds", this::getEstimatedWaitSeconds);
+        metrics.gauge("admission.waitingChunks", this::getWaitingChunks);
+    }
+
+    /**
+     * recipients of one job held in the capacity, they are admitted a chunk at a time and closing the lease gives
+     * back what the job still holds
+     */
+    public class Lease implements AutoCloseable {
+        private int held;
+        private Waiter waiter;
+        private boolean closed;
+
+        private Lease() {
+        }
+
+        /**
+         * admits a chunk of recipients once they fit in the capacity, chunks of a lease are admitted one at a time
+         *
+         * @param recipients recipients of the chunk
+         * @return stage completed when the chunk is admitted
+         */
+        public CompletionStage<Void> admit(int recipients) {
+            synchronized (AdmissionControl.this) {
+                if (closed || null != waiter) {
+                    CompletableFuture<Void> rejected = new CompletableFuture<>();
+                    rejected.completeExceptionally(new IllegalStateException(closed ? "lease is closed" : "a chunk is already waiting"));
+                    return rejected;
+                }
+                if (waiting.isEmpty() && tryAdmit(recipients)) {
+                    held += recipients;
+                    return CompletableFuture.completedFuture(null);
+                }
+                waiter = new Waiter(this, recipients);
+                waiting.add(waiter);
+                return waiter.admitted;
+            }
+        }
+
+        /**
+         * gives back recipients of the lease that are done
+         *
+         * @param recipients recipients done
+         */
+        public void release(int recipients) {
+            synchronized (AdmissionControl.this) {
+                held -= recipients;
+            }
+            AdmissionControl.this.release(recipients);
+        }
+
+        /**
+         * withdraws the chunk still waiting and gives back the recipients still held
+         */
+        @Override
+        public void close() {
+            int recipients;
+            synchronized (AdmissionControl.this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                if (null != waiter) {
+                    waiting.remove(waiter);
+                    waiter.admitted.cancel(false);
+                    waiter = null;
+                }
+                recipients = held;
+                held = 0;
+            }
+            AdmissionControl.this.release(recipients);
+        }
+    }
+
+    private static class Waiter {
+        private final Lease lease;
+        private final int recipients;
+        private final CompletableFuture<Void> admitted = new CompletableFuture<>();
+
+        private Waiter(Lease lease, int recipients) {
+            this.lease = lease;
+            this.recipients = recipients;
+        }
+    }
+
+    /**
+     * creates the admission control on first call with the capacity of the deployment
+     */
+    public static synchronized AdmissionControl getInstance() {
+        if (null == instance) {
+            instance = new AdmissionControl(new CertsConstant().getMaxInFlightRecipients());
+            instance.registerGauges();
+        }
+        return instance;
+    }
+
+    /**
+     * admits the recipients of a request or rejects the whole request
+     *
+     * @param recipients recipients of the request
+     * @throws ActorServiceException.TooManyRequests when the recipients do not fit in the capacity
+     */
+    public void admit(int recipients) throws ActorServiceException.TooManyRequests {
+        while (true) {
+            int current = inFlight.get();
+            if (!fits(current, recipients)) {
+                long retryAfter = getRetryAfterSeconds(current + recipients - capacity);
+                metrics.increment("admission.rejectedRequests");
+                metrics.add("admission.rejectedRecipients", recipients);
+                logger.info("AdmissionControl:admit:rejected " + recipients + " recipients, " + current + " in flight, retry after " + retryAfter);
+                throw new ActorServiceException.TooManyRequests("TOO_MANY_REQUESTS",
+                        MessageFormat.format(IResponseMessage.TOO_MANY_REQUESTS, current, retryAfter),
+                        ResponseCode.TOO_MANY_REQUESTS.getCode(), retryAfter);
+            }
+            if (inFlight.compareAndSet(current, current + recipients)) {
+                admittedRequests.incrementAndGet();
+                metrics.add("admission.admittedRecipients", recipients);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return lease of a job, its recipients are admitted by chunk
+     */
+    public Lease lease() {
+        return new Lease();
+    }
+
+    /**
+     * gives back recipients that are done, a request may release its recipients in several calls
+     *
+     * @param recipients recipients done
+     */
+    public void release(int recipients) {
+        if (recipients <= 0) {
+            return;
+        }
+        inFlight.addAndGet(-recipients);
+        recordCompleted(recipients);
+        admitWaiting();
+    }
+
+    /**
+     * marks the end of an admitted request, after all its recipients are released
+     */
+    public void requestDone() {
+        admittedRequests.decrementAndGet();
+    }
+
+    /**
+     * @return seconds needed to drain the recipients in flight at the observed rate
+     */
+    public long getEstimatedWaitSeconds() {
+        double rate = getDrainRate();
+        return rate > 0 ? (long) Math.ceil(inFlight.get() / rate) : 0;
+    }
+
+    private boolean fits(int current, int recipients) {
+        return current == 0 || current + recipients <= capacity;
+    }
+
+    private boolean tryAdmit(int recipients) {
+        while (true) {
+            int current = inFlight.get();
+            if (!fits(current, recipients)) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + recipients)) {
+                metrics.add("admission.admittedRecipients", recipients);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * admits the waiting chunks that fit now, in the order they came
+     */
+    private void admitWaiting() {
+        List<CompletableFuture<Void>> admitted = new ArrayList<>();
+        synchronized (this) {
+            Waiter next;
+            while (null != (next = waiting.peek()) && tryAdmit(next.recipients)) {
+                waiting.poll();
+                next.lease.held += next.recipients;
+                next.lease.waiter = null;
+                admitted.add(next.admitted);
+            }
+        }
+        // completed outside the lock, the pipeline of the job goes on from here
+        admitted.forEach(future -> future.complete(null));
+    }
+
+    private synchronized int getWaitingChunks() {
+        return waiting.size();
+    }
+
+    private long getRetryAfterSeconds(int excess) {
+        double rate = getDrainRate();
+        if (rate <= 0) {
+            return DEFAULT_RETRY_AFTER_SECONDS;
+        }
+        return Math.min(MAX_RETRY_AFTER_SECONDS, Math.max(1, (long) Math.ceil(excess / rate)));
+    }
+
+    private synchronized void recordCompleted(int recipients) {
+        windowCompleted += recipients;
+        rollWindow(System.currentTimeMillis());
+    }
+
+    private synchronized double getDrainRate() {
+        rollWindow(System.currentTimeMillis());
+        return drainRate;
+    }
+
+    private void rollWindow(long now) {
+        long elapsed = now - windowStart;
+        if (elapsed < RATE_WINDOW_MILLIS) {
+            return;
+        }
+        double windowRate = windowCompleted * 1000.0 / elapsed;
+        // smooth over windows, an idle window only counts as a drop when nothing is in flight either
+        if (windowCompleted > 0 || inFlight.get() == 0) {
+            drainRate = drainRate > 0 ? (drainRate + windowRate) / 2 : windowRate;
+        }
+        windowStart = now;
+        windowCompleted = 0;
+    }
+}
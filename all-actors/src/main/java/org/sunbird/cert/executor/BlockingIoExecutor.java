@@ -0,0 +1,170 @@
+package org.sunbird.cert.executor;
+
+import org.apache.log4j.Logger;
+import org.sunbird.CertsConstant;
+import org.sunbird.metrics.CertMetrics;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class runs the blocking remote calls of generation (signing, cloud storage, template download) off the
+ * actor and stream threads. On a jvm with virtual threads every call gets its own virtual thread, so thousands
+ * of calls can wait on the network at the same time, otherwise the calls share a bounded pool of platform threads.
+ * Either way the calls to one dependency never exceed its own limit: calls over the limit wait in a queue
+ * without holding a thread and are started as running ones finish.
+ */
+public class BlockingIoExecutor {
+    private static Logger logger = Logger.getLogger(BlockingIoExecutor.class);
+    private static CertsConstant certVar = new CertsConstant();
+    private static final String VIRTUAL = "virtual";
+    private static final String PLATFORM = "platform";
+    private static BlockingIoExecutor instance = new BlockingIoExecutor();
+
+    /**
+     * remote dependencies of generation, each with its own concurrency limit
+     */
+    public enum Dependency {
+        SIGN, STORAGE, TEMPLATE
+    }
+
+    private final String mode;
+    private final ExecutorService executor;
+    private final Map<Dependency, Limit> limits = new EnumMap<>(Dependency.class);
+
+    private BlockingIoExecutor() {
+        ExecutorService virtualExecutor = PLATFORM.equals(certVar.getBlockingIoMode()) ? null : createVirtualExecutor();
+        if (null != virtualExecutor) {
+            mode = VIRTUAL;
+            executor = virtualExecutor;
+        } else {
+            mode = PLATFORM;
+            executor = createPlatformExecutor(Math.max(1, certVar.getBlockingIoPoolSize()));
+        }
+        limits.put(Dependency.SIGN, new Limit(certVar.getSignMaxConcurrency()));
+        limits.put(Dependency.STORAGE, new Limit(certVar.getStorageMaxConcurrency()));
+        limits.put(Dependency.TEMPLATE, new Limit(certVar.getTemplateMaxConcurrency()));
+        logger.info("BlockingIoExecutor:running blocking calls on " + mode + " threads, sign/storage/template limits "
+                + limits.get(Dependency.SIGN).permits + "/" + limits.get(Dependency.STORAGE).permits + "/" + limits.get(Dependency.TEMPLATE).permits);
+        CertMetrics metrics = CertMetrics.getInstance();
+        metrics.gauge("blockingIo.mode", () -> mode);
+        limits.forEach((dependency, limit) -> {
+            String name = "blockingIo." + dependency.name().toLowerCase();
+            metrics.gauge(name + ".running", limit::getRunning);
+            metrics.gauge(name + ".waiting", limit::getWaiting);
+        });
+    }
+
+    public static BlockingIoExecutor getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return virtual or platform, the threads the calls run on
+     */
+    public String getMode() {
+        return mode;
+    }
+
+    /**
+     * runs a blocking call within the limit of its dependency
+     *
+     * @param dependency remote dependency the call waits on
+     * @param call       blocking call
+     * @return future completed with the result of the call, or with its exception
+     */
+    public <T> CompletableFuture<T> submit(Dependency dependency, Callable<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        limits.get(dependency).submit(() -> {
+            try {
+                future.complete(call.call());
+            } catch (Throwable ex) {
+                future.completeExceptionally(ex);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * calls of one dependency, started on the executor only while fewer than permits are running
+     */
+    private class Limit {
+        private final int permits;
+        private final Queue<Runnable> waiting = new ArrayDeque<>();
+        private int running;
+
+        private Limit(int permits) {
+            this.permits = Math.max(1, permits);
+        }
+
+        private void submit(Runnable task) {
+            synchronized (this) {
+                if (running >= permits) {
+                    waiting.add(task);
+                    return;
+                }
+                running++;
+            }
+            execute(task);
+        }
+
+        private void execute(Runnable task) {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    done();
+                }
+            });
+        }
+
+        private void done() {
+            Runnable next;
+            synchronized (this) {
+                next = waiting.poll();
+                if (null == next) {
+                    running--;
+                    return;
+                }
+            }
+            execute(next);
+        }
+
+        private synchronized int getRunning() {
+            return running;
+        }
+
+        private synchronized int getWaiting() {
+            return waiting.size();
+        }
+    }
+
+    /**
+     * the service is built for java 8, virtual threads are looked up at runtime and used when the jvm has them
+     */
+    private static ExecutorService createVirtualExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception ex) {
+            logger.info("BlockingIoExecutor:createVirtualExecutor:virtual threads not available on java "
+                    + System.getProperty("java.version") + ", falling back to platform threads");
+            return null;
+        }
+    }
+
+    private static ExecutorService createPlatformExecutor(int size) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(size, runnable -> {
+            Thread thread = new Thread(runnable, "cert-blocking-io-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
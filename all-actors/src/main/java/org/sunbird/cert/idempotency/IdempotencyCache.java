@@ -0,0 +1,150 @@
+package org.sunbird.cert.idempotency;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.sunbird.CertsConstant;
+import org.sunbird.metrics.CertMetrics;
+import org.sunbird.request.Request;
+import org.sunbird.response.Response;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This class remembers the replies of generate requests by idempotency key, so a retried request joins the
+ * generation still running for the first one, or gets its result back, instead of generating every certificate
+ * again. Replies are kept while running and for a limited time once finished, the number of replies kept is
+ * bounded and the least recently used ones are dropped first. Failed replies are never kept, their retry
+ * generates again.
+ */
+public class IdempotencyCache {
+    private static Logger logger = Logger.getLogger(IdempotencyCache.class);
+    private static final String HEADER_KEY_PREFIX = "key:";
+    private static final String MSGID_KEY_PREFIX = "msgid:";
+    private static ObjectMapper mapper = new ObjectMapper().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+    private static IdempotencyCache instance;
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final CertMetrics metrics = CertMetrics.getInstance();
+    private final Map<String, Entry> entries;
+
+    private static class Entry {
+        private final CompletableFuture<Response> reply;
+        private volatile long expiresAt = Long.MAX_VALUE;
+
+        private Entry(CompletableFuture<Response> reply) {
+            this.reply = reply;
+        }
+    }
+
+    /**
+     * @param maxEntries most replies kept
+     * @param ttlMillis  how long a finished reply is kept
+     */
+    IdempotencyCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlMillis = Math.max(0, ttlMillis);
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > IdempotencyCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * creates the cache on first call with the limits of the deployment
+     */
+    public static synchronized IdempotencyCache getInstance() {
+        if (null == instance) {
+            CertsConstant certVar = new CertsConstant();
+            instance = new IdempotencyCache(certVar.getIdempotencyMaxEntries(), certVar.getIdempotencyTtlMinutes() * 60000L);
+            instance.metrics.gauge("idempotency.entries", instance::size);
+        }
+        return instance;
+    }
+
+    /**
+     * idempotency key of a request, the key given by the caller or else a hash of params.msgid and the payload
+     *
+     * @param headerKey key sent by the caller, can be null
+     * @param request   request to generate
+     * @return key of the request, null when the request has neither a key nor a msgid
+     */
+    public static String getKey(String headerKey, Request request) {
+        if (StringUtils.isNotBlank(headerKey)) {
+            return HEADER_KEY_PREFIX + headerKey.trim();
+        }
+        String msgId = null == request.getParams() ? null : request.getParams().getMsgid();
+        if (StringUtils.isBlank(msgId)) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(msgId.getBytes(StandardCharsets.UTF_8));
+            digest.update(mapper.writeValueAsBytes(request.getRequest()));
+            return MSGID_KEY_PREFIX + Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest());
+        } catch (Exception ex) {
+            logger.error("IdempotencyCache:getKey:could not hash request " + msgId + " : " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * registers the reply of a request about to be generated, unless a reply is already kept for its key
+     *
+     * @param key   idempotency key of the request
+     * @param reply reply of the request, completed by the caller once the generation is done
+     * @return reply already kept for the key, which the request must use instead of generating,
+     * or null when the given reply was registered
+     */
+    public CompletableFuture<Response> register(String key, CompletableFuture<Response> reply) {
+        Entry entry = new Entry(reply);
+        synchronized (this) {
+            CompletableFuture<Response> existing = get(key);
+            if (null != existing) {
+                metrics.increment(existing.isDone() ? "idempotency.replayed" : "idempotency.joined");
+                logger.info("IdempotencyCache:register:" + (existing.isDone() ? "replaying" : "joining") + " reply of " + key);
+                return existing;
+            }
+            entries.put(key, entry);
+        }
+        reply.whenComplete((response, ex) -> {
+            if (null != ex) {
+                remove(key, entry);
+            } else {
+                entry.expiresAt = System.currentTimeMillis() + ttlMillis;
+            }
+        });
+        return null;
+    }
+
+    private synchronized CompletableFuture<Response> get(String key) {
+        Entry entry = entries.get(key);
+        if (null == entry) {
+            return null;
+        }
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.reply;
+    }
+
+    private synchronized void remove(String key, Entry entry) {
+        if (entries.get(key) == entry) {
+            entries.remove(key);
+        }
+    }
+
+    private synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,132 @@
+package org.sunbird.cert.job;
+
+import org.sunbird.JsonKey;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * State of an asynchronous certificate generation job: the accepted request, its status, the
+ * result of every recipient processed so far and the merged pdf of the batch when it asked for one.
+ */
+public class CertificateJob {
+
+    public enum Status {
+        ACCEPTED, RUNNING, COMPLETED, FAILED;
+
+        public String getValue() {
+            return name().toLowerCase();
+        }
+    }
+
+    private String jobId;
+    private Map<String, Object> request;
+    private int total;
+    private Status status = Status.ACCEPTED;
+    private String errorMsg;
+    private long createdOn;
+    private long updatedOn;
+    private int failedCount;
+    private String batchPdfUrl;
+    private TreeMap<Integer, Map<String, Object>> results = new TreeMap<>();
+
+    public CertificateJob(String jobId, Map<String, Object> request, int total, long createdOn) {
+        this.jobId = jobId;
+        this.request = request;
+        this.total = total;
+        this.createdOn = createdOn;
+        this.updatedOn = createdOn;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public Map<String, Object> getRequest() {
+        return request;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public synchronized Status getStatus() {
+        return status;
+    }
+
+    public synchronized long getUpdatedOn() {
+        return updatedOn;
+    }
+
+    public synchronized boolean isFinished() {
+        return Status.COMPLETED == status || Status.FAILED == status;
+    }
+
+    public synchronized int getProcessed() {
+        return results.size();
+    }
+
+    /**
+     * @return indexes of the recipients without a result yet, in order, the ones a resumed job still has to generate
+     */
+    public synchronized List<Integer> getPendingIndexes() {
+        List<Integer> pendingIndexes = new ArrayList<>();
+        for (int i = 0; i < total; i++) {
+            if (!results.containsKey(i)) {
+                pendingIndexes.add(i);
+            }
+        }
+        return pendingIndexes;
+    }
+
+    public synchronized void setStatus(Status status, String errorMsg, long updatedOn) {
+        this.status = status;
+        this.errorMsg = errorMsg;
+        this.updatedOn = updatedOn;
+    }
+
+    public synchronized void addResult(int index, Map<String, Object> result, long updatedOn) {
+        if (null == results.put(index, result) && JsonKey.FAILED.equals(result.get(JsonKey.STATUS))) {
+            failedCount++;
+        }
+        this.updatedOn = updatedOn;
+    }
+
+    public synchronized void setBatchPdfUrl(String batchPdfUrl, long updatedOn) {
+        this.batchPdfUrl = batchPdfUrl;
+        this.updatedOn = updatedOn;
+    }
+
+    /**
+     * the request is released once the job is over, only the results are needed after that
+     */
+    public synchronized void releaseRequest() {
+        request = null;
+    }
+
+    /**
+     * @return job status in the form returned by the job status api
+     */
+    public synchronized Map<String, Object> toMap() {
+        Map<String, Object> job = new HashMap<>();
+        job.put(JsonKey.JOB_ID, jobId);
+        job.put(JsonKey.STATUS, status.getValue());
+        job.put(JsonKey.TOTAL, total);
+        job.put(JsonKey.PROCESSED, results.size());
+        job.put(JsonKey.FAILED_COUNT, failedCount);
+        job.put(JsonKey.CREATED_ON, createdOn);
+        job.put(JsonKey.UPDATED_ON, updatedOn);
+        if (null != errorMsg) {
+            job.put(JsonKey.ERROR_MSG, errorMsg);
+        }
+        if (null != batchPdfUrl) {
+            job.put(JsonKey.BATCH_PDF_URL, batchPdfUrl);
+        }
+        List<Map<String, Object>> resultList = new ArrayList<>(results.values());
+        job.put(JsonKey.RESULTS, resultList);
+        return job;
+    }
+}
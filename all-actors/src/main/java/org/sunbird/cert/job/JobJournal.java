@@ -0,0 +1,189 @@
+package org.sunbird.cert.job;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append only journal of the asynchronous jobs, one file per job with one json record per line.
+ * The accepted record is synced to disk before the job id is returned, so an accepted job is never lost,
+ * results are appended as recipients finish so a restarted job continues from where it stopped.
+ */
+public class JobJournal {
+    private static Logger logger = Logger.getLogger(JobJournal.class);
+    private static final String EXTENSION = ".journal";
+    private static final String TYPE = "type";
+    private static final String ACCEPTED = "accepted";
+    private static final String RESULT = "result";
+    private static final String STATUS = "status";
+    private static final String BATCH_PDF = "batchPdf";
+    private static final String URL = "url";
+    private static final String JOB_ID = "jobId";
+    private static final String REQUEST = "request";
+    private static final String TOTAL = "total";
+    private static final String INDEX = "index";
+    private static final String ERROR_MSG = "errorMsg";
+    private static final String TIME = "time";
+
+    private File directory;
+    private ObjectMapper mapper = new ObjectMapper();
+    private Map<String, FileOutputStream> writers = new ConcurrentHashMap<>();
+
+    public JobJournal(String directory) {
+        this.directory = new File(directory);
+        if (!this.directory.exists()) {
+            this.directory.mkdirs();
+        }
+    }
+
+    public void accepted(CertificateJob job, long time) throws IOException {
+        Map<String, Object> record = new HashMap<>();
+        record.put(TYPE, ACCEPTED);
+        record.put(JOB_ID, job.getJobId());
+        record.put(REQUEST, job.getRequest());
+        record.put(TOTAL, job.getTotal());
+        record.put(TIME, time);
+        write(job.getJobId(), record, true);
+    }
+
+    public void result(String jobId, int index, Map<String, Object> result, long time) throws IOException {
+        Map<String, Object> record = new HashMap<>();
+        record.put(TYPE, RESULT);
+        record.put(INDEX, index);
+        record.put(RESULT, result);
+        record.put(TIME, time);
+        write(jobId, record, false);
+    }
+
+    public void batchPdf(String jobId, String url, long time) throws IOException {
+        Map<String, Object> record = new HashMap<>();
+        record.put(TYPE, BATCH_PDF);
+        record.put(URL, url);
+        record.put(TIME, time);
+        write(jobId, record, false);
+    }
+
+    public void status(String jobId, CertificateJob.Status status, String errorMsg, long time) throws IOException {
+        Map<String, Object> record = new HashMap<>();
+        record.put(TYPE, STATUS);
+        record.put(STATUS, status.name());
+        record.put(ERROR_MSG, errorMsg);
+        record.put(TIME, time);
+        boolean finished = CertificateJob.Status.COMPLETED == status || CertificateJob.Status.FAILED == status;
+        write(jobId, record, finished);
+        if (finished) {
+            close(jobId);
+        }
+    }
+
+    /**
+     * reads back every job of the journal, a partially written last line (crash while appending) is ignored
+     *
+     * @return jobs found in the journal
+     */
+    public List<CertificateJob> load() {
+        List<CertificateJob> jobs = new ArrayList<>();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (null == files) {
+            return jobs;
+        }
+        for (File file : files) {
+            try {
+                CertificateJob job = read(file);
+                if (null != job) {
+                    jobs.add(job);
+                }
+            } catch (IOException ex) {
+                logger.error("JobJournal:load:unable to read journal " + file.getName(), ex);
+            }
+        }
+        return jobs;
+    }
+
+    public void delete(String jobId) {
+        close(jobId);
+        File file = getFile(jobId);
+        if (file.exists() && !file.delete()) {
+            logger.error("JobJournal:delete:unable to delete journal of job " + jobId);
+        }
+    }
+
+    private CertificateJob read(File file) throws IOException {
+        CertificateJob job = null;
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Map<String, Object> record;
+                try {
+                    record = mapper.readValue(line, Map.class);
+                } catch (IOException ex) {
+                    logger.error("JobJournal:read:ignoring incomplete record in " + file.getName());
+                    continue;
+                }
+                String type = (String) record.get(TYPE);
+                long time = ((Number) record.get(TIME)).longValue();
+                if (ACCEPTED.equals(type)) {
+                    job = new CertificateJob((String) record.get(JOB_ID), (Map<String, Object>) record.get(REQUEST),
+                            ((Number) record.get(TOTAL)).intValue(), time);
+                } else if (null == job) {
+                    logger.error("JobJournal:read:journal " + file.getName() + " has no accepted record");
+                    return null;
+                } else if (RESULT.equals(type)) {
+                    job.addResult(((Number) record.get(INDEX)).intValue(), (Map<String, Object>) record.get(RESULT), time);
+                } else if (BATCH_PDF.equals(type)) {
+                    job.setBatchPdfUrl((String) record.get(URL), time);
+                } else if (STATUS.equals(type)) {
+                    job.setStatus(CertificateJob.Status.valueOf((String) record.get(STATUS)), (String) record.get(ERROR_MSG), time);
+                }
+            }
+        }
+        return job;
+    }
+
+    private void write(String jobId, Map<String, Object> record, boolean sync) throws IOException {
+        byte[] line = mapper.writeValueAsBytes(record);
+        FileOutputStream out = writers.computeIfAbsent(jobId, this::open);
+        synchronized (out) {
+            out.write(line);
+            out.write('\n');
+            out.flush();
+            if (sync) {
+                out.getFD().sync();
+            }
+        }
+    }
+
+    private FileOutputStream open(String jobId) {
+        try {
+            return new FileOutputStream(getFile(jobId), true);
+        } catch (IOException ex) {
+            throw new IllegalStateException("unable to open journal of job " + jobId, ex);
+        }
+    }
+
+    private void close(String jobId) {
+        FileOutputStream out = writers.remove(jobId);
+        if (null != out) {
+            try {
+                out.close();
+            } catch (IOException ex) {
+                logger.error("JobJournal:close:unable to close journal of job " + jobId, ex);
+            }
+        }
+    }
+
+    private File getFile(String jobId) {
+        return new File(directory, jobId + EXTENSION);
+    }
+}
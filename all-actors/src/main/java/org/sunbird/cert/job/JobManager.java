@@ -0,0 +1,226 @@
+package org.sunbird.cert.job;
+
+import akka.actor.ActorSystem;
+import akka.stream.javadsl.Source;
+import org.apache.log4j.Logger;
+import org.incredible.certProcessor.CertModel;
+import org.sunbird.BaseException;
+import org.sunbird.CertsConstant;
+import org.sunbird.JsonKey;
+import org.sunbird.cert.admission.AdmissionControl;
+import org.sunbird.cert.processor.BatchCertificateProcessor;
+import org.sunbird.cert.processor.CertificateBatch;
+import org.sunbird.message.IResponseMessage;
+import org.sunbird.message.ResponseCode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class owns the asynchronous certificate jobs of the process. Accepted jobs are journaled before
+ * their id is handed out and run on a small job pool, on start the journal is replayed so jobs that were
+ * accepted or running when the process stopped are resumed with only their pending recipients.
+ * A queued job holds no admission capacity, its recipients are admitted a chunk at a time as its pipeline takes
+ * them, so a large job neither waits for an idle service nor turns other requests away while it runs.
+ * Finished jobs are kept for the retention period, then dropped from memory and their journal is deleted.
+ */
+public class JobManager {
+    private static Logger logger = Logger.getLogger(JobManager.class);
+    private static CertsConstant certVar = new CertsConstant();
+    private static JobManager instance;
+    private static AdmissionControl admissionControl = AdmissionControl.getInstance();
+    private static final long PURGE_INTERVAL_MINUTES = 10;
+    private static final int ADMISSION_CHUNK = 20;
+
+    private ActorSystem system;
+    private Map<String, CertificateJob> jobs = new ConcurrentHashMap<>();
+    private JobJournal journal;
+    private ExecutorService jobPool;
+    private ScheduledExecutorService purgeScheduler;
+    private long retentionMillis;
+
+    private JobManager(ActorSystem system) {
+        this.system = system;
+        journal = new JobJournal(certVar.getJobJournalDir());
+        retentionMillis = TimeUnit.HOURS.toMillis(certVar.getJobRetentionHours());
+        AtomicInteger count = new AtomicInteger();
+        jobPool = Executors.newFixedThreadPool(Math.max(1, certVar.getJobWorkers()), runnable -> {
+            Thread thread = new Thread(runnable, "cert-job-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        recover();
+        purgeScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cert-job-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        purgeScheduler.scheduleWithFixedDelay(this::purge, PURGE_INTERVAL_MINUTES, PURGE_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * creates the job manager on first call and resumes the jobs left in the journal
+     *
+     * @param system actor system running the generation pipelines
+     */
+    public static synchronized void init(ActorSystem system) {
+        if (null == instance) {
+            instance = new JobManager(system);
+        }
+    }
+
+    public static synchronized JobManager getInstance() {
+        return instance;
+    }
+
+    /**
+     * journals the request and schedules its generation
+     *
+     * @param request request map containing the certificate object
+     * @return accepted job
+     * @throws BaseException when the job can not be journaled
+     */
+    public CertificateJob submit(Map<String, Object> request) throws BaseException {
+        Map<String, Object> certificate = (Map<String, Object>) request.get(JsonKey.CERTIFICATE);
+        List<Map<String, Object>> data = (List<Map<String, Object>>) certificate.get(JsonKey.DATA);
+        CertificateJob job = new CertificateJob(UUID.randomUUID().toString(), request, data.size(), System.currentTimeMillis());
+        try {
+            journal.accepted(job, job.getUpdatedOn());
+        } catch (IOException ex) {
+            logger.error("JobManager:submit:unable to journal job " + job.getJobId(), ex);
+            throw new BaseException(IResponseMessage.INTERNAL_ERROR, ex.getMessage(), ResponseCode.SERVER_ERROR.getCode());
+        }
+        jobs.put(job.getJobId(), job);
+        jobPool.submit(() -> run(job));
+        logger.info("JobManager:submit:job " + job.getJobId() + " accepted with " + job.getTotal() + " recipients");
+        return job;
+    }
+
+    public CertificateJob getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    private void run(CertificateJob job) {
+        String jobId = job.getJobId();
+        // recipients are admitted by chunk as the pipeline takes them and each result gives back its own
+        AdmissionControl.Lease lease = admissionControl.lease();
+        updateStatus(job, CertificateJob.Status.RUNNING, null);
+        try {
+            CertificateBatch batch = CertificateBatch.fromRequest(job.getRequest());
+            batch.loadTemplate();
+            List<CertModel> certModelList = batch.getCertModelList();
+            List<Integer> pendingIndexes = job.getPendingIndexes();
+            List<BatchCertificateProcessor.RecipientWork> pendingList = new ArrayList<>(pendingIndexes.size());
+            for (int i = 0; i < pendingIndexes.size(); i++) {
+                pendingList.add(BatchCertificateProcessor.RecipientWork.of(i, certModelList.get(pendingIndexes.get(i))));
+            }
+            logger.info("JobManager:run:job " + jobId + " processing " + pendingList.size() + " of " + job.getTotal() + " recipients");
+            if (pendingList.size() < certModelList.size()) {
+                // certificates done before the restart are not in this run, a merged pdf of the rest would be incomplete
+                batch.getCertificateProcessor().setBatchPdf(null);
+            }
+            BatchCertificateProcessor processor = new BatchCertificateProcessor(batch.getCertificateProcessor(), system);
+            Source<BatchCertificateProcessor.RecipientWork, ?> recipients = Source.from(pendingList)
+                    .grouped(ADMISSION_CHUNK)
+                    .mapAsync(1, chunk -> lease.admit(chunk.size()).thenApply(admitted -> chunk))
+                    .mapConcat(chunk -> chunk);
+            processor.run(recipients,
+                    (index, result) -> {
+                        addResult(job, pendingIndexes.get(index), result);
+                        lease.release(1);
+                    }).toCompletableFuture().join();
+            String batchPdfUrl = processor.completeBatchPdf().toCompletableFuture().join();
+            if (null != batchPdfUrl) {
+                setBatchPdfUrl(job, batchPdfUrl);
+            }
+            updateStatus(job, CertificateJob.Status.COMPLETED, null);
+        } catch (Exception ex) {
+            logger.error("JobManager:run:job " + jobId + " failed : " + ex.getMessage(), ex);
+            updateStatus(job, CertificateJob.Status.FAILED, ex.getMessage());
+        }
+        lease.close();
+        job.releaseRequest();
+    }
+
+    private void addResult(CertificateJob job, int index, Map<String, Object> result) {
+        // json data of the certificate is already uploaded, the job keeps only the reference of each recipient
+        result.remove(JsonKey.JSON_DATA);
+        long time = System.currentTimeMillis();
+        job.addResult(index, result, time);
+        try {
+            journal.result(job.getJobId(), index, result, time);
+        } catch (IOException ex) {
+            logger.error("JobManager:addResult:unable to journal result of job " + job.getJobId(), ex);
+        }
+    }
+
+    private void setBatchPdfUrl(CertificateJob job, String batchPdfUrl) {
+        long time = System.currentTimeMillis();
+        job.setBatchPdfUrl(batchPdfUrl, time);
+        try {
+            journal.batchPdf(job.getJobId(), batchPdfUrl, time);
+        } catch (IOException ex) {
+            logger.error("JobManager:setBatchPdfUrl:unable to journal merged pdf of job " + job.getJobId(), ex);
+        }
+    }
+
+    private void updateStatus(CertificateJob job, CertificateJob.Status status, String errorMsg) {
+        long time = System.currentTimeMillis();
+        job.setStatus(status, errorMsg, time);
+        try {
+            journal.status(job.getJobId(), status, errorMsg, time);
+        } catch (IOException ex) {
+            logger.error("JobManager:updateStatus:unable to journal status of job " + job.getJobId(), ex);
+        }
+    }
+
+    private void recover() {
+        long now = System.currentTimeMillis();
+        for (CertificateJob job : journal.load()) {
+            if (job.isFinished()) {
+                if (isExpired(job, now)) {
+                    journal.delete(job.getJobId());
+                } else {
+                    job.releaseRequest();
+                    jobs.put(job.getJobId(), job);
+                }
+            } else {
+                logger.info("JobManager:recover:resuming job " + job.getJobId());
+                jobs.put(job.getJobId(), job);
+                jobPool.submit(() -> run(job));
+            }
+        }
+    }
+
+    /**
+     * drops the jobs finished longer than the retention period ago, with their journal
+     */
+    private void purge() {
+        long now = System.currentTimeMillis();
+        try {
+            for (CertificateJob job : jobs.values()) {
+                if (isExpired(job, now)) {
+                    jobs.remove(job.getJobId());
+                    journal.delete(job.getJobId());
+                    logger.info("JobManager:purge:job " + job.getJobId() + " removed after retention");
+                }
+            }
+        } catch (Exception ex) {
+            // an exception would cancel the schedule, the next run tries again
+            logger.error("JobManager:purge:unable to purge finished jobs", ex);
+        }
+    }
+
+    private boolean isExpired(CertificateJob job, long now) {
+        return job.isFinished() && now - job.getUpdatedOn() > retentionMillis;
+    }
+}
@@ -0,0 +1,393 @@
+package org.sunbird.cert.processor;
+
+import akka.Done;
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.japi.Pair;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import akka.stream.OverflowStrategy;
+import akka.stream.javadsl.Source;
+import org.apache.log4j.Logger;
+import org.incredible.certProcessor.CertModel;
+import org.incredible.certProcessor.views.PdfOutputProfile;
+import org.incredible.pojos.CertificateExtension;
+import org.incredible.pojos.CertificateResponse;
+import org.sunbird.BaseException;
+import org.sunbird.CertsConstant;
+import org.sunbird.JsonKey;
+import org.sunbird.cert.executor.BlockingIoExecutor;
+import org.sunbird.message.IResponseMessage;
+import org.sunbird.message.ResponseCode;
+import org.sunbird.metrics.CertMetrics;
+import org.sunbird.metrics.StageMetrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class runs the recipients of a batch through a staged pipeline: sign, render (json, qr code, html, pdf)
+ * and upload. Every stage has its own parallelism, signing and upload wait on remote services and run on the
+ * {@link BlockingIoExecutor} within the limits of their dependency, while rendering is cpu bound and has its own
+ * worker pool. Stages are joined by small bounded buffers so a slow stage back pressures the ones before it
+ * instead of piling up rendered files on disk.
+ * The render of a recipient has a time limit, past it the recipient fails and its conversion is interrupted, and
+ * the converter itself stops a certificate growing past its page or size limit.
+ * When the batch writes compact pdfs, their sizes before and after compaction are reported once the batch is done,
+ * and so are the certificates stamped and converted from html when the batch is stamped.
+ * A merged pdf of the batch gets the certificates in recipient order, it is completed and uploaded with
+ * {@link #completeBatchPdf()} and dropped when a recipient or the pipeline fails.
+ * The executors are shared by all the batches of the process. A failed recipient is reported in place
+ * instead of failing the whole batch.
+ */
+public class BatchCertificateProcessor {
+    private static Logger logger = Logger.getLogger(BatchCertificateProcessor.class);
+    private static CertsConstant certVar = new CertsConstant();
+    private static final int SIGN_PARALLELISM = Math.max(1, certVar.getSignParallelism());
+    private static final int RENDER_PARALLELISM = Math.max(1, certVar.getRenderParallelism());
+    private static final int UPLOAD_PARALLELISM = Math.max(1, certVar.getUploadParallelism());
+    private static final int BUFFER_SIZE = Math.max(1, certVar.getStageBufferSize());
+    private static final long RENDER_TIMEOUT_MILLIS = Math.max(1, certVar.getRenderTimeoutSeconds()) * 1000L;
+    private static final BlockingIoExecutor blockingIo = BlockingIoExecutor.getInstance();
+    private static final Executor signExecutor = task -> blockingIo.submit(BlockingIoExecutor.Dependency.SIGN, Executors.callable(task));
+    private static final ExecutorService renderPool = createWorkerPool("cert-render-worker-", RENDER_PARALLELISM);
+    private static final ScheduledExecutorService renderWatchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cert-render-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Executor uploadExecutor = task -> blockingIo.submit(BlockingIoExecutor.Dependency.STORAGE, Executors.callable(task));
+    private static final StageMetrics signMetrics = CertMetrics.getInstance().stage("sign", SIGN_PARALLELISM);
+    private static final StageMetrics renderMetrics = CertMetrics.getInstance().stage("render", RENDER_PARALLELISM);
+    private static final StageMetrics uploadMetrics = CertMetrics.getInstance().stage("upload", UPLOAD_PARALLELISM);
+    private static final CertMetrics metrics = CertMetrics.getInstance();
+    private static Materializer materializer;
+
+    private CertificateProcessor certificateProcessor;
+    private ActorSystem system;
+
+    /**
+     * gets the result of every recipient as soon as it is done, possibly out of order and from a worker thread
+     */
+    public interface ResultListener {
+        void onResult(int index, Map<String, Object> result);
+    }
+
+    private interface Step {
+        void apply(RecipientWork work) throws BaseException;
+    }
+
+    /**
+     * a recipient moving through the stages, the result is set by the upload stage or by the first failing stage
+     */
+    public static class RecipientWork {
+        private final int index;
+        private final CertModel certModel;
+        private CertificateExtension certificateExtension;
+        private CertificateResponse certificateResponse;
+        private Map<String, Object> result;
+
+        private RecipientWork(int index, CertModel certModel) {
+            this.index = index;
+            this.certModel = certModel;
+        }
+
+        public static RecipientWork of(int index, CertModel certModel) {
+            return new RecipientWork(index, certModel);
+        }
+
+        /**
+         * a recipient rejected before generation, it goes through the stages untouched
+         */
+        public static RecipientWork failed(int index, Map<String, Object> result) {
+            RecipientWork work = new RecipientWork(index, null);
+            work.result = result;
+            return work;
+        }
+    }
+
+    public BatchCertificateProcessor(CertificateProcessor certificateProcessor, ActorSystem system) {
+        this.certificateProcessor = certificateProcessor;
+        this.system = system;
+    }
+
+    /**
+     * generates the certificates of all the recipients, blocks till every recipient is done
+     *
+     * @param certModelList recipients of the batch
+     * @return results in the order of certModelList
+     * @throws BaseException when the batch is interrupted
+     */
+    public List<Map<String, Object>> process(List<CertModel> certModelList) throws BaseException {
+        return process(certModelList, null);
+    }
+
+    /**
+     * generates the certificates of all the recipients, blocks till every recipient is done
+     *
+     * @param certModelList recipients of the batch
+     * @param listener      notified of every recipient result, can be null
+     * @return results in the order of certModelList
+     * @throws BaseException when the batch is interrupted
+     */
+    public List<Map<String, Object>> process(List<CertModel> certModelList, ResultListener listener) throws BaseException {
+        try {
+            return processAsync(certModelList, listener).toCompletableFuture().get();
+        } catch (InterruptedException | ExecutionException ex) {
+            logger.error("BatchCertificateProcessor:process:batch generation interrupted", ex);
+            throw new BaseException(IResponseMessage.INTERNAL_ERROR, ex.getMessage(), ResponseCode.SERVER_ERROR.getCode());
+        }
+    }
+
+    /**
+     * generates the certificates of all the recipients without waiting for them
+     *
+     * @param certModelList recipients of the batch
+     * @param listener      notified of every recipient result, can be null
+     * @return stage completed with the results in the order of certModelList
+     */
+    public CompletionStage<List<Map<String, Object>>> processAsync(List<CertModel> certModelList, ResultListener listener) {
+        Map<String, Object>[] results = new Map[certModelList.size()];
+        return run(certModelList, (index, result) -> {
+            results[index] = result;
+            if (null != listener) {
+                listener.onResult(index, result);
+            }
+        }).thenApply(done -> new ArrayList<>(Arrays.asList(results)));
+    }
+
+    /**
+     * starts the pipeline for all the recipients without waiting for it
+     *
+     * @param certModelList recipients of the batch
+     * @param listener      notified of every recipient result
+     * @return stage completed once every recipient is done
+     */
+    public CompletionStage<Done> run(List<CertModel> certModelList, ResultListener listener) {
+        long startTime = System.currentTimeMillis();
+        return source(certModelList)
+                .runForeach(result -> listener.onResult(result.first(), result.second()), getMaterializer(system))
+                .whenComplete((done, ex) -> {
+                    long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+                    logger.info("BatchCertificateProcessor:run:" + certModelList.size() + " certificates processed in " + elapsed
+                            + " ms, " + (certModelList.size() * 1000L / elapsed) + " per second");
+                });
+    }
+
+    /**
+     * starts the pipeline for recipients read from the given source without waiting for it
+     *
+     * @param recipients source of the recipients
+     * @param listener   notified of every recipient result
+     * @return stage completed once every recipient is done
+     */
+    public <M> CompletionStage<Done> run(Source<RecipientWork, M> recipients, ResultListener listener) {
+        return source(recipients).runForeach(result -> listener.onResult(result.first(), result.second()), getMaterializer(system));
+    }
+
+    /**
+     * pipeline of the recipients, not started till it is materialized
+     *
+     * @param certModelList recipients of the batch
+     * @return source of recipient index and result pairs, in the order recipients finish
+     */
+    public Source<Pair<Integer, Map<String, Object>>, NotUsed> source(List<CertModel> certModelList) {
+        List<RecipientWork> workList = new ArrayList<>(certModelList.size());
+        for (int i = 0; i < certModelList.size(); i++) {
+            workList.add(RecipientWork.of(i, certModelList.get(i)));
+        }
+        return source(Source.from(workList));
+    }
+
+    /**
+     * pipeline of recipients read lazily, recipients are pulled from the given source only as fast as they are generated
+     *
+     * @param recipients source of the recipients
+     * @return source of recipient index and result pairs, in the order recipients finish
+     */
+    public <M> Source<Pair<Integer, Map<String, Object>>, M> source(Source<RecipientWork, M> recipients) {
+        logger.info("BatchCertificateProcessor:source:generating certificates with sign/render/upload parallelism "
+                + SIGN_PARALLELISM + "/" + RENDER_PARALLELISM + "/" + UPLOAD_PARALLELISM + ", stage buffer " + BUFFER_SIZE
+                + ", render timeout " + RENDER_TIMEOUT_MILLIS + " ms"
+                + ", blocking calls on " + blockingIo.getMode() + " threads");
+        return recipients
+                .mapAsyncUnordered(SIGN_PARALLELISM, work -> runStage(work, signMetrics, signExecutor,
+                        w -> w.certificateExtension = certificateProcessor.sign(w.certModel)))
+                .buffer(BUFFER_SIZE, OverflowStrategy.backpressure())
+                .mapAsyncUnordered(RENDER_PARALLELISM, this::runRenderStage)
+                .buffer(BUFFER_SIZE, OverflowStrategy.backpressure())
+                .mapAsyncUnordered(UPLOAD_PARALLELISM, work -> runStage(work, uploadMetrics, uploadExecutor,
+                        w -> w.result = certificateProcessor.upload(w.certificateResponse, w.certModel.getIdentifier(), w.index)))
+                .map(work -> {
+                    if (JsonKey.FAILED.equals(work.result.get(JsonKey.STATUS))) {
+                        certificateProcessor.recipientFailed((String) work.result.get(JsonKey.RECIPIENT_ID));
+                    }
+                    return Pair.create(work.index, work.result);
+                })
+                .watchTermination((mat, done) -> {
+                    done.whenComplete((d, ex) -> {
+                        reportPdfSizes();
+                        reportStampRender();
+                        if (null != ex) {
+                            certificateProcessor.discardBatchPdf();
+                        }
+                    });
+                    return mat;
+                });
+    }
+
+    /**
+     * completes the merged pdf of the batch and uploads it, to be called once every recipient is done
+     *
+     * @return stage completed with the url of the merged pdf, null when the batch has none
+     */
+    public CompletionStage<String> completeBatchPdf() {
+        return CompletableFuture.supplyAsync(certificateProcessor::completeBatchPdf, uploadExecutor);
+    }
+
+    private void reportPdfSizes() {
+        PdfOutputProfile profile = certificateProcessor.getPdfProfile();
+        if (!profile.isCompact() || profile.getPdfCount() == 0) {
+            return;
+        }
+        long before = profile.getBytesBefore();
+        long after = profile.getBytesAfter();
+        metrics.add("pdf.bytes.before", before);
+        metrics.add("pdf.bytes.after", after);
+        logger.info("BatchCertificateProcessor:reportPdfSizes:" + profile.getPdfCount() + " compact pdfs, " + before
+                + " bytes before and " + after + " bytes after compaction, " + (100 - after * 100 / Math.max(1, before))
+                + "% saved");
+    }
+
+    private void reportStampRender() {
+        long stamped = certificateProcessor.getStampedCount();
+        long fallbacks = certificateProcessor.getStampFallbackCount();
+        if (stamped + fallbacks == 0) {
+            return;
+        }
+        metrics.add("render.stamped", stamped);
+        metrics.add("render.stamp.fallback", fallbacks);
+        logger.info("BatchCertificateProcessor:reportStampRender:" + stamped + " certificates stamped, " + fallbacks
+                + " converted from html");
+    }
+
+    private CompletionStage<RecipientWork> runStage(RecipientWork work, StageMetrics metrics, Executor executor, Step step) {
+        if (null != work.result) {
+            // failed in an earlier stage, nothing left to do for this recipient
+            return CompletableFuture.completedFuture(work);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            long start = metrics.start();
+            boolean success = false;
+            try {
+                step.apply(work);
+                success = true;
+            } catch (Exception ex) {
+                logger.error("BatchCertificateProcessor:runStage:" + metrics.getName() + " failed for recipient "
+                        + work.certModel.getIdentifier() + " : " + ex.getMessage());
+                work.result = CertificateProcessor.getFailureResult(work.certModel, ex);
+            } finally {
+                metrics.end(start, success);
+            }
+            return work;
+        }, executor);
+    }
+
+    /**
+     * render stage with a time limit counted from when the recipient starts rendering. Whichever of the render
+     * and the time limit comes first decides the result of the recipient, a render finishing too late only
+     * removes its files. A conversion which is past its limit is interrupted, the converter notices it on its
+     * next page or write.
+     */
+    private CompletionStage<RecipientWork> runRenderStage(RecipientWork work) {
+        if (null != work.result) {
+            return CompletableFuture.completedFuture(work);
+        }
+        CompletableFuture<RecipientWork> stage = new CompletableFuture<>();
+        AtomicBoolean decided = new AtomicBoolean();
+        renderPool.execute(() -> {
+            Thread worker = Thread.currentThread();
+            ScheduledFuture<?> timeout = renderWatchdog.schedule(() -> {
+                // decided and interrupted under the lock, so the interrupt can not reach the next task of the worker
+                synchronized (decided) {
+                    if (!decided.compareAndSet(false, true)) {
+                        return;
+                    }
+                    worker.interrupt();
+                }
+                metrics.increment("render.timeout");
+                logger.error("BatchCertificateProcessor:runRenderStage:render timed out after " + RENDER_TIMEOUT_MILLIS
+                        + " ms for recipient " + work.certModel.getIdentifier());
+                work.result = CertificateProcessor.getFailureResult(work.certModel.getIdentifier(),
+                        "certificate rendering took longer than " + RENDER_TIMEOUT_MILLIS + " ms");
+                stage.complete(work);
+            }, RENDER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            long start = renderMetrics.start();
+            CertificateResponse response = null;
+            Throwable failure = null;
+            try {
+                response = certificateProcessor.render(work.certificateExtension);
+            } catch (Exception | OutOfMemoryError | StackOverflowError ex) {
+                // a certificate exhausting the memory or the stack fails alone, its layout is released with it
+                failure = ex;
+            } finally {
+                renderMetrics.end(start, null == failure);
+            }
+            timeout.cancel(false);
+            synchronized (decided) {
+                if (!decided.compareAndSet(false, true)) {
+                    // the recipient is reported as timed out already
+                    if (null != response) {
+                        certificateProcessor.discard(response);
+                    }
+                    return;
+                }
+            }
+            if (null != failure) {
+                logger.error("BatchCertificateProcessor:runRenderStage:render failed for recipient "
+                        + work.certModel.getIdentifier() + " : " + failure.getMessage());
+                work.result = CertificateProcessor.getFailureResult(work.certModel.getIdentifier(), failure.getMessage());
+            } else {
+                work.certificateResponse = response;
+            }
+            stage.complete(work);
+        });
+        return stage;
+    }
+
+    private static synchronized Materializer getMaterializer(ActorSystem system) {
+        if (null == materializer) {
+            materializer = ActorMaterializer.create(system);
+        }
+        return materializer;
+    }
+
+    /**
+     * @return pool the render stage runs on, for work which should warm up the same threads
+     */
+    public static Executor getRenderExecutor() {
+        return renderPool;
+    }
+
+    private static ExecutorService createWorkerPool(String namePrefix, int size) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(size, runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,230 @@
+package org.sunbird.cert.processor;
+
+import org.apache.commons.collections.MapUtils;
+import org.apache.log4j.Logger;
+import org.incredible.CertificateGenerator;
+import org.incredible.certProcessor.CertModel;
+import org.incredible.certProcessor.views.HTMLTempalteZip;
+import org.incredible.certProcessor.views.PdfBatchWriter;
+import org.incredible.certProcessor.views.TemplateAnalysis;
+import org.incredible.certProcessor.views.TemplateCache;
+import org.incredible.certProcessor.views.VelocityTemplateCache;
+import org.sunbird.BaseException;
+import org.sunbird.CertMapper;
+import org.sunbird.CertsConstant;
+import org.sunbird.JsonKey;
+import org.sunbird.cert.executor.BlockingIoExecutor;
+import org.sunbird.message.IResponseMessage;
+import org.sunbird.message.ResponseCode;
+
+import java.io.File;
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * This class prepares everything a generate certificate request needs before its recipients are processed:
+ * the properties, the recipients, the html template and the working directory.
+ * It is shared by the synchronous generate api and the asynchronous jobs.
+ */
+public class CertificateBatch {
+    private static Logger logger = Logger.getLogger(CertificateBatch.class);
+    private static CertsConstant certVar = new CertsConstant();
+
+    private List<CertModel> certModelList;
+    private Function<Map<String, Object>, CertModel> recipientMapper;
+    private HTMLTempalteZip htmlTempalteZip;
+    private String htmlTemplateUrl;
+    private String directory;
+    private HashMap<String, String> properties;
+    private CertificateProcessor certificateProcessor;
+
+    private CertificateBatch() {
+    }
+
+    /**
+     * builds the batch of given generate certificate request
+     *
+     * @param request request map containing the certificate object
+     * @return certificate batch
+     * @throws BaseException when html template is invalid
+     */
+    public static CertificateBatch fromRequest(Map<String, Object> request) throws BaseException {
+        CertificateBatch batch = new CertificateBatch();
+        Map<String, Object> certificate = (Map<String, Object>) request.get(JsonKey.CERTIFICATE);
+        HashMap<String, String> properties = populatePropertiesMap(certificate);
+        batch.properties = properties;
+        batch.recipientMapper = new CertMapper(properties).recipientMapper(certificate);
+        List<Map<String, Object>> dataList = (List<Map<String, Object>>) certificate.get(JsonKey.DATA);
+        // a streamed request has no data list, its recipients are read later one by one
+        batch.certModelList = null == dataList ? Collections.emptyList()
+                : dataList.stream().map(batch.recipientMapper).collect(Collectors.toList());
+        // streamed requests are large batches, others are stamped only when they are big enough to pay for the background
+        properties.put(JsonKey.STAMP_RENDER, String.valueOf(certVar.isStampRender()
+                && (null == dataList || dataList.size() >= certVar.getStampMinRecipients())));
+        CertificateGenerator certificateGenerator = new CertificateGenerator(properties);
+        batch.htmlTemplateUrl = (String) certificate.get(JsonKey.HTML_TEMPLATE);
+        try {
+            batch.htmlTempalteZip = new HTMLTempalteZip(batch.htmlTemplateUrl, properties);
+            logger.info("CertificateBatch:fromRequest:html zip generated");
+        } catch (Exception ex) {
+            logger.error("CertificateBatch:fromRequest:Exception Occurred while creating HtmlTemplate provider.", ex);
+            throw new BaseException("INVALID_PARAM_VALUE", MessageFormat.format(IResponseMessage.INVALID_PARAM_VALUE, batch.htmlTemplateUrl, JsonKey.HTML_TEMPLATE), ResponseCode.CLIENT_ERROR.getCode());
+        }
+        String orgId = (String) certificate.get(JsonKey.ORG_ID);
+        String tag = (String) certificate.get(JsonKey.TAG);
+        batch.directory = "conf/" + orgId.concat("_") + tag.concat("_") + batch.htmlTempalteZip.getZipFileName().concat("/");
+        batch.certificateProcessor = new CertificateProcessor(certificateGenerator, batch.htmlTempalteZip, orgId, tag, batch.directory);
+        // print vendors ask for the whole batch in one pdf, it is written next to the recipient files and uploaded with them
+        if (Boolean.parseBoolean(String.valueOf(certificate.get(JsonKey.BATCH_PDF)))) {
+            batch.certificateProcessor.setBatchPdf(new PdfBatchWriter(new File(batch.directory + "batch_" + UUID.randomUUID() + ".pdf"),
+                    certificateGenerator.getPdfProfile()));
+        }
+        return batch;
+    }
+
+    /**
+     * downloads the template once before the recipients are spread over the workers, waits for the download
+     *
+     * @throws BaseException when template can not be loaded
+     */
+    public void loadTemplate() throws BaseException {
+        try {
+            loadTemplateAsync().toCompletableFuture().join();
+        } catch (CompletionException ex) {
+            throw (BaseException) ex.getCause();
+        }
+    }
+
+    /**
+     * downloads the template once before the recipients are spread over the workers, without holding the
+     * calling thread while the template is downloaded
+     *
+     * @return stage completed once the template is loaded, or with a BaseException when it can not be loaded
+     */
+    public CompletionStage<Void> loadTemplateAsync() {
+        CompletableFuture<Void> loaded = new CompletableFuture<>();
+        BlockingIoExecutor.getInstance().submit(BlockingIoExecutor.Dependency.TEMPLATE, () -> {
+            htmlTempalteZip.getTemplateContent(directory);
+            return null;
+        }).whenComplete((result, ex) -> {
+            if (null == ex) {
+                loaded.complete(null);
+            } else {
+                logger.error("CertificateBatch:loadTemplate:Exception Occurred while loading html template.", ex);
+                loaded.completeExceptionally(new BaseException("INVALID_PARAM_VALUE", MessageFormat.format(IResponseMessage.INVALID_PARAM_VALUE, htmlTemplateUrl, JsonKey.HTML_TEMPLATE), ResponseCode.CLIENT_ERROR.getCode()));
+            }
+        });
+        return loaded;
+    }
+
+    /**
+     * analysis of the loaded template, worked out once and shared by every batch of the same template
+     *
+     * @return analysis of the template
+     * @throws BaseException when the template is not loaded or can not be read
+     */
+    public TemplateAnalysis getTemplateAnalysis() throws BaseException {
+        try {
+            return VelocityTemplateCache.getInstance().getAnalysis(htmlTempalteZip.getTemplateId(), htmlTempalteZip.getTemplateContent(directory));
+        } catch (Exception ex) {
+            logger.error("CertificateBatch:getTemplateAnalysis:Exception Occurred while reading html template.", ex);
+            throw new BaseException("INVALID_PARAM_VALUE", MessageFormat.format(IResponseMessage.INVALID_PARAM_VALUE, htmlTemplateUrl, JsonKey.HTML_TEMPLATE), ResponseCode.CLIENT_ERROR.getCode());
+        }
+    }
+
+    /**
+     * keeps the template of the batch in the template cache until it is unpinned, only a template loaded from a
+     * zip of the cache is pinned, any other template is not kept by the cache
+     *
+     * @return true when the template was pinned
+     */
+    public boolean pinTemplate() {
+        if (!htmlTempalteZip.isCached()) {
+            logger.info("CertificateBatch:pinTemplate:" + htmlTemplateUrl + " is not a cached template zip, it is not pinned");
+            return false;
+        }
+        TemplateCache.getInstance(properties).pin(htmlTemplateUrl);
+        return true;
+    }
+
+    /**
+     * @return template cache shared by all the batches
+     */
+    public static TemplateCache getTemplateCache() {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(JsonKey.TEMPLATE_CACHE_DIR, certVar.getTemplateCacheDir());
+        properties.put(JsonKey.TEMPLATE_CACHE_MAX_MB, String.valueOf(certVar.getTemplateCacheMaxMb()));
+        return TemplateCache.getInstance(properties);
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public List<CertModel> getCertModelList() {
+        return certModelList;
+    }
+
+    public Function<Map<String, Object>, CertModel> getRecipientMapper() {
+        return recipientMapper;
+    }
+
+    public CertificateProcessor getCertificateProcessor() {
+        return certificateProcessor;
+    }
+
+    private static HashMap<String, String> populatePropertiesMap(Map<String, Object> certificate) {
+        HashMap<String, String> properties = new HashMap<>();
+
+        String orgId = (String) certificate.get(JsonKey.ORG_ID);
+        String tag = (String) certificate.get(JsonKey.TAG);
+        Map<String, Object> keysObject = (Map<String, Object>) certificate.get(JsonKey.KEYS);
+        if (MapUtils.isNotEmpty(keysObject)) {
+            String keyId = (String) keysObject.get(JsonKey.ID);
+            properties.put(JsonKey.KEY_ID, keyId);
+            properties.put(JsonKey.SIGN_CREATOR, certVar.getSignCreator(orgId, keyId));
+            properties.put(JsonKey.PUBLIC_KEY_URL, certVar.getPUBLIC_KEY_URL(orgId, keyId));
+            logger.info("populatePropertiesMap: keys after".concat(keyId));
+        }
+        properties.put(JsonKey.ORG_ID, orgId);
+        properties.put(JsonKey.TAG, tag);
+        properties.put(JsonKey.CONTAINER_NAME, certVar.getCONTAINER_NAME());
+        properties.put(JsonKey.DOMAIN_URL, certVar.getDOMAIN_URL());
+        properties.put(JsonKey.BADGE_URL, certVar.getBADGE_URL(orgId, tag));
+        properties.put(JsonKey.ISSUER_URL, certVar.getISSUER_URL(orgId));
+        properties.put(JsonKey.CONTEXT, certVar.getCONTEXT());
+        properties.put(JsonKey.VERIFICATION_TYPE, certVar.getVERIFICATION_TYPE());
+        properties.put(JsonKey.ACCESS_CODE_LENGTH, certVar.getACCESS_CODE_LENGTH());
+        properties.put(JsonKey.SIGN_URL, certVar.getEncSignUrl());
+        properties.put(JsonKey.SIGN_VERIFY_URL, certVar.getEncSignVerifyUrl());
+        properties.put(JsonKey.ENC_SERVICE_URL, certVar.getEncryptionServiceUrl());
+        properties.put(JsonKey.SIGNATORY_EXTENSION, certVar.getSignatoryExtensionUrl());
+        properties.put(JsonKey.SLUG, certVar.getSlug());
+        properties.put(JsonKey.CLOUD_STORAGE_TYPE, certVar.getCloudStorageType());
+        properties.put(JsonKey.CLOUD_UPLOAD_RETRY_COUNT, certVar.getCLOUD_UPLOAD_RETRY_COUNT());
+        properties.put(JsonKey.AZURE_STORAGE_SECRET, certVar.getAzureStorageSecret());
+        properties.put(JsonKey.AZURE_STORAGE_KEY, certVar.getAzureStorageKey());
+        properties.put(JsonKey.TEMPLATE_CACHE_DIR, certVar.getTemplateCacheDir());
+        properties.put(JsonKey.TEMPLATE_CACHE_MAX_MB, String.valueOf(certVar.getTemplateCacheMaxMb()));
+        properties.put(JsonKey.IN_MEMORY_RENDER, String.valueOf(certVar.isInMemoryRender()));
+        properties.put(JsonKey.RESOURCE_CACHE_MAX_MB, String.valueOf(certVar.getResourceCacheMaxMb()));
+        properties.put(JsonKey.RESOURCE_CACHE_TTL_MINUTES, String.valueOf(certVar.getResourceCacheTtlMinutes()));
+        properties.put(JsonKey.RENDER_TIMEOUT_SECONDS, String.valueOf(certVar.getRenderTimeoutSeconds()));
+        properties.put(JsonKey.RENDER_MAX_PAGES, String.valueOf(certVar.getRenderMaxPages()));
+        properties.put(JsonKey.RENDER_MAX_MB, String.valueOf(certVar.getRenderMaxMb()));
+        properties.put(JsonKey.PDF_PROFILE, certVar.getPdfProfile());
+        properties.put(JsonKey.PDF_IMAGE_DPI, String.valueOf(certVar.getPdfImageDpi()));
+
+        logger.info("CertificateBatch:getProperties:properties got from Constant File ".concat(Collections.singleton(properties.toString()) + ""));
+        return properties;
+    }
+}
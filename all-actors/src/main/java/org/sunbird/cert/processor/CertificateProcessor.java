@@ -0,0 +1,343 @@
+package org.sunbird.cert.processor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.incredible.CertificateGenerator;
+import org.incredible.certProcessor.CertModel;
+import org.incredible.certProcessor.store.StorageParams;
+import org.incredible.certProcessor.views.HTMLTemplateProvider;
+import org.incredible.certProcessor.views.PdfBatchWriter;
+import org.incredible.certProcessor.views.PdfOutputProfile;
+import org.incredible.pojos.CertificateExtension;
+import org.incredible.pojos.CertificateResponse;
+import org.sunbird.BaseException;
+import org.sunbird.CertsConstant;
+import org.sunbird.JsonKey;
+import org.sunbird.message.IResponseMessage;
+import org.sunbird.message.ResponseCode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class generates, uploads and cleans up the certificate of a single recipient of a batch.
+ * One instance is shared by all the recipients of a batch, so it must not keep per recipient state.
+ * When the batch asks for a merged pdf, every uploaded certificate is also appended to it.
+ */
+public class CertificateProcessor {
+    private Logger logger = Logger.getLogger(CertificateProcessor.class);
+    private static CertsConstant certVar = new CertsConstant();
+    private ObjectMapper mapper = new ObjectMapper();
+
+    private CertificateGenerator certificateGenerator;
+    private HTMLTemplateProvider htmlTemplateProvider;
+    private String orgId;
+    private String tag;
+    private String directory;
+    private PdfBatchWriter batchPdf;
+
+    public CertificateProcessor(CertificateGenerator certificateGenerator, HTMLTemplateProvider htmlTemplateProvider,
+                                String orgId, String tag, String directory) {
+        this.certificateGenerator = certificateGenerator;
+        this.htmlTemplateProvider = htmlTemplateProvider;
+        this.orgId = orgId;
+        this.tag = tag;
+        this.directory = directory;
+    }
+
+    /**
+     * @param batchPdf merged pdf the uploaded certificates of the batch are appended to
+     */
+    public void setBatchPdf(PdfBatchWriter batchPdf) {
+        this.batchPdf = batchPdf;
+    }
+
+    /**
+     * generates and uploads the certificate of given recipient, temp files of the recipient are always removed
+     *
+     * @param certModel recipient details
+     * @return map with pdf url, json url, id, access code and json data of the certificate
+     * @throws BaseException when generation or upload fails
+     */
+    public Map<String, Object> process(CertModel certModel) throws BaseException {
+        return upload(render(sign(certModel)), certModel.getIdentifier());
+    }
+
+    /**
+     * sign stage, builds and signs the certificate of the recipient
+     *
+     * @param certModel recipient details
+     * @return signed certificate
+     * @throws BaseException when signing fails
+     */
+    public CertificateExtension sign(CertModel certModel) throws BaseException {
+        try {
+            return certificateGenerator.signCertificate(certModel);
+        } catch (Exception ex) {
+            logger.error("CertificateProcessor:sign:Exception Occurred while signing certificate. : " + ex.getMessage());
+            throw new BaseException(IResponseMessage.INTERNAL_ERROR, ex.getMessage(), ResponseCode.SERVER_ERROR.getCode());
+        }
+    }
+
+    /**
+     * render stage, writes the json, qr code, html and pdf of the certificate in the working directory,
+     * or keeps the json and pdf in the response when rendering in memory
+     *
+     * @param certificateExtension signed certificate
+     * @return certificate response, its files or buffers are left for the upload stage
+     * @throws BaseException when rendering fails, files written so far are removed
+     */
+    public CertificateResponse render(CertificateExtension certificateExtension) throws BaseException {
+        try {
+            return certificateGenerator.renderCertificate(certificateExtension, htmlTemplateProvider, directory);
+        } catch (Exception ex) {
+            logger.error("CertificateProcessor:render:Exception Occurred while generating certificate. : " + ex.getMessage());
+            if (!certificateGenerator.isInMemory()) cleanup(directory, StringUtils.substringBefore(StringUtils.substringAfterLast(certificateExtension.getId(), "/"), "."));
+            throw new BaseException(IResponseMessage.INTERNAL_ERROR, ex.getMessage(), ResponseCode.SERVER_ERROR.getCode());
+        }
+    }
+
+    /**
+     * upload stage, uploads the rendered files and always removes them
+     *
+     * @param certificateResponse rendered certificate
+     * @param recipientId         id of the recipient
+     * @return map with pdf url, json url, id, access code and json data of the certificate
+     * @throws BaseException when upload fails
+     */
+    public Map<String, Object> upload(CertificateResponse certificateResponse, String recipientId) throws BaseException {
+        return upload(certificateResponse, recipientId, -1);
+    }
+
+    /**
+     * upload stage, uploads the rendered files, adds the certificate to the merged pdf of the batch and always
+     * removes the files
+     *
+     * @param certificateResponse rendered certificate
+     * @param recipientId         id of the recipient
+     * @param index               index of the recipient in the batch, its place in the merged pdf
+     * @return map with pdf url, json url, id, access code and json data of the certificate
+     * @throws BaseException when upload fails
+     */
+    public Map<String, Object> upload(CertificateResponse certificateResponse, String recipientId, int index) throws BaseException {
+        if (null != certificateResponse.getPdfData()) {
+            // rendered in memory, no file of the certificate is left to remove
+            Map<String, Object> resMap = uploadCertificate(certificateResponse, recipientId);
+            appendToBatchPdf(certificateResponse, index);
+            return resMap;
+        }
+        try {
+            Map<String, Object> resMap = uploadCertificate(certificateResponse, recipientId);
+            appendToBatchPdf(certificateResponse, index);
+            return resMap;
+        } finally {
+            cleanup(directory, certificateResponse.getUuid());
+        }
+    }
+
+    /**
+     * removes the files of a rendered certificate which will not be uploaded
+     *
+     * @param certificateResponse rendered certificate
+     */
+    public void discard(CertificateResponse certificateResponse) {
+        if (null == certificateResponse.getPdfData()) {
+            cleanup(directory, certificateResponse.getUuid());
+        }
+    }
+
+    /**
+     * completes the merged pdf once every recipient of the batch is done and uploads it next to the recipient files
+     *
+     * @return url of the merged pdf, null when the batch has none or it could not be completed
+     */
+    public String completeBatchPdf() {
+        if (null == batchPdf) {
+            return null;
+        }
+        try {
+            File file = batchPdf.close();
+            if (null == file) {
+                return null;
+            }
+            String url = uploadFile(file.getName());
+            logger.info("CertificateProcessor:completeBatchPdf:merged pdf of " + batchPdf.getCertificateCount()
+                    + " certificates uploaded to " + url);
+            return StringUtils.defaultIfBlank(url, null);
+        } catch (IOException ex) {
+            logger.error("CertificateProcessor:completeBatchPdf:Exception Occurred while completing merged pdf. : " + ex.getMessage());
+            return null;
+        } finally {
+            batchPdf.discard();
+        }
+    }
+
+    /**
+     * drops the merged pdf of the batch when a recipient failed, a merged pdf is only uploaded with every recipient
+     *
+     * @param recipientId id of the failed recipient
+     */
+    public void recipientFailed(String recipientId) {
+        if (null != batchPdf && !batchPdf.isClosed()) {
+            logger.info("CertificateProcessor:recipientFailed:merged pdf dropped, recipient " + recipientId + " failed");
+            batchPdf.discard();
+        }
+    }
+
+    /**
+     * removes the merged pdf of a batch which did not complete, nothing is done when it was completed already
+     */
+    public void discardBatchPdf() {
+        if (null != batchPdf) {
+            batchPdf.discard();
+        }
+    }
+
+    /**
+     * @return how the pdfs of the batch are written, with the sizes of the pdfs written so far
+     */
+    public PdfOutputProfile getPdfProfile() {
+        return certificateGenerator.getPdfProfile();
+    }
+
+    /**
+     * @return certificates of the batch stamped on its background so far
+     */
+    public long getStampedCount() {
+        return certificateGenerator.getStampedCount();
+    }
+
+    /**
+     * @return certificates of the batch converted from html so far while stamping was on
+     */
+    public long getStampFallbackCount() {
+        return certificateGenerator.getStampFallbackCount();
+    }
+
+    /**
+     * map reported for a recipient whose certificate could not be generated
+     *
+     * @param certModel recipient details
+     * @param ex        failure of the recipient
+     * @return map with recipient id, failed status and error message
+     */
+    public static Map<String, Object> getFailureResult(CertModel certModel, Exception ex) {
+        return getFailureResult(certModel.getIdentifier(), ex.getMessage());
+    }
+
+    /**
+     * map reported for a recipient whose certificate could not be generated
+     *
+     * @param recipientId id of the recipient, can be null
+     * @param errorMsg    reason of the failure
+     * @return map with recipient id, failed status and error message
+     */
+    public static Map<String, Object> getFailureResult(String recipientId, String errorMsg) {
+        Map<String, Object> resMap = new HashMap<>();
+        resMap.put(JsonKey.RECIPIENT_ID, recipientId);
+        resMap.put(JsonKey.STATUS, JsonKey.FAILED);
+        resMap.put(JsonKey.ERROR_MSG, errorMsg);
+        return resMap;
+    }
+
+    private void cleanup(String path, String fileName) {
+        if (StringUtils.isBlank(fileName)) {
+            return;
+        }
+        try {
+            File directory = new File(path);
+            File[] files = directory.listFiles();
+            for (File file : files) {
+                if (file.getName().startsWith(fileName)) file.delete();
+            }
+            logger.info("CertificateProcessor: cleanUp completed");
+        } catch (Exception ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * a certificate missing from the merged pdf would go unnoticed in print, so the merged pdf is dropped instead
+     */
+    private void appendToBatchPdf(CertificateResponse certificateResponse, int index) {
+        if (null == batchPdf || index < 0) {
+            return;
+        }
+        try {
+            if (null != certificateResponse.getPdfData()) {
+                batchPdf.append(index, certificateResponse.getPdfData());
+            } else {
+                batchPdf.append(index, FileUtils.getFile(directory + certificateResponse.getUuid() + ".pdf"));
+            }
+        } catch (IOException ex) {
+            logger.error("CertificateProcessor:appendToBatchPdf:merged pdf dropped, certificate " + certificateResponse.getUuid()
+                    + " could not be appended. : " + ex.getMessage());
+        }
+    }
+
+    private Map<String, Object> uploadCertificate(CertificateResponse certificateResponse, String recipientID) throws BaseException {
+        Map<String, Object> resMap = new HashMap<>();
+        String certFileName = certificateResponse.getUuid() + ".pdf";
+        if (null != certificateResponse.getPdfData()) {
+            resMap.put(JsonKey.PDF_URL, uploadData(certFileName, certificateResponse.getPdfData()));
+            certFileName = certificateResponse.getUuid() + ".json";
+            resMap.put(JsonKey.JSON_URL, uploadData(certFileName, certificateResponse.getJsonData().getBytes(StandardCharsets.UTF_8)));
+        } else {
+            resMap.put(JsonKey.PDF_URL, uploadFile(certFileName));
+            certFileName = certificateResponse.getUuid() + ".json";
+            resMap.put(JsonKey.JSON_URL, uploadFile(certFileName));
+        }
+        resMap.put(JsonKey.UNIQUE_ID, certificateResponse.getUuid());
+        resMap.put(JsonKey.RECIPIENT_ID, recipientID);
+        resMap.put(JsonKey.ACCESS_CODE, certificateResponse.getAccessCode());
+        try {
+            resMap.put(JsonKey.JSON_DATA, mapper.readValue(certificateResponse.getJsonData(), Map.class));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (StringUtils.isBlank((String) resMap.get(JsonKey.PDF_URL)) || StringUtils.isBlank((String) resMap.get(JsonKey.JSON_URL))) {
+            logger.error("CertificateProcessor:uploadCertificate:Exception Occurred while uploading certificate pdfUrl and jsonUrl is null");
+            throw new BaseException("INTERNAL_SERVER_ERROR", IResponseMessage.ERROR_UPLOADING_CERTIFICATE, ResponseCode.SERVER_ERROR.getCode());
+        }
+        return resMap;
+    }
+
+    /**
+     * uploads a rendered buffer straight to the store, nothing is written to the disk
+     */
+    private String uploadData(String certFileName, byte[] data) {
+        try {
+            return storageParams().upload(orgId + "/" + tag + "/", certFileName, data);
+        } catch (Exception ex) {
+            logger.info("CertificateProcessor:uploadData: Exception occurred while uploading certificate " + certFileName, ex);
+            return StringUtils.EMPTY;
+        }
+    }
+
+    private String uploadFile(String certFileName) {
+        try {
+            File file = FileUtils.getFile(directory + certFileName);
+            return storageParams().upload(orgId + "/" + tag + "/", file, false);
+        } catch (Exception ex) {
+            logger.info("CertificateProcessor:upload: Exception occurred while uploading certificate.", ex);
+        }
+        return StringUtils.EMPTY;
+    }
+
+    private StorageParams storageParams() {
+        HashMap<String, String> properties = new HashMap<>();
+        properties.put(JsonKey.CONTAINER_NAME, certVar.getCONTAINER_NAME());
+        properties.put(JsonKey.CLOUD_STORAGE_TYPE, certVar.getCloudStorageType());
+        properties.put(JsonKey.CLOUD_UPLOAD_RETRY_COUNT, certVar.getCLOUD_UPLOAD_RETRY_COUNT());
+        properties.put(JsonKey.AZURE_STORAGE_SECRET, certVar.getAzureStorageSecret());
+        properties.put(JsonKey.AZURE_STORAGE_KEY, certVar.getAzureStorageKey());
+        StorageParams storageParams = new StorageParams(properties);
+        storageParams.init();
+        return storageParams;
+    }
+}
@@ -0,0 +1,182 @@
+package org.sunbird.cert.processor;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Source;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.FileUtils;
+import org.sunbird.JsonKey;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * This class reads a generate certificate request body from a file without building it in memory.
+ * The header (everything but certificate.data) is read in a first pass which only counts the data entries,
+ * then the data entries are read one at a time in a second pass, so memory does not grow with the batch size.
+ * An entry which is not an object is read as an empty entry in its place, so it fails alone on validation and
+ * the entries after it keep their index.
+ */
+public class CertificateRequestReader {
+    private static final String REQUEST = "request";
+    private static ObjectMapper mapper = new ObjectMapper();
+
+    private File file;
+
+    public CertificateRequestReader(File file) {
+        this.file = file;
+    }
+
+    /**
+     * reads the request body without certificate.data, the number of data entries is put in certificate.dataCount
+     *
+     * @return request body map
+     * @throws IOException when the body is not a valid json object
+     */
+    public Map<String, Object> readHeader() throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(file)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            Map<String, Object> body = new HashMap<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (REQUEST.equals(name) && token == JsonToken.START_OBJECT) {
+                    body.put(name, readRequest(parser));
+                } else {
+                    body.put(name, parser.readValueAs(Object.class));
+                }
+            }
+            return body;
+        }
+    }
+
+    /**
+     * @return reader positioned on the first entry of certificate.data, to be closed by the caller
+     * @throws IOException when the body has no certificate.data array
+     */
+    public DataReader openData() throws IOException {
+        JsonParser parser = mapper.getFactory().createParser(file);
+        try {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            if (!moveToField(parser, REQUEST) || !moveToField(parser, JsonKey.CERTIFICATE) || !moveToField(parser, JsonKey.DATA)) {
+                throw new IOException("certificate.data not found in request body");
+            }
+            expect(parser.currentToken(), JsonToken.START_ARRAY);
+            return new DataReader(parser);
+        } catch (IOException ex) {
+            parser.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return source of the entries of certificate.data, read one at a time as they are pulled, the file is
+     * deleted once the source completes, fails or is cancelled
+     */
+    public Source<Map<String, Object>, NotUsed> dataSource() {
+        return Source.unfoldResource(this::openData, DataReader::next, reader -> {
+            try {
+                reader.close();
+            } finally {
+                FileUtils.deleteQuietly(file);
+            }
+        });
+    }
+
+    /**
+     * reads the entries of certificate.data one by one
+     */
+    public static class DataReader implements Closeable {
+        private JsonParser parser;
+
+        private DataReader(JsonParser parser) {
+            this.parser = parser;
+        }
+
+        /**
+         * @return next entry, an empty map when the entry is not an object, empty after the last one
+         * @throws IOException when the body is not valid json
+         */
+        public Optional<Map<String, Object>> next() throws IOException {
+            JsonToken token = parser.nextToken();
+            if (null == token || token == JsonToken.END_ARRAY) {
+                return Optional.empty();
+            }
+            if (token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                return Optional.of(new HashMap<>());
+            }
+            return Optional.of(parser.readValueAs(Map.class));
+        }
+
+        @Override
+        public void close() throws IOException {
+            parser.close();
+        }
+    }
+
+    private Map<String, Object> readRequest(JsonParser parser) throws IOException {
+        Map<String, Object> request = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (JsonKey.CERTIFICATE.equals(name) && token == JsonToken.START_OBJECT) {
+                request.put(name, readCertificate(parser));
+            } else {
+                request.put(name, parser.readValueAs(Object.class));
+            }
+        }
+        return request;
+    }
+
+    private Map<String, Object> readCertificate(JsonParser parser) throws IOException {
+        Map<String, Object> certificate = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (JsonKey.DATA.equals(name) && token == JsonToken.START_ARRAY) {
+                int count = 0;
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    if (null == token) {
+                        throw new IOException("invalid request body, certificate.data is not closed");
+                    }
+                    parser.skipChildren();
+                    count++;
+                }
+                certificate.put(JsonKey.DATA_COUNT, count);
+            } else if (JsonKey.DATA_COUNT.equals(name)) {
+                // the count is worked out from the data, a count sent by the caller is ignored
+                parser.skipChildren();
+            } else {
+                certificate.put(name, parser.readValueAs(Object.class));
+            }
+        }
+        return certificate;
+    }
+
+    /**
+     * skips the fields of the current object till the given one, leaving the parser on its value
+     */
+    private static boolean moveToField(JsonParser parser, String field) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            if (field.equals(name)) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    private static void expect(JsonToken token, JsonToken expected) throws IOException {
+        if (token != expected) {
+            throw new IOException("invalid request body, expected " + expected + " but found " + token);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package org.sunbird.cert.template;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.incredible.certProcessor.CertModel;
+import org.incredible.certProcessor.views.TemplateAnalysis;
+import org.sunbird.BaseException;
+import org.sunbird.JsonKey;
+import org.sunbird.cert.processor.BatchCertificateProcessor;
+import org.sunbird.cert.processor.CertificateBatch;
+import org.sunbird.cert.processor.CertificateProcessor;
+import org.sunbird.message.IResponseMessage;
+import org.sunbird.message.ResponseCode;
+import org.sunbird.metrics.CertMetrics;
+
+import java.io.File;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class registers html templates ahead of the batches using them. A registration downloads and unpacks the
+ * template, analyses it and renders one dummy certificate, so the first batch of the template finds everything
+ * warm, and pins the template in the template cache until it is unregistered. Only template zips are kept by
+ * the cache, any other template is warmed up but reported as not pinned. The dummy certificate is signed as
+ * hosted, so no signing key is used, and it is never uploaded.
+ */
+public class TemplateRegistry {
+    private static Logger logger = Logger.getLogger(TemplateRegistry.class);
+    private static final String WARM_UP = "warmup";
+    // transparent 1x1 png, so the dummy certificate does not fetch a signatory image
+    private static final String WARM_UP_IMAGE = "data:image/png;base64,iVBORw0KGgoAAAANSUhEUgAAAAEAAAABCAYAAAAfFcSJAAAADUlEQVR42mNkYPhfDwAChwGA60e6kgAAAABJRU5ErkJggg==";
+    private static TemplateRegistry instance = new TemplateRegistry();
+
+    private final CertMetrics metrics = CertMetrics.getInstance();
+    private final Map<String, Map<String, Object>> reports = new ConcurrentHashMap<>();
+
+    private TemplateRegistry() {
+    }
+
+    public static TemplateRegistry getInstance() {
+        return instance;
+    }
+
+    /**
+     * warms up and pins a template, registering it again warms it up again
+     *
+     * @param htmlTemplate template url
+     * @return stage completed with the warm up report, or with a BaseException when the template can not be
+     * loaded or is not valid
+     */
+    public CompletionStage<Map<String, Object>> register(String htmlTemplate) {
+        long startTime = System.currentTimeMillis();
+        CertificateBatch batch;
+        try {
+            batch = CertificateBatch.fromRequest(getWarmUpRequest(htmlTemplate));
+        } catch (BaseException ex) {
+            CompletableFuture<Map<String, Object>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+            return failed;
+        }
+        return batch.loadTemplateAsync()
+                .thenApplyAsync(loaded -> {
+                    try {
+                        return warmUp(batch, htmlTemplate, startTime);
+                    } catch (BaseException ex) {
+                        throw new CompletionException(ex);
+                    } finally {
+                        FileUtils.deleteQuietly(new File(batch.getDirectory()));
+                    }
+                }, BatchCertificateProcessor.getRenderExecutor());
+    }
+
+    /**
+     * unpins a template, it stays cached till it is evicted like any other template
+     *
+     * @param htmlTemplate template url
+     * @throws BaseException when the template is not registered
+     */
+    public void unregister(String htmlTemplate) throws BaseException {
+        reports.remove(htmlTemplate);
+        if (!CertificateBatch.getTemplateCache().unpin(htmlTemplate)) {
+            throw new BaseException("RESOURCE_NOT_FOUND", MessageFormat.format(IResponseMessage.TEMPLATE_NOT_REGISTERED, htmlTemplate),
+                    ResponseCode.RESOURCE_NOT_FOUND.getCode());
+        }
+        logger.info("TemplateRegistry:unregister:" + htmlTemplate + " unregistered");
+    }
+
+    /**
+     * @return registered templates, with the report of their last warm up when it was done since the start
+     */
+    public List<Map<String, Object>> getTemplates() {
+        List<Map<String, Object>> templates = new ArrayList<>();
+        for (String htmlTemplate : CertificateBatch.getTemplateCache().getPinned()) {
+            Map<String, Object> report = reports.get(htmlTemplate);
+            if (null == report) {
+                report = new HashMap<>();
+                report.put(JsonKey.HTML_TEMPLATE, htmlTemplate);
+                report.put(JsonKey.PINNED, true);
+            }
+            templates.add(report);
+        }
+        return templates;
+    }
+
+    private Map<String, Object> warmUp(CertificateBatch batch, String htmlTemplate, long startTime) throws BaseException {
+        long loadedTime = System.currentTimeMillis();
+        TemplateAnalysis analysis = batch.getTemplateAnalysis();
+        if (!analysis.isValid()) {
+            logger.error("TemplateRegistry:warmUp:" + htmlTemplate + " is not valid, unsupported variables "
+                    + analysis.getInvalidVariables() + " " + analysis.getParseError());
+            throw new BaseException("INVALID_PARAM_VALUE", MessageFormat.format(IResponseMessage.INVALID_PARAM_VALUE, htmlTemplate, JsonKey.HTML_TEMPLATE),
+                    ResponseCode.CLIENT_ERROR.getCode());
+        }
+        long analysedTime = System.currentTimeMillis();
+        CertificateProcessor processor = batch.getCertificateProcessor();
+        CertModel certModel = batch.getCertModelList().get(0);
+        processor.render(processor.sign(certModel));
+        long renderedTime = System.currentTimeMillis();
+        boolean pinned = batch.pinTemplate();
+
+        Map<String, Object> report = new HashMap<>();
+        report.put(JsonKey.HTML_TEMPLATE, htmlTemplate);
+        report.put(JsonKey.PINNED, pinned);
+        report.put(JsonKey.VARIABLES, new ArrayList<>(analysis.getVariables()));
+        report.put(JsonKey.ENGINE, analysis.getEngine().getName());
+        report.put(JsonKey.TEMPLATE_MILLIS, loadedTime - startTime);
+        report.put(JsonKey.ANALYSE_MILLIS, analysedTime - loadedTime);
+        report.put(JsonKey.RENDER_MILLIS, renderedTime - analysedTime);
+        report.put(JsonKey.ELAPSED_MILLIS, renderedTime - startTime);
+        report.put(JsonKey.CREATED_ON, renderedTime);
+        if (pinned) {
+            reports.put(htmlTemplate, report);
+        }
+        metrics.increment("template.registered");
+        logger.info("TemplateRegistry:warmUp:" + htmlTemplate + " warmed up in " + (renderedTime - startTime) + " ms, template "
+                + (loadedTime - startTime) + " ms, analyse " + (analysedTime - loadedTime) + " ms, render " + (renderedTime - analysedTime) + " ms");
+        return report;
+    }
+
+    /**
+     * generate request of one dummy recipient, under a tag of its own so its working directory is not shared
+     */
+    private static Map<String, Object> getWarmUpRequest(String htmlTemplate) {
+        Map<String, Object> issuer = new HashMap<>();
+        issuer.put(JsonKey.NAME, WARM_UP);
+        issuer.put(JsonKey.URL, "http://localhost");
+        issuer.put(JsonKey.PUBLIC_KEY, Collections.emptyList());
+        Map<String, Object> signatory = new HashMap<>();
+        signatory.put(JsonKey.NAME, WARM_UP);
+        signatory.put(JsonKey.ID, WARM_UP);
+        signatory.put(JsonKey.DESIGNATION, WARM_UP);
+        signatory.put(JsonKey.SIGNATORY_IMAGE, WARM_UP_IMAGE);
+        Map<String, Object> recipient = new HashMap<>();
+        recipient.put(JsonKey.RECIPIENT_NAME, WARM_UP);
+        recipient.put(JsonKey.RECIPIENT_ID, WARM_UP);
+        Map<String, Object> certificate = new HashMap<>();
+        certificate.put(JsonKey.HTML_TEMPLATE, htmlTemplate);
+        certificate.put(JsonKey.NAME, WARM_UP);
+        certificate.put(JsonKey.COURSE_NAME, WARM_UP);
+        certificate.put(JsonKey.ORG_ID, WARM_UP);
+        certificate.put(JsonKey.TAG, WARM_UP + "-" + UUID.randomUUID().toString());
+        certificate.put(JsonKey.ISSUER, issuer);
+        certificate.put(JsonKey.SIGNATORY_LIST, Collections.singletonList(signatory));
+        certificate.put(JsonKey.DATA, Collections.singletonList(recipient));
+        Map<String, Object> request = new HashMap<>();
+        request.put(JsonKey.CERTIFICATE, certificate);
+        return request;
+    }
+}
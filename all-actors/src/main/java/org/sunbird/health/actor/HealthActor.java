@@ -13,7 +13,8 @@ import org.sunbird.response.Response;
  */
 @ActorConfig(
         tasks = {"health"},
-        asyncTasks = {}
+        asyncTasks = {},
+        dispatcher = "health-dispatcher"
 )
 public class HealthActor extends BaseActor{
 
@@ -11,7 +11,11 @@ public interface IResponseMessage {
   String INVALID_OPERATION_NAME = "INVALID_OPERATION_NAME";
   String INTERNAL_ERROR = "INTERNAL_ERROR";
   String UNAUTHORIZED = "UNAUTHORIZED";
+  String REQUEST_TIMEOUT = "REQUEST_TIMEOUT";
   String MANDATORY_PARAMETER_MISSING = "Mandatory parameter {0} is missing.";
   String INVALID_PARAM_VALUE = "Invalid value {0} for parameter {1}.";
   String ERROR_UPLOADING_CERTIFICATE="ERROR_UPLOADING_CERTIFICATE";
+  String JOB_NOT_FOUND = "Job {0} not found.";
+  String TEMPLATE_NOT_REGISTERED = "Template {0} is not registered.";
+  String TOO_MANY_REQUESTS = "Service is busy with {0} certificates in progress, please retry after {1} seconds.";
 }
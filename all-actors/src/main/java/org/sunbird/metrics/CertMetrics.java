@@ -0,0 +1,63 @@
+package org.sunbird.metrics;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * In process registry of the service metrics, returned as is by the metrics api.
+ */
+public class CertMetrics {
+    private static CertMetrics instance = new CertMetrics();
+
+    private final Map<String, StageMetrics> stages = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, Supplier<Object>> gauges = new ConcurrentHashMap<>();
+    private final long startTime = System.currentTimeMillis();
+
+    private CertMetrics() {
+    }
+
+    public static CertMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param name        stage name
+     * @param parallelism parallelism of the stage, used only on first registration
+     * @return metrics of the stage
+     */
+    public StageMetrics stage(String name, int parallelism) {
+        return stages.computeIfAbsent(name, key -> new StageMetrics(key, parallelism));
+    }
+
+    public void increment(String counter) {
+        add(counter, 1);
+    }
+
+    public void add(String counter, long value) {
+        counters.computeIfAbsent(counter, key -> new LongAdder()).add(value);
+    }
+
+    public void gauge(String name, Supplier<Object> supplier) {
+        gauges.put(name, supplier);
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("uptimeSeconds", (System.currentTimeMillis() - startTime) / 1000);
+        Map<String, Object> stageMap = new HashMap<>();
+        stages.forEach((name, stage) -> stageMap.put(name, stage.toMap()));
+        metrics.put("stages", stageMap);
+        Map<String, Object> counterMap = new HashMap<>();
+        counters.forEach((name, counter) -> counterMap.put(name, counter.sum()));
+        metrics.put("counters", counterMap);
+        Map<String, Object> gaugeMap = new HashMap<>();
+        gauges.forEach((name, gauge) -> gaugeMap.put(name, gauge.get()));
+        metrics.put("gauges", gaugeMap);
+        return metrics;
+    }
+}
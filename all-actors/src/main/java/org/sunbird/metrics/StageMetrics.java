@@ -0,0 +1,64 @@
+package org.sunbird.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of one generation stage: items processed and failed, items in progress and time spent.
+ * The capacity is the items per second the stage can sustain with its parallelism at the current average time,
+ * the stage with the lowest capacity is the one to tune.
+ */
+public class StageMetrics {
+    private final String name;
+    private final int parallelism;
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final AtomicInteger inProgress = new AtomicInteger();
+
+    StageMetrics(String name, int parallelism) {
+        this.name = name;
+        this.parallelism = parallelism;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return start time to be passed to {@link #end(long, boolean)}
+     */
+    public long start() {
+        inProgress.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    public void end(long startTime, boolean success) {
+        busyNanos.add(System.nanoTime() - startTime);
+        inProgress.decrementAndGet();
+        processed.increment();
+        if (!success) {
+            failed.increment();
+        }
+    }
+
+    public long getProcessed() {
+        return processed.sum();
+    }
+
+    public Map<String, Object> toMap() {
+        long count = processed.sum();
+        double avgMillis = count == 0 ? 0 : (double) TimeUnit.NANOSECONDS.toMicros(busyNanos.sum()) / count / 1000;
+        Map<String, Object> stage = new HashMap<>();
+        stage.put("parallelism", parallelism);
+        stage.put("processed", count);
+        stage.put("failed", failed.sum());
+        stage.put("inProgress", inProgress.get());
+        stage.put("avgMillis", Math.round(avgMillis * 100) / 100.0);
+        stage.put("capacityPerSecond", avgMillis == 0 ? 0 : Math.round(parallelism * 1000 / avgMillis * 100) / 100.0);
+        return stage;
+    }
+}
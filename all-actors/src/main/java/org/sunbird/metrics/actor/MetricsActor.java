@@ -0,0 +1,26 @@
+package org.sunbird.metrics.actor;
+
+import org.sunbird.BaseActor;
+import org.sunbird.JsonKey;
+import org.sunbird.actor.core.ActorConfig;
+import org.sunbird.metrics.CertMetrics;
+import org.sunbird.request.Request;
+import org.sunbird.response.Response;
+
+/**
+ * This actor returns the metrics of the service.
+ */
+@ActorConfig(
+        tasks = {JsonKey.GET_METRICS},
+        asyncTasks = {},
+        dispatcher = "health-dispatcher"
+)
+public class MetricsActor extends BaseActor {
+
+    @Override
+    public void onReceive(Request request) throws Throwable {
+        Response response = new Response();
+        response.getResult().putAll(CertMetrics.getInstance().toMap());
+        sender().tell(response, getSelf());
+    }
+}
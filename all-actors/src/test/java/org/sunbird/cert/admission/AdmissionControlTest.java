@@ -0,0 +1,64 @@
+package org.sunbird.cert.admission;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sunbird.ActorServiceException;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Admits requests and job chunks the way the generate actors and the job manager do.
+ */
+public class AdmissionControlTest {
+
+    private final AdmissionControl admissionControl = new AdmissionControl(100);
+
+    @Test
+    public void testQueuedJobHoldsNoCapacity() throws Exception {
+        AdmissionControl.Lease lease = admissionControl.lease();
+
+        admissionControl.admit(100);
+        admissionControl.release(100);
+        CompletableFuture<Void> chunk = lease.admit(20).toCompletableFuture();
+
+        Assert.assertTrue(chunk.isDone());
+        admissionControl.admit(80);
+    }
+
+    @Test
+    public void testChunkWaitsForCapacity() throws Exception {
+        admissionControl.admit(90);
+        AdmissionControl.Lease lease = admissionControl.lease();
+
+        CompletableFuture<Void> chunk = lease.admit(20).toCompletableFuture();
+        Assert.assertFalse("chunk over the capacity waits instead of being rejected", chunk.isDone());
+
+        admissionControl.release(10);
+        Assert.assertTrue(chunk.isDone());
+        assertRejected(1);
+    }
+
+    @Test
+    public void testClosedLeaseGivesBackWhatItHolds() throws Exception {
+        AdmissionControl.Lease lease = admissionControl.lease();
+        lease.admit(20).toCompletableFuture().get();
+        lease.release(5);
+        admissionControl.admit(85);
+        CompletableFuture<Void> waiting = lease.admit(20).toCompletableFuture();
+
+        lease.close();
+
+        Assert.assertTrue("waiting chunk is withdrawn", waiting.isCancelled());
+        admissionControl.admit(15);
+        assertRejected(1);
+    }
+
+    private void assertRejected(int recipients) {
+        try {
+            admissionControl.admit(recipients);
+            Assert.fail(recipients + " recipients admitted over the capacity");
+        } catch (ActorServiceException.TooManyRequests ex) {
+            // expected, the capacity is full
+        }
+    }
+}
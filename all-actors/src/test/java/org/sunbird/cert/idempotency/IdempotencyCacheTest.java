@@ -0,0 +1,96 @@
+package org.sunbird.cert.idempotency;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sunbird.response.Response;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registers retried requests the way the generate actor does, a null from register means the caller generates.
+ */
+public class IdempotencyCacheTest {
+
+    private final IdempotencyCache cache = new IdempotencyCache(100, 60000);
+
+    @Test
+    public void testConcurrentDuplicateJoinsRunningReply() throws Exception {
+        String key = newKey();
+        int callers = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        List<CompletableFuture<Response>> replies = new ArrayList<>();
+        List<Future<CompletableFuture<Response>>> registered = new ArrayList<>();
+        try {
+            for (int i = 0; i < callers; i++) {
+                CompletableFuture<Response> reply = new CompletableFuture<>();
+                replies.add(reply);
+                registered.add(executor.submit(() -> {
+                    start.await();
+                    return cache.register(key, reply);
+                }));
+            }
+            start.countDown();
+            CompletableFuture<Response> generating = null;
+            List<CompletableFuture<Response>> joined = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                CompletableFuture<Response> existing = registered.get(i).get(10, TimeUnit.SECONDS);
+                if (null == existing) {
+                    Assert.assertNull("only one caller generates", generating);
+                    generating = replies.get(i);
+                } else {
+                    joined.add(existing);
+                }
+            }
+            Assert.assertNotNull(generating);
+            Assert.assertEquals(callers - 1, joined.size());
+            for (CompletableFuture<Response> existing : joined) {
+                Assert.assertSame(generating, existing);
+                Assert.assertFalse(existing.isDone());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFinishedReplyIsReplayed() {
+        String key = newKey();
+        CompletableFuture<Response> first = new CompletableFuture<>();
+        Assert.assertNull(cache.register(key, first));
+        Response response = new Response();
+        first.complete(response);
+
+        CompletableFuture<Response> retry = new CompletableFuture<>();
+        CompletableFuture<Response> existing = cache.register(key, retry);
+
+        Assert.assertSame(first, existing);
+        Assert.assertTrue(existing.isDone());
+        Assert.assertSame(response, existing.join());
+        Assert.assertFalse("the retry is not generated", retry.isDone());
+    }
+
+    @Test
+    public void testFailedReplyIsNotKept() {
+        String key = newKey();
+        CompletableFuture<Response> first = new CompletableFuture<>();
+        Assert.assertNull(cache.register(key, first));
+        first.completeExceptionally(new IllegalStateException("generation failed"));
+
+        CompletableFuture<Response> retry = new CompletableFuture<>();
+        Assert.assertNull("the retry generates again", cache.register(key, retry));
+        Assert.assertSame(retry, cache.register(key, new CompletableFuture<>()));
+    }
+
+    private static String newKey() {
+        return "key:" + UUID.randomUUID();
+    }
+}
@@ -0,0 +1,115 @@
+package org.sunbird.cert.job;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sunbird.JsonKey;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replays journals the way a restarted process does.
+ */
+public class JobJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void setUp() {
+        directory = folder.getRoot();
+    }
+
+    @Test
+    public void testTruncatedLastLineIsIgnored() throws IOException {
+        JobJournal journal = new JobJournal(directory.getPath());
+        CertificateJob job = newJob("job-1", 3);
+        journal.accepted(job, 1000);
+        journal.result("job-1", 0, result("r0", JsonKey.SUCCESS), 1001);
+        journal.result("job-1", 1, result("r1", JsonKey.FAILED), 1002);
+        // crash while appending the third result
+        try (FileOutputStream out = new FileOutputStream(new File(directory, "job-1.journal"), true)) {
+            out.write("{\"type\":\"result\",\"index\":2,\"res".getBytes(StandardCharsets.UTF_8));
+        }
+
+        List<CertificateJob> jobs = new JobJournal(directory.getPath()).load();
+
+        Assert.assertEquals(1, jobs.size());
+        CertificateJob loaded = jobs.get(0);
+        Assert.assertEquals("job-1", loaded.getJobId());
+        Assert.assertEquals(2, loaded.getProcessed());
+        Assert.assertEquals(Collections.singletonList(2), loaded.getPendingIndexes());
+        Assert.assertEquals(1, loaded.toMap().get(JsonKey.FAILED_COUNT));
+        Assert.assertFalse(loaded.isFinished());
+    }
+
+    @Test
+    public void testResumeWithOnlyPendingIndexes() throws IOException {
+        JobJournal journal = new JobJournal(directory.getPath());
+        journal.accepted(newJob("job-2", 5), 1000);
+        journal.status("job-2", CertificateJob.Status.RUNNING, null, 1001);
+        journal.result("job-2", 3, result("r3", JsonKey.SUCCESS), 1002);
+        journal.result("job-2", 0, result("r0", JsonKey.SUCCESS), 1003);
+        journal.result("job-2", 2, result("r2", JsonKey.SUCCESS), 1004);
+
+        CertificateJob loaded = new JobJournal(directory.getPath()).load().get(0);
+
+        Assert.assertEquals(CertificateJob.Status.RUNNING, loaded.getStatus());
+        Assert.assertEquals(5, loaded.getTotal());
+        Assert.assertEquals(3, loaded.getProcessed());
+        Assert.assertEquals(Arrays.asList(1, 4), loaded.getPendingIndexes());
+        Assert.assertEquals(1004, loaded.getUpdatedOn());
+    }
+
+    @Test
+    public void testFinishedJobKeepsStatusAndBatchPdf() throws IOException {
+        JobJournal journal = new JobJournal(directory.getPath());
+        journal.accepted(newJob("job-3", 1), 1000);
+        journal.result("job-3", 0, result("r0", JsonKey.SUCCESS), 1001);
+        journal.batchPdf("job-3", "https://store/org/tag/batch.pdf", 1002);
+        journal.status("job-3", CertificateJob.Status.COMPLETED, null, 1003);
+
+        CertificateJob loaded = new JobJournal(directory.getPath()).load().get(0);
+
+        Assert.assertTrue(loaded.isFinished());
+        Assert.assertTrue(loaded.getPendingIndexes().isEmpty());
+        Assert.assertEquals("https://store/org/tag/batch.pdf", loaded.toMap().get(JsonKey.BATCH_PDF_URL));
+    }
+
+    @Test
+    public void testDeletedJobIsNotLoaded() throws IOException {
+        JobJournal journal = new JobJournal(directory.getPath());
+        journal.accepted(newJob("job-4", 1), 1000);
+        journal.status("job-4", CertificateJob.Status.FAILED, "template not found", 1001);
+
+        journal.delete("job-4");
+
+        Assert.assertTrue(new JobJournal(directory.getPath()).load().isEmpty());
+        Assert.assertFalse(new File(directory, "job-4.journal").exists());
+    }
+
+    private static CertificateJob newJob(String jobId, int total) {
+        Map<String, Object> request = new HashMap<>();
+        request.put(JsonKey.CERTIFICATE, new HashMap<>());
+        return new CertificateJob(jobId, request, total, 1000);
+    }
+
+    private static Map<String, Object> result(String recipientId, String status) {
+        Map<String, Object> result = new HashMap<>();
+        result.put(JsonKey.RECIPIENT_ID, recipientId);
+        result.put(JsonKey.STATUS, status);
+        return result;
+    }
+}
@@ -0,0 +1,164 @@
+package org.sunbird.cert.processor;
+
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.javadsl.Sink;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sunbird.JsonKey;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads request bodies the way the stream endpoint spools them.
+ */
+public class CertificateRequestReaderTest {
+
+    private static final String ENTRIES = "[{\"recipientName\":\"r0\",\"recipientId\":\"id0\"},"
+            + "{\"recipientName\":\"r1\",\"recipientId\":\"id1\"},"
+            + "{\"recipientName\":\"r2\",\"recipientId\":\"id2\"}]";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ActorSystem system;
+
+    @Before
+    public void setUp() {
+        system = ActorSystem.create("certificate-request-reader-test");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        system.terminate();
+        system.getWhenTerminated().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testMalformedEntryIsReadInItsPlace() throws IOException {
+        File body = write("{\"request\":{\"certificate\":{\"orgId\":\"org\",\"data\":["
+                + "{\"recipientName\":\"r0\"},\"r1\",[1,{\"recipientName\":\"x\"}],{\"recipientName\":\"r3\"}]}}}");
+        CertificateRequestReader reader = new CertificateRequestReader(body);
+
+        List<Map<String, Object>> entries = readAll(reader);
+
+        Assert.assertEquals(4, getCertificate(reader.readHeader()).get(JsonKey.DATA_COUNT));
+        Assert.assertEquals(4, entries.size());
+        Assert.assertEquals("r0", entries.get(0).get(JsonKey.RECIPIENT_NAME));
+        Assert.assertTrue("an entry which is not an object fails on its own", entries.get(1).isEmpty());
+        Assert.assertTrue(entries.get(2).isEmpty());
+        Assert.assertEquals("r3", entries.get(3).get(JsonKey.RECIPIENT_NAME));
+    }
+
+    @Test
+    public void testDataCountSentByCallerIsIgnored() throws IOException {
+        File before = write("{\"request\":{\"certificate\":{\"dataCount\":100,\"data\":" + ENTRIES + "}}}");
+        File after = write("{\"request\":{\"certificate\":{\"data\":" + ENTRIES + ",\"dataCount\":1}}}");
+        File missing = write("{\"request\":{\"certificate\":{\"dataCount\":3}}}");
+
+        Assert.assertEquals(3, getCertificate(new CertificateRequestReader(before).readHeader()).get(JsonKey.DATA_COUNT));
+        Assert.assertEquals(3, getCertificate(new CertificateRequestReader(after).readHeader()).get(JsonKey.DATA_COUNT));
+        Assert.assertNull(getCertificate(new CertificateRequestReader(missing).readHeader()).get(JsonKey.DATA_COUNT));
+    }
+
+    @Test
+    public void testDataBeforeOtherFields() throws IOException {
+        assertRequest(write("{\"request\":{\"certificate\":{\"data\":" + ENTRIES
+                + ",\"orgId\":\"org\",\"tag\":\"tag\",\"issuer\":{\"name\":\"issuer\"}},\"extra\":[1,2]},\"id\":\"api.cert.generate\"}"));
+    }
+
+    @Test
+    public void testDataAfterOtherFields() throws IOException {
+        assertRequest(write("{\"id\":\"api.cert.generate\",\"request\":{\"extra\":[1,2],\"certificate\":{\"orgId\":\"org\","
+                + "\"issuer\":{\"name\":\"issuer\",\"data\":[]},\"tag\":\"tag\",\"data\":" + ENTRIES + "}}}"));
+    }
+
+    @Test
+    public void testBodyFileIsDeletedWhenStreamIsAbandoned() throws Exception {
+        File body = write("{\"request\":{\"certificate\":{\"data\":" + ENTRIES + "}}}");
+
+        List<Map<String, Object>> entries = new CertificateRequestReader(body).dataSource()
+                .take(1)
+                .runWith(Sink.seq(), ActorMaterializer.create(system))
+                .toCompletableFuture().get(10, TimeUnit.SECONDS);
+
+        Assert.assertEquals(1, entries.size());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (body.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertFalse("body file of a cancelled stream is deleted", body.exists());
+    }
+
+    @Test
+    public void testBodyFileIsDeletedWhenStreamFails() throws Exception {
+        File body = write("{\"request\":{\"certificate\":{\"data\":[{\"recipientName\":\"r0\"},{\"recipientName\":");
+
+        try {
+            new CertificateRequestReader(body).dataSource()
+                    .runWith(Sink.seq(), ActorMaterializer.create(system))
+                    .toCompletableFuture().get(10, TimeUnit.SECONDS);
+            Assert.fail("truncated body is read to the end");
+        } catch (Exception ex) {
+            // expected, the body is cut in the middle of an entry
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (body.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertFalse("body file of a failed stream is deleted", body.exists());
+    }
+
+    private void assertRequest(File body) throws IOException {
+        CertificateRequestReader reader = new CertificateRequestReader(body);
+        Map<String, Object> header = reader.readHeader();
+        Map<String, Object> certificate = getCertificate(header);
+
+        Assert.assertEquals("api.cert.generate", header.get("id"));
+        Assert.assertEquals("org", certificate.get(JsonKey.ORG_ID));
+        Assert.assertEquals("tag", certificate.get(JsonKey.TAG));
+        Assert.assertNotNull(certificate.get(JsonKey.ISSUER));
+        Assert.assertFalse("data is not kept in the header", certificate.containsKey(JsonKey.DATA));
+        Assert.assertEquals(3, certificate.get(JsonKey.DATA_COUNT));
+        List<Map<String, Object>> entries = readAll(reader);
+        Assert.assertEquals(3, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            Assert.assertEquals("r" + i, entries.get(i).get(JsonKey.RECIPIENT_NAME));
+            Assert.assertEquals("id" + i, entries.get(i).get(JsonKey.RECIPIENT_ID));
+        }
+    }
+
+    private static List<Map<String, Object>> readAll(CertificateRequestReader reader) throws IOException {
+        List<Map<String, Object>> entries = new ArrayList<>();
+        try (CertificateRequestReader.DataReader data = reader.openData()) {
+            Optional<Map<String, Object>> entry;
+            while ((entry = data.next()).isPresent()) {
+                entries.add(entry.get());
+            }
+        }
+        return entries;
+    }
+
+    private static Map<String, Object> getCertificate(Map<String, Object> header) {
+        return (Map<String, Object>) ((Map<String, Object>) header.get("request")).get(JsonKey.CERTIFICATE);
+    }
+
+    private File write(String body) throws IOException {
+        File file = folder.newFile();
+        FileUtils.writeStringToFile(file, body, StandardCharsets.UTF_8);
+        return file;
+    }
+}
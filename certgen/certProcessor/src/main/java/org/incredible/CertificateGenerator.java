@@ -12,6 +12,13 @@ import org.incredible.certProcessor.qrcode.AccessCodeGenerator;
 import org.incredible.certProcessor.qrcode.QRCodeGenerationModel;
 import org.incredible.certProcessor.views.HTMLGenerator;
 import org.incredible.certProcessor.views.HTMLTemplateProvider;
+import org.incredible.certProcessor.views.HTMLVarResolver;
+import org.incredible.certProcessor.views.PdfOutputProfile;
+import org.incredible.certProcessor.views.PdfRenderLimits;
+import org.incredible.certProcessor.views.PdfStamp;
+import org.incredible.certProcessor.views.RemoteResourceCache;
+import org.incredible.certProcessor.views.TemplateAnalysis;
+import org.incredible.certProcessor.views.VelocityTemplateCache;
 import org.incredible.pojos.CertificateExtension;
 import org.incredible.pojos.CertificateResponse;
 import org.incredible.certProcessor.qrcode.utils.QRCodeImageGenerator;
@@ -23,7 +30,14 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.util.Base64;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 
 public class CertificateGenerator {
@@ -32,10 +46,35 @@ public class CertificateGenerator {
     private static Logger logger = LoggerFactory.getLogger(CertificateFactory.class);
 
     private Map<String, String> properties;
-    private ObjectMapper objectMapper = new ObjectMapper();
+    private ObjectMapper objectMapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    private PdfOutputProfile pdfProfile;
+
+    /**
+     * times the stamp of a batch is prepared when its conversions fail, a template which can not be stamped is
+     * not prepared again
+     */
+    private static final int STAMP_ATTEMPTS = 3;
+
+    /**
+     * stamps of all batches are prepared on these threads, a batch waiting for one converts its certificates from html
+     */
+    private static final int STAMP_PREPARE_THREADS = 2;
+    private static final ExecutorService stampPreparePool = createStampPreparePool();
+    private CompletableFuture<PdfStamp> pdfStamp;
+    private int stampAttempts;
+    private final LongAdder stamped = new LongAdder();
+    private final LongAdder stampFallbacks = new LongAdder();
 
     public CertificateGenerator(Map<String, String> properties) {
         this.properties = properties;
+        this.pdfProfile = PdfOutputProfile.fromProperties(properties);
+    }
+
+    /**
+     * @return how the pdfs of the batch are written, with the sizes of the pdfs written so far
+     */
+    public PdfOutputProfile getPdfProfile() {
+        return pdfProfile;
     }
 
     private CertificateFactory certificateFactory = new CertificateFactory();
@@ -43,19 +82,177 @@ public class CertificateGenerator {
 
     public CertificateResponse createCertificate(CertModel certModel, HTMLTemplateProvider htmlTemplateProvider, String directory)
             throws Exception {
+        return renderCertificate(signCertificate(certModel), htmlTemplateProvider, directory);
+    }
+
+    /**
+     * builds the certificate of the recipient and gets it signed, this step waits on the signing service
+     *
+     * @param certModel recipient details
+     * @return signed certificate
+     */
+    public CertificateExtension signCertificate(CertModel certModel) throws Exception {
+        return certificateFactory.createCertificate(certModel, properties);
+    }
+
+    /**
+     * writes the json, qr code, html and pdf files of a signed certificate, this step is cpu bound
+     *
+     * @param certificateExtension signed certificate
+     * @param htmlTemplateProvider template of the certificate
+     * @param directory            directory where files are written
+     * @return certificate response with uuid, access code and json data
+     */
+    public CertificateResponse renderCertificate(CertificateExtension certificateExtension, HTMLTemplateProvider htmlTemplateProvider,
+                                                 String directory) throws Exception {
+        if (isInMemory()) {
+            return renderCertificateInMemory(certificateExtension, htmlTemplateProvider, directory);
+        }
         String uuid = null;
-        CertificateExtension certificateExtension = certificateFactory.createCertificate(certModel, properties);
         String jsonData = generateCertificateJson(certificateExtension, directory);
         String accessCode = generateQRCodeForCertificate(certificateExtension, directory);
         String htmlContent = htmlTemplateProvider.getTemplateContent(directory);
-        if (htmlTemplateProvider.checkHtmlTemplateIsValid(htmlContent)) {
-            HTMLGenerator htmlGenerator = new HTMLGenerator(htmlContent);
-            htmlGenerator.generate(certificateExtension, directory);
+        TemplateAnalysis analysis = htmlContent == null ? null
+                : VelocityTemplateCache.getInstance().getAnalysis(htmlTemplateProvider.getTemplateId(), htmlContent);
+        if (analysis != null && analysis.isValid()) {
             uuid = getUUID(certificateExtension.getId());
+            String baseUri = htmlTemplateProvider.getBaseUri(directory);
+            byte[] pdfData = isStampRender()
+                    ? stampCertificate(certificateExtension, analysis, Files.readAllBytes(new File(directory, uuid + ".png").toPath()), baseUri)
+                    : null;
+            if (pdfData != null) {
+                Files.write(new File(directory, uuid + ".pdf").toPath(), pdfData);
+            } else {
+                getHTMLGenerator(analysis).generate(certificateExtension, directory, baseUri);
+            }
         } else return new CertificateResponse();
         return new CertificateResponse(uuid, accessCode, jsonData);
     }
 
+    /**
+     * @return true when certificates are rendered into memory buffers instead of files
+     */
+    public boolean isInMemory() {
+        return Boolean.parseBoolean(properties.get(JsonKey.IN_MEMORY_RENDER));
+    }
+
+    /**
+     * renders the json, qr code and pdf of a signed certificate in memory, the qr code is embedded in the html
+     * as a data uri and the pdf is kept in the response, so no file of the certificate is written
+     *
+     * @param certificateExtension signed certificate
+     * @param htmlTemplateProvider template of the certificate
+     * @param directory            working directory of the batch
+     * @return certificate response with uuid, access code, json data and pdf data
+     */
+    private CertificateResponse renderCertificateInMemory(CertificateExtension certificateExtension, HTMLTemplateProvider htmlTemplateProvider,
+                                                          String directory) throws Exception {
+        String jsonData = objectMapper.writeValueAsString(certificateExtension);
+        QRCodeGenerationModel qrCodeGenerationModel = getQRCodeGenerationModel(certificateExtension, directory);
+        byte[] qrCode = new QRCodeImageGenerator().createQRImageBytes(qrCodeGenerationModel);
+        String qrCodeImage = "data:image/" + qrCodeGenerationModel.getFileFormat() + ";base64," + Base64.getEncoder().encodeToString(qrCode);
+        String htmlContent = htmlTemplateProvider.getTemplateContent(directory);
+        TemplateAnalysis analysis = htmlContent == null ? null
+                : VelocityTemplateCache.getInstance().getAnalysis(htmlTemplateProvider.getTemplateId(), htmlContent);
+        if (analysis == null || !analysis.isValid()) {
+            return new CertificateResponse();
+        }
+        String baseUri = htmlTemplateProvider.getBaseUri(directory);
+        byte[] pdfData = isStampRender() ? stampCertificate(certificateExtension, analysis, qrCode, baseUri) : null;
+        if (pdfData == null) {
+            pdfData = getHTMLGenerator(analysis).generatePdf(certificateExtension, qrCodeImage, baseUri);
+        }
+        return new CertificateResponse(getUUID(certificateExtension.getId()), qrCodeGenerationModel.getText(), jsonData, pdfData);
+    }
+
+    /**
+     * @return true when certificates are stamped on a background converted once for the batch
+     */
+    public boolean isStampRender() {
+        return Boolean.parseBoolean(properties.get(JsonKey.STAMP_RENDER));
+    }
+
+    /**
+     * @return certificates of the batch stamped on its background so far
+     */
+    public long getStampedCount() {
+        return stamped.sum();
+    }
+
+    /**
+     * @return certificates of the batch converted from html so far while stamping was on
+     */
+    public long getStampFallbackCount() {
+        return stampFallbacks.sum();
+    }
+
+    /**
+     * stamps the certificate on the background of the batch, the background is prepared with the first certificate
+     *
+     * @return pdf content, null when the certificate has to be converted from html
+     */
+    private byte[] stampCertificate(CertificateExtension certificateExtension, TemplateAnalysis analysis, byte[] qrCode,
+                                    String baseUri) throws IOException {
+        HTMLVarResolver htmlVarResolver = new HTMLVarResolver(certificateExtension);
+        PdfStamp pdfStamp = getPdfStamp(analysis, htmlVarResolver, qrCode, baseUri);
+        byte[] pdfData = pdfStamp != null ? pdfStamp.stamp(htmlVarResolver, qrCode) : null;
+        if (pdfData != null) {
+            stamped.increment();
+        } else {
+            stampFallbacks.increment();
+            logger.debug("CertificateGenerator:stampCertificate:{} is converted from html, stamp {}", certificateExtension.getId(),
+                    pdfStamp != null ? "does not fit" : "not ready");
+        }
+        return pdfData;
+    }
+
+    /**
+     * the stamp is prepared on the stamp prepare pool, so it is not bound to the time limit of the certificate it is
+     * prepared from and certificates rendered meanwhile are converted from html instead of waiting for it
+     *
+     * @return stamp of the batch, null while it is prepared or when the template can not be stamped
+     */
+    private synchronized PdfStamp getPdfStamp(TemplateAnalysis analysis, HTMLVarResolver sample, byte[] qrCode, String baseUri) {
+        if (pdfStamp != null && pdfStamp.isCompletedExceptionally() && stampAttempts < STAMP_ATTEMPTS) {
+            pdfStamp = null;
+        }
+        if (pdfStamp == null) {
+            stampAttempts++;
+            pdfStamp = prepareStamp(analysis, sample, qrCode, baseUri);
+        }
+        return pdfStamp.isDone() && !pdfStamp.isCompletedExceptionally() ? pdfStamp.join() : null;
+    }
+
+    private CompletableFuture<PdfStamp> prepareStamp(TemplateAnalysis analysis, HTMLVarResolver sample, byte[] qrCode, String baseUri) {
+        CompletableFuture<PdfStamp> future = new CompletableFuture<>();
+        int attempt = stampAttempts;
+        stampPreparePool.execute(() -> {
+            try {
+                future.complete(PdfStamp.prepare(analysis, sample, qrCode, RemoteResourceCache.getInstance(properties), baseUri,
+                        PdfRenderLimits.fromProperties(properties), pdfProfile));
+            } catch (Exception e) {
+                logger.error("CertificateGenerator:prepareStamp:{} stamp could not be prepared, attempt {} of {} : {}",
+                        analysis.getTemplateId(), attempt, STAMP_ATTEMPTS, e.getMessage());
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private static ExecutorService createStampPreparePool() {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(STAMP_PREPARE_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "cert-stamp-prepare-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private HTMLGenerator getHTMLGenerator(TemplateAnalysis analysis) {
+        return new HTMLGenerator(analysis, RemoteResourceCache.getInstance(properties), PdfRenderLimits.fromProperties(properties),
+                pdfProfile);
+    }
+
     private String getUUID(String id) {
         try {
             URI uri = new URI(id);
@@ -73,7 +270,6 @@ public class CertificateGenerator {
         File file = new File(directory + getUUID(certificateExtension.getId()) + ".json");
         String jsonData = null;
         try {
-            objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
             objectMapper.writeValue(file, certificateExtension);
             jsonData = objectMapper.writeValueAsString(certificateExtension);
             logger.info("Json file has been generated for the certificate");
@@ -92,6 +288,14 @@ public class CertificateGenerator {
 
     private String generateQRCodeForCertificate(CertificateExtension certificateExtension, String directory) throws WriterException,
             FontFormatException, NotFoundException, IOException {
+        QRCodeGenerationModel qrCodeGenerationModel = getQRCodeGenerationModel(certificateExtension, directory);
+        QRCodeImageGenerator qrCodeImageGenerator = new QRCodeImageGenerator();
+        File Qrcode = qrCodeImageGenerator.createQRImages(qrCodeGenerationModel);
+        logger.info("Qrcode is created for the certificate");
+        return qrCodeGenerationModel.getText();
+    }
+
+    private QRCodeGenerationModel getQRCodeGenerationModel(CertificateExtension certificateExtension, String directory) {
         AccessCodeGenerator accessCodeGenerator = new AccessCodeGenerator(Double.valueOf(properties.get(JsonKey.ACCESS_CODE_LENGTH)));
         String accessCode = accessCodeGenerator.generate();
         QRCodeGenerationModel qrCodeGenerationModel = new QRCodeGenerationModel();
@@ -99,9 +303,6 @@ public class CertificateGenerator {
         qrCodeGenerationModel.setFileName(directory + getUUID(certificateExtension.getId()));
         qrCodeGenerationModel.setData(properties.get(JsonKey.DOMAIN_URL).concat("/") +
                 properties.get(JsonKey.SLUG).concat("/") + getUUID(certificateExtension.getId()));
-        QRCodeImageGenerator qrCodeImageGenerator = new QRCodeImageGenerator();
-        File Qrcode = qrCodeImageGenerator.createQRImages(qrCodeGenerationModel);
-        logger.info("Qrcode is created for the certificate");
-        return accessCode;
+        return qrCodeGenerationModel;
     }
 }
\ No newline at end of file
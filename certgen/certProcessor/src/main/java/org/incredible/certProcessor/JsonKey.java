@@ -30,6 +30,17 @@ public interface JsonKey {
     String AWS_STORAGE_SECRET="AWS_STORAGE_SECRET";
     String SLUG ="sunbird_cert_slug";
     String ACCESS_CODE_LENGTH = "ACCESS_CODE_LENGTH";
+    String TEMPLATE_CACHE_DIR = "sunbird_cert_template_cache_dir";
+    String TEMPLATE_CACHE_MAX_MB = "sunbird_cert_template_cache_max_mb";
+    String IN_MEMORY_RENDER = "sunbird_cert_in_memory_render";
+    String RESOURCE_CACHE_MAX_MB = "sunbird_cert_resource_cache_max_mb";
+    String RESOURCE_CACHE_TTL_MINUTES = "sunbird_cert_resource_cache_ttl_minutes";
+    String RENDER_TIMEOUT_SECONDS = "sunbird_cert_render_timeout_seconds";
+    String RENDER_MAX_PAGES = "sunbird_cert_render_max_pages";
+    String RENDER_MAX_MB = "sunbird_cert_render_max_mb";
+    String STAMP_RENDER = "sunbird_cert_stamp_render";
+    String PDF_PROFILE = "sunbird_cert_pdf_profile";
+    String PDF_IMAGE_DPI = "sunbird_cert_pdf_image_dpi";
 
 
 }
@@ -34,12 +34,28 @@ public class QRCodeImageGenerator {
 
 
     public File createQRImages(QRCodeGenerationModel qrGenRequest) throws WriterException, IOException, NotFoundException, FontFormatException {
+        File finalImageFile = new File(qrGenRequest.getFileName() + "." + qrGenRequest.getFileFormat());
+        ImageIO.write(createQRImage(qrGenRequest), qrGenRequest.getFileFormat(), finalImageFile);
+        logger.info("qr code is created for the certificate");
+        return finalImageFile;
+    }
 
-        List<File> fileList = new ArrayList<File>();
+    /**
+     * creates the qr code image in memory, the file name of the model is not used
+     *
+     * @param qrGenRequest qr code details
+     * @return encoded image in the file format of the model
+     */
+    public byte[] createQRImageBytes(QRCodeGenerationModel qrGenRequest) throws WriterException, IOException, NotFoundException, FontFormatException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(createQRImage(qrGenRequest), qrGenRequest.getFileFormat(), out);
+        logger.info("qr code is created in memory for the certificate");
+        return out.toByteArray();
+    }
 
+    private BufferedImage createQRImage(QRCodeGenerationModel qrGenRequest) throws WriterException, IOException, NotFoundException, FontFormatException {
         String data = qrGenRequest.getData();
         String text = qrGenRequest.getText();
-        String fileName = qrGenRequest.getFileName();
 
         String errorCorrectionLevel = qrGenRequest.getErrorCorrectionLevel();
         int pixelsPerBlock = qrGenRequest.getPixelsPerBlock();
@@ -47,7 +63,6 @@ public class QRCodeImageGenerator {
         String fontName = qrGenRequest.getTextFontName();
         int fontSize = qrGenRequest.getTextFontSize();
         double tracking = qrGenRequest.getTextCharacterSpacing();
-        String imageFormat = qrGenRequest.getFileFormat();
         String colorModel = qrGenRequest.getColorModel();
         int borderSize = qrGenRequest.getImageBorderSize();
         int qrMarginBottom = qrGenRequest.getQrCodeMarginBottom();
@@ -64,13 +79,7 @@ public class QRCodeImageGenerator {
         if (borderSize > 0) {
             drawBorder(qrImage, borderSize, imageMargin);
         }
-
-        File finalImageFile = new File(fileName + "." + imageFormat);
-        ImageIO.write(qrImage, imageFormat, finalImageFile);
-        fileList.add(finalImageFile);
-        logger.info("qr code is created for the certificate");
-        return finalImageFile;
-
+        return qrImage;
     }
 
     private static BufferedImage addTextToBaseImage(BufferedImage qrImage, BufferedImage textImage, String colorModel, int qrMargin, int pixelsPerBlock, int qrMarginBottom, int imageMargin) throws NotFoundException {
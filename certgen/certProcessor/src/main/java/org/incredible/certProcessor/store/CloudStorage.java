@@ -28,6 +28,17 @@ public class CloudStorage {
         return UrlManager.getSharableUrl(url,container);
          }
 
+    public static String uploadData(String container, String path, String fileName, byte[] data, int retryCount) {
+        String objectKey = path + fileName;
+        String url = storageService.put(container,
+                data,
+                objectKey,
+                Option.apply(false),
+                Option.apply(false),
+                Option.empty(), Option.apply(retryCount));
+        return UrlManager.getSharableUrl(url,container);
+    }
+
     public void downloadFile(String container, String fileName, String localPath, boolean isDirectory) {
         storageService.download(container, fileName, localPath, Option.apply(isDirectory));
     }
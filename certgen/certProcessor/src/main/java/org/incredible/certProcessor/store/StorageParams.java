@@ -50,6 +50,15 @@ public class StorageParams {
 
     }
 
+    public String upload(String path, String fileName, byte[] data) {
+        CloudStorage cloudStorage = new CloudStorage(storageService);
+        int retryCount= Integer.parseInt(properties.get(JsonKey.CLOUD_UPLOAD_RETRY_COUNT));
+        String containerName=properties.get(JsonKey.CONTAINER_NAME);
+        logger.info("StorageParams:upload:container name got:"+containerName);
+        return cloudStorage.uploadData(containerName, path, fileName, data, retryCount);
+
+    }
+
     public void download(String fileName, String localPath, boolean isDirectory) {
         logger.info("StorageParams : download : file name: " + fileName +  " to  local path "+ localPath);
         CloudStorage cloudStorage = new CloudStorage(storageService);
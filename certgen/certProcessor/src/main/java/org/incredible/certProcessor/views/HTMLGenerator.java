@@ -1,10 +1,6 @@
 package org.incredible.certProcessor.views;
 
 import org.apache.commons.lang.StringUtils;
-import org.apache.velocity.VelocityContext;
-import org.apache.velocity.app.Velocity;
-import org.apache.velocity.runtime.RuntimeConstants;
-import org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader;
 import org.incredible.pojos.CertificateExtension;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,60 +8,124 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.io.Writer;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.HashSet;
-import java.util.Iterator;
 
 
 public class HTMLGenerator {
 
     private static Logger logger = LoggerFactory.getLogger(HTMLGenerator.class);
 
-    private String HtmlString;
+    private TemplateAnalysis analysis;
 
-    private HashSet<String> htmlReferenceVariable;
+    private RemoteResourceCache resourceCache;
+
+    private PdfRenderLimits limits = PdfRenderLimits.NONE;
+
+    private PdfOutputProfile profile = PdfOutputProfile.DEFAULT;
 
 
     public HTMLGenerator(String htmlString) {
-        HtmlString = htmlString;
-        htmlReferenceVariable = HTMLTemplateProvider.storeAllHTMLTemplateVariables(HtmlString);
+        this(null, htmlString);
+    }
+
+    /**
+     * @param templateId identity of the template, the analysis is shared by generators of the same identity and content
+     * @param htmlString html content of the template
+     */
+    public HTMLGenerator(String templateId, String htmlString) {
+        this(VelocityTemplateCache.getInstance().getAnalysis(templateId, htmlString));
+    }
+
+    /**
+     * @param analysis analysis of the template, worked out once for all the certificates
+     */
+    public HTMLGenerator(TemplateAnalysis analysis) {
+        this.analysis = analysis;
     }
 
+    /**
+     * @param analysis      analysis of the template, worked out once for all the certificates
+     * @param resourceCache cache the remote resources of the certificates are taken from, instead of the converter
+     *                      fetching them for every certificate
+     */
+    public HTMLGenerator(TemplateAnalysis analysis, RemoteResourceCache resourceCache) {
+        this.analysis = analysis;
+        this.resourceCache = resourceCache;
+    }
 
-    public void initVelocity() {
-        Velocity.setProperty(RuntimeConstants.RESOURCE_LOADER, "classpath");
-        Velocity.setProperty("classpath.resource.loader.class", ClasspathResourceLoader.class.getName());
-        Velocity.init();
+    /**
+     * @param analysis      analysis of the template, worked out once for all the certificates
+     * @param resourceCache cache the remote resources of the certificates are taken from
+     * @param limits        limits of the pdf conversion of every certificate
+     */
+    public HTMLGenerator(TemplateAnalysis analysis, RemoteResourceCache resourceCache, PdfRenderLimits limits) {
+        this(analysis, resourceCache);
+        this.limits = limits;
     }
 
     /**
-     * create velocity context  where Velocity.init() called once
+     * @param analysis      analysis of the template, worked out once for all the certificates
+     * @param resourceCache cache the remote resources of the certificates are taken from
+     * @param limits        limits of the pdf conversion of every certificate
+     * @param profile       how the pdf of every certificate is written
+     */
+    public HTMLGenerator(TemplateAnalysis analysis, RemoteResourceCache resourceCache, PdfRenderLimits limits,
+                         PdfOutputProfile profile) {
+        this(analysis, resourceCache, limits);
+        this.profile = profile;
+    }
+
+    /**
+     * merges the certificate into the template analysed once by {@link VelocityTemplateCache}, with the engine
+     * picked for the template
      *
      * @param certificateExtension
+     * @throws IOException when the pdf can not be created
      */
 
-    public void generate(CertificateExtension certificateExtension, String directory) {
-        initVelocity();
-        VelocityContext context = new VelocityContext();
-        HTMLVarResolver htmlVarResolver = new HTMLVarResolver(certificateExtension);
-        htmlReferenceVariable = HTMLTemplateProvider.storeAllHTMLTemplateVariables(HtmlString);
-        Iterator<String> iterator = htmlReferenceVariable.iterator();
-        while (iterator.hasNext()) {
-            String macro = iterator.next().substring(1);
-            try {
-                Method method = htmlVarResolver.getClass().getMethod("get" + capitalize(macro));
-                method.setAccessible(true);
-                context.put(macro, method.invoke(htmlVarResolver));
-            } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
-                e.printStackTrace();
-                logger.info("exception while generating html for certificate {}", e.getMessage());
-            }
+    public void generate(CertificateExtension certificateExtension, String directory) throws IOException {
+        createHTMLFile(new HTMLVarResolver(certificateExtension), getUUID(certificateExtension.getId()), directory,
+                new File(directory).toURI().toString());
+    }
+
+    /**
+     * writes the html and pdf files of the certificate, the qr code png written next to them is referenced by
+     * its absolute uri so the other urls of the template can resolve from anywhere, like inside the template zip
+     *
+     * @param certificateExtension certificate
+     * @param directory            directory of the certificate files
+     * @param baseUri              where the relative urls of the template are resolved from
+     * @throws IOException when the pdf can not be created
+     */
+    public void generate(CertificateExtension certificateExtension, String directory, String baseUri) throws IOException {
+        String id = getUUID(certificateExtension.getId());
+        String qrCodeImage = new File(directory, id + ".png").toURI().toString();
+        createHTMLFile(new HTMLVarResolver(certificateExtension, qrCodeImage), id, directory, baseUri);
+    }
+
+    /**
+     * merges the certificate into the template and converts it to pdf in memory, without writing any file
+     *
+     * @param certificateExtension certificate
+     * @param qrCodeImage          source of the qr code image, like a data uri
+     * @param baseUri              where the relative urls of the template are resolved from
+     * @return pdf content
+     * @throws IOException when the pdf can not be created
+     */
+    public byte[] generatePdf(CertificateExtension certificateExtension, String qrCodeImage, String baseUri) throws IOException {
+        if (analysis.getTemplate() == null) {
+            throw new IOException("html template " + analysis.getTemplateId() + " could not be parsed :" + analysis.getParseError());
         }
-        createHTMLFile(context, getUUID(certificateExtension.getId()), directory);
+        return PdfConverter.convert(merge(new HTMLVarResolver(certificateExtension, qrCodeImage)), baseUri, limits, profile);
+    }
+
+    private String merge(HTMLVarResolver htmlVarResolver) throws IOException {
+        StringWriter html = new StringWriter();
+        analysis.getEngine().merge(htmlVarResolver, html);
+        return resourceCache != null ? resourceCache.inline(html.toString()) : html.toString();
     }
 
     private String getUUID(String id) {
@@ -80,22 +140,20 @@ public class HTMLGenerator {
         }
     }
 
-    private void createHTMLFile(VelocityContext context, String id, String directory) {
-        try {
-            File file = new File(directory, id + ".html");
-            Writer writer = new FileWriter(file);
-            Velocity.evaluate(context, writer, "velocity", HtmlString);
-            writer.flush();
-            writer.close();
-            logger.info("html file is created {}", file.getName());
-            PdfConverter.convertor(file, id, directory);
+    private void createHTMLFile(HTMLVarResolver htmlVarResolver, String id, String directory, String baseUri) throws IOException {
+        if (analysis.getTemplate() == null) {
+            logger.error("html template {} could not be parsed :{}", analysis.getTemplateId(), analysis.getParseError());
+            return;
+        }
+        File file = new File(directory, id + ".html");
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(merge(htmlVarResolver));
         } catch (IOException e) {
             logger.error("IO exception while creating html file :{}", e.getMessage());
+            return;
         }
-    }
-
-    private String capitalize(String input) {
-        return input.substring(0, 1).toUpperCase() + input.substring(1);
+        logger.info("html file is created {}", file.getName());
+        PdfConverter.convertor(file, id, directory, baseUri, limits, profile);
     }
 
 
@@ -1,28 +1,27 @@
 package org.incredible.certProcessor.views;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.incredible.certProcessor.store.StorageParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.*;
-import java.net.HttpURLConnection;
+import java.io.File;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
 import java.util.Map;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 
 /**
- *  Downloads zip file and unzips from given cloud(container) based relative url or from the public http url
+ *  Downloads zip file from given cloud(container) based relative url or from the public http url, through the
+ *  {@link TemplateCache} shared by all the working directories using the same url. The zip is never extracted,
+ *  the html and the assets of the template are read from it through a {@link TemplateArchive}
  */
 public class HTMLTempalteZip extends HTMLTemplateProvider {
 
 
     private String content = null;
 
+    private TemplateArchive archive = null;
+
     private static Logger logger = LoggerFactory.getLogger(HTMLTempalteZip.class);
 
     /**
@@ -39,117 +38,43 @@ public class HTMLTempalteZip extends HTMLTemplateProvider {
 
     }
 
-    private static final int bufferSize = 4096;
-
     /**
-     * This  method is to download a zip file from the URL in the specified target directory.
+     * This  method is to download the zip file from the URL in the specified directory. A public url is fetched
+     * through the shared {@link TemplateHttpClient}, conditionally when the cache revalidates it, and its body is
+     * streamed straight into the zip file
      *
-     * @param targetDirectory
-     * @throws IOException
+     * @param directory
+     * @param cached what the cache knows of the url when it is revalidated, null otherwise
+     * @return downloaded zip file and its validators, null when the cached zip was not modified
+     * @throws Exception
      */
-    private void getZipFileFromURl(File targetDirectory) throws Exception {
-        if (!targetDirectory.exists()) {
-            targetDirectory.mkdirs();
-        }
+    private TemplateCache.Download downloadZip(File directory, TemplateCache.Entry cached) throws Exception {
         String zipFileName = getZipFileName().concat(".zip");
         /**
          * path to download zip file
          */
-        String zipFilePath = targetDirectory.getAbsolutePath().concat("/");
+        String zipFilePath = directory.getAbsolutePath().concat("/");
         if(zipUrl.startsWith("http")) {
-            logger.info("getZipFileFromURl:"+ zipUrl + " is public url");
-            logger.info("getZipFileFromURl: downloading zip file " + zipFileName  + " to the path "+ zipFilePath +"started ");
-            HttpURLConnection connection = (HttpURLConnection) new URL(zipUrl).openConnection();
-            connection.setRequestMethod("GET");
-            InputStream in = connection.getInputStream();
-            FileOutputStream out = new FileOutputStream(zipFilePath.concat(zipFileName));
-            copy(in, out, 1024);
-            out.close();
-            in.close();
+            logger.info("downloadZip:"+ zipUrl + " is public url");
+            logger.info("downloadZip: downloading zip file " + zipFileName  + " to the path "+ zipFilePath +"started ");
+            File zipFile = new File(zipFilePath.concat(zipFileName));
+            TemplateHttpClient.Fetched<String> fetched = TemplateHttpClient.getInstance().get(zipUrl,
+                    cached != null ? cached.etag : null, cached != null ? cached.lastModified : null,
+                    (body, charset) -> TemplateCache.write(body, zipFile));
+            if (!fetched.isModified()) {
+                return null;
+            }
             logger.info("Downloading Zip file " + zipFileName + " from given url : success");
+            return new TemplateCache.Download(zipFile, fetched.getBody(), fetched.getEtag(), fetched.getLastModified());
         }   else {
-            logger.info("getZipFileFromURl: "+ zipUrl + " is container based  uri");
-            logger.info("getZipFileFromURl: downloading zip file " + zipFileName + " started ");
+            logger.info("downloadZip: "+ zipUrl + " is container based  uri");
+            logger.info("downloadZip: downloading zip file " + zipFileName + " started ");
             StorageParams storageParams = new StorageParams(properties);
             storageParams.init();
             storageParams.download(zipUrl, zipFilePath, false);
             logger.info("Downloading Zip file " + zipFileName + " from given url : success");
         }
-        unzip(zipFilePath.concat(zipFileName) , zipFilePath);
-        readIndexHtmlFile(targetDirectory.getAbsolutePath());
-    }
-
-    private void readIndexHtmlFile(String absolutePath) throws IOException {
-        FileInputStream fis = new FileInputStream(absolutePath + "/index.html");
-        content = IOUtils.toString(fis, "UTF-8");
-        fis.close();
-    }
-
-    /**
-     * unzips zip file
-     *
-     * @param zipFile
-     * @param destDir
-     */
-    private  void unzip(String zipFile, String destDir) {
-        File dir = new File(destDir);
-        // create output directory if it doesn't exist
-        if (!dir.exists()) dir.mkdirs();
-        FileInputStream fis;
-        //buffer for read and write data to file
-        byte[] buffer = new byte[1024];
-        try {
-            fis = new FileInputStream(zipFile);
-            ZipInputStream zipIn = new ZipInputStream(fis);
-            ZipEntry entry = zipIn.getNextEntry();
-            // iterates over entries in the zip file
-            while (entry != null) {
-                String filePath = destDir + File.separator + entry.getName();
-                if (!entry.isDirectory()) {
-                    // if the entry is a file, extracts it
-                    extractFile(zipIn, filePath);
-                } else {
-                    // if the entry is a directory, make the directory
-                    File subDir = new File(filePath);
-                    subDir.mkdir();
-                }
-                zipIn.closeEntry();
-                entry = zipIn.getNextEntry();
-            }
-            zipIn.close();
-            fis.close();
-            logger.info("Unzipping zip file is finished");
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-    }
-
-    /**
-     * extracts each files in zip file (zip entry)
-     *
-     * @param zipIn
-     * @param filePath
-     * @throws IOException
-     */
-    private  void extractFile(ZipInputStream zipIn, String filePath) throws IOException {
-        BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(filePath));
-        byte[] bytesIn = new byte[4096];
-        int read = 0;
-        while ((read = zipIn.read(bytesIn)) != -1) {
-            bos.write(bytesIn, 0, read);
-        }
-        bos.close();
-    }
-
-    private  void copy(InputStream input, OutputStream output, int bufferSize) throws IOException {
-        byte[] buf = new byte[bufferSize];
-        int n = input.read(buf);
-        while (n >= 0) {
-            output.write(buf, 0, n);
-            n = input.read(buf);
-        }
-        output.flush();
+        return new TemplateCache.Download(new File(zipFilePath.concat(zipFileName)), null);
     }
 
 
@@ -186,21 +111,38 @@ public class HTMLTempalteZip extends HTMLTemplateProvider {
     }
 
     /**
-     * This method is used to get Html file content in string format
+     * This method is used to get Html file content in string format, the template is taken from the
+     * {@link TemplateCache} and only downloaded when no request used it before, nothing is written to the
+     * working directory
      *
      * @return html string
      */
     @Override
     public String getTemplateContent(String filePath) throws Exception {
         if (content == null) {
-                File targetDirectory =  new File(filePath);
-                if (checkZipFileExists(new File(targetDirectory.getAbsolutePath().concat("/") + getZipFileName() + ".zip"))) {
-                    readIndexHtmlFile(targetDirectory.getAbsolutePath());
-                } else {
-                    getZipFileFromURl(targetDirectory);
-                }
-            }
+            archive = TemplateArchive.open(TemplateCache.getInstance(properties).get(zipUrl, this::downloadZip));
+            content = archive.readEntry(TemplateArchive.INDEX_HTML);
+        }
         return content;
     }
 
-}
\ No newline at end of file
+    /**
+     * @return true once the template is loaded from a zip kept in the {@link TemplateCache}
+     */
+    public boolean isCached() {
+        return archive != null;
+    }
+
+    /**
+     * relative urls of the template resolve inside its zip once the template content is loaded
+     */
+    @Override
+    public String getBaseUri(String filePath) {
+        return archive != null ? archive.getBaseUri() : super.getBaseUri(filePath);
+    }
+
+    @Override
+    public String getTemplateId() {
+        return zipUrl;
+    }
+}
@@ -50,5 +50,8 @@ public class HTMLTemplateFile extends HTMLTemplateProvider {
         }
     }
 
+    @Override
+    public String getTemplateId() {
+        return HTML_TEMPLATE_NAME;
+    }
 }
-
@@ -1,13 +1,6 @@
 package org.incredible.certProcessor.views;
 
-import org.apache.velocity.runtime.RuntimeInstance;
-import org.apache.velocity.runtime.parser.ParseException;
-import org.apache.velocity.runtime.parser.node.ASTReference;
-import org.apache.velocity.runtime.parser.node.ParserVisitor;
-import org.apache.velocity.runtime.parser.node.SimpleNode;
-import org.apache.velocity.runtime.visitor.BaseVisitor;
-
-
+import java.io.File;
 import java.util.HashSet;
 
 public abstract class HTMLTemplateProvider {
@@ -15,45 +8,37 @@ public abstract class HTMLTemplateProvider {
     abstract public String getTemplateContent(String filePath) throws Exception;
 
     /**
-     * variables present in html template
+     * @return identity of the template, like its url, used to share what is derived from the template
      */
-    private static HashSet<String> htmlReferenceVariable = new HashSet<>();
+    public String getTemplateId() {
+        return getClass().getName();
+    }
+
+    /**
+     * @param filePath working directory of the certificates
+     * @return base uri the relative urls of the template, like its images and styles, are resolved from
+     */
+    public String getBaseUri(String filePath) {
+        return new File(filePath).toURI().toString();
+    }
 
 
     public static Boolean checkHtmlTemplateIsValid(String htmlString) {
         if (htmlString == null) return false;
         else {
-            HTMLTemplateValidator htmlTemplateValidator = new HTMLTemplateValidator(storeAllHTMLTemplateVariables(htmlString));
-            return htmlTemplateValidator.validate();
+            return VelocityTemplateCache.getInstance().getAnalysis(null, htmlString).isValid();
         }
     }
 
 
     /**
-     * to get all the reference variables present in htmlString
+     * to get all the reference variables present in htmlString, the template is analysed once and cached
      *
      * @param htmlString html file read in the form of string
      * @return set of reference variables
      */
     public static HashSet<String> storeAllHTMLTemplateVariables(String htmlString) {
-        RuntimeInstance runtimeInstance = new RuntimeInstance();
-        SimpleNode node = null;
-        try {
-            node = runtimeInstance.parse(htmlString, null);
-        } catch (ParseException e) {
-            e.printStackTrace();
-        }
-        visitor.visit(node, null);
-        return htmlReferenceVariable;
+        return new HashSet<>(VelocityTemplateCache.getInstance().getAnalysis(null, htmlString).getVariables());
     }
 
-    private static ParserVisitor visitor = new BaseVisitor() {
-        @Override
-        public Object visit(final ASTReference node, final Object data) {
-            htmlReferenceVariable.add(node.literal());
-            return null;
-        }
-    };
-
 }
-
@@ -1,33 +1,64 @@
 package org.incredible.certProcessor.views;
 
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+/**
+ * Html template read from a public url through the shared {@link TemplateHttpClient}. The last content of every
+ * url is kept with its etag and last modified date, so a url used again is only revalidated.
+ */
 public class HTMLTemplateURL extends HTMLTemplateProvider {
     private URL url;
     private String content = null;
     private static Logger logger = LoggerFactory.getLogger(HTMLTemplateURL.class);
 
+    private static final int MAX_CACHED_URLS = 64;
+
+    private static final Map<String, TemplateHttpClient.Fetched<String>> fetchedUrls =
+            new LinkedHashMap<String, TemplateHttpClient.Fetched<String>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, TemplateHttpClient.Fetched<String>> eldest) {
+                    return size() > MAX_CACHED_URLS;
+                }
+            };
+
     public HTMLTemplateURL(URL httpUrl) {
         url = httpUrl;
     }
 
     private void fetchUrl() {
-        StringBuilder stringBuilder = new StringBuilder();
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(url.openStream()))) {
-            while ((content = in.readLine()) != null) {
-                stringBuilder.append(content + "\n");
+        String templateUrl = url.toString();
+        TemplateHttpClient.Fetched<String> cached;
+        synchronized (fetchedUrls) {
+            cached = fetchedUrls.get(templateUrl);
+        }
+        try {
+            TemplateHttpClient.Fetched<String> fetched = TemplateHttpClient.getInstance().get(templateUrl,
+                    cached != null ? cached.getEtag() : null, cached != null ? cached.getLastModified() : null,
+                    (body, charset) -> IOUtils.toString(body, charset != null ? charset : StandardCharsets.UTF_8.name()));
+            if (!fetched.isModified()) {
+                content = cached.getBody();
+                return;
+            }
+            content = fetched.getBody();
+            if (fetched.getEtag() != null || fetched.getLastModified() != null) {
+                synchronized (fetchedUrls) {
+                    fetchedUrls.put(templateUrl, fetched);
+                }
             }
-            content = stringBuilder.toString();
         } catch (IOException e) {
             logger.error("Exception while reading file from given url {}", e.getMessage());
+            if (cached != null) {
+                content = cached.getBody();
+            }
         }
-
     }
 
     @Override
@@ -37,4 +68,9 @@ public class HTMLTemplateURL extends HTMLTemplateProvider {
         }
         return content;
     }
+
+    @Override
+    public String getTemplateId() {
+        return url.toString();
+    }
 }
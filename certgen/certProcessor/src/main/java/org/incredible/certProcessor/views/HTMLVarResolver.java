@@ -16,10 +16,21 @@ public class HTMLVarResolver {
 
     private CertificateExtension certificateExtension;
 
+    private String qrCodeImage;
+
     public HTMLVarResolver(CertificateExtension certificateExtension) {
         this.certificateExtension = certificateExtension;
     }
 
+    /**
+     * @param certificateExtension certificate
+     * @param qrCodeImage          source of the qr code image used instead of the png file next to the html, like a data uri
+     */
+    public HTMLVarResolver(CertificateExtension certificateExtension, String qrCodeImage) {
+        this.certificateExtension = certificateExtension;
+        this.qrCodeImage = qrCodeImage;
+    }
+
     private ObjectMapper mapper = new ObjectMapper();
 
     public String getRecipientName() {
@@ -33,6 +44,9 @@ public class HTMLVarResolver {
 
 
     public String getQrCodeImage() {
+        if (qrCodeImage != null) {
+            return qrCodeImage;
+        }
         try {
             URI uri = new URI(certificateExtension.getId());
             String path = uri.getPath();
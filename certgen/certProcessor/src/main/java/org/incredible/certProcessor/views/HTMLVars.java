@@ -1,13 +1,18 @@
 package org.incredible.certProcessor.views;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 public class HTMLVars {
     private static List<String> allVars = new ArrayList<>();
+    private static Map<String, SupportedVars> varsByName = new HashMap<>();
     static {
         for (SupportedVars htmlVars : SupportedVars.values()) {
             allVars.add(htmlVars.toString());
+            varsByName.put(htmlVars.toString(), htmlVars);
         }
     }
 
@@ -15,16 +20,47 @@ public class HTMLVars {
         return allVars;
     }
 
+    /**
+     * @param htmlVar template variable with its $, like $recipientName
+     * @return supported variable, null when the variable is not supported
+     */
+    public static SupportedVars of(String htmlVar) {
+        return varsByName.get(htmlVar);
+    }
+
+    /**
+     * every supported variable with the resolver method giving its value for a certificate
+     */
     public enum SupportedVars {
-        $recipientName,
-        $courseName,
-        $title,
-        $qrCodeImage,
-        $dated,
-        $issuedDate,
-        $signatory0Image,
-        $signatory0Designation,
-        $certificateName
+        $recipientName(HTMLVarResolver::getRecipientName),
+        $courseName(HTMLVarResolver::getCourseName),
+        $title(HTMLVarResolver::getTitle),
+        $qrCodeImage(HTMLVarResolver::getQrCodeImage),
+        $dated(HTMLVarResolver::getDated),
+        $issuedDate(HTMLVarResolver::getIssuedDate),
+        $signatory0Image(HTMLVarResolver::getSignatory0Image),
+        $signatory0Designation(HTMLVarResolver::getSignatory0Designation),
+        $certificateName(HTMLVarResolver::getCertificateName);
+
+        private final String contextKey;
+
+        private final Function<HTMLVarResolver, String> resolver;
+
+        SupportedVars(Function<HTMLVarResolver, String> resolver) {
+            this.contextKey = name().substring(1);
+            this.resolver = resolver;
+        }
+
+        /**
+         * @return name of the variable in the velocity context, without its $
+         */
+        public String getContextKey() {
+            return contextKey;
+        }
+
+        public String resolve(HTMLVarResolver htmlVarResolver) {
+            return resolver.apply(htmlVarResolver);
+        }
     }
 }
 
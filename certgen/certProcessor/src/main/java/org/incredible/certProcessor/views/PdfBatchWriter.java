@@ -0,0 +1,199 @@
+package org.incredible.certProcessor.views;
+
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * One pdf with the certificates of a whole batch, for printing, in the order of the recipients of the request.
+ * The pages of a certificate are appended as soon as the certificates before it are in and written out to the
+ * file right away. A certificate done ahead of its turn is spooled to a file next to the batch pdf till then, so
+ * only the certificate being appended is held in memory however large the batch is. Identical objects, like the
+ * template images of every certificate, are written once.
+ * A batch pdf missing a certificate would go unnoticed in print, so it is discarded when a certificate can not
+ * be appended or is skipped, and it is not completed while a certificate before the last one is missing.
+ */
+public class PdfBatchWriter {
+
+    private static Logger logger = LoggerFactory.getLogger(PdfBatchWriter.class);
+
+    private final File file;
+
+    private final PdfOutputProfile profile;
+
+    /**
+     * certificates done ahead of their turn, by index
+     */
+    private final TreeMap<Integer, File> spooled = new TreeMap<>();
+
+    private PdfDocument document;
+
+    private int nextIndex;
+
+    private boolean closed;
+
+    /**
+     * @param file    file the batch pdf is written to, created with the first certificate
+     * @param profile how the batch pdf is written
+     */
+    public PdfBatchWriter(File file, PdfOutputProfile profile) {
+        this.file = file;
+        this.profile = profile;
+    }
+
+    /**
+     * @param index index of the recipient in the batch
+     * @param pdf   pdf content of the certificate
+     * @throws IOException when the certificate can not be appended, the batch pdf is discarded
+     */
+    public synchronized void append(int index, byte[] pdf) throws IOException {
+        if (closed) {
+            return;
+        }
+        if (index != nextIndex) {
+            spool(index, () -> FileUtils.writeByteArrayToFile(getSpoolFile(index), pdf));
+            return;
+        }
+        append(() -> new PdfReader(new ByteArrayInputStream(pdf)));
+        appendSpooled();
+    }
+
+    /**
+     * @param index index of the recipient in the batch
+     * @param pdf   pdf file of the certificate, it is not needed once this returns
+     * @throws IOException when the certificate can not be appended, the batch pdf is discarded
+     */
+    public synchronized void append(int index, File pdf) throws IOException {
+        if (closed) {
+            return;
+        }
+        if (index != nextIndex) {
+            spool(index, () -> FileUtils.copyFile(pdf, getSpoolFile(index)));
+            return;
+        }
+        append(() -> new PdfReader(pdf));
+        appendSpooled();
+    }
+
+    /**
+     * @return the batch pdf, null when no certificate was appended, a certificate is missing or it was discarded
+     * @throws IOException when the batch pdf can not be completed, it is discarded
+     */
+    public synchronized File close() throws IOException {
+        if (closed || null == document) {
+            discard();
+            return null;
+        }
+        if (!spooled.isEmpty()) {
+            logger.error("PdfBatchWriter:close:{} dropped, certificate {} is missing", file.getName(), nextIndex);
+            discard();
+            return null;
+        }
+        closed = true;
+        try {
+            document.close();
+        } catch (RuntimeException e) {
+            FileUtils.deleteQuietly(file);
+            throw new IOException("batch pdf could not be completed : " + e.getMessage(), e);
+        }
+        logger.info("PdfBatchWriter:close:{} certificates written to {}, {} bytes", nextIndex, file.getName(), file.length());
+        return file;
+    }
+
+    /**
+     * stops the batch pdf and removes its files, nothing is appended after it
+     */
+    public synchronized void discard() {
+        if (!closed && null != document) {
+            try {
+                document.close();
+            } catch (RuntimeException e) {
+                logger.debug("PdfBatchWriter:discard:{} : {}", file.getName(), e.getMessage());
+            }
+        }
+        closed = true;
+        for (File spoolFile : spooled.values()) {
+            FileUtils.deleteQuietly(spoolFile);
+        }
+        spooled.clear();
+        FileUtils.deleteQuietly(file);
+    }
+
+    /**
+     * @return certificates appended so far
+     */
+    public synchronized int getCertificateCount() {
+        return nextIndex;
+    }
+
+    /**
+     * @return true once the batch pdf is completed or discarded
+     */
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    private interface SpoolWrite {
+        void write() throws IOException;
+    }
+
+    private interface CertificateReader {
+        PdfReader open() throws IOException;
+    }
+
+    private void spool(int index, SpoolWrite write) throws IOException {
+        try {
+            write.write();
+            spooled.put(index, getSpoolFile(index));
+        } catch (IOException e) {
+            discard();
+            throw new IOException("certificate " + index + " could not be spooled for the batch pdf : " + e.getMessage(), e);
+        }
+    }
+
+    private void appendSpooled() throws IOException {
+        while (!closed && !spooled.isEmpty() && spooled.firstKey() == nextIndex) {
+            Map.Entry<Integer, File> next = spooled.pollFirstEntry();
+            try {
+                append(() -> new PdfReader(next.getValue()));
+            } finally {
+                FileUtils.deleteQuietly(next.getValue());
+            }
+        }
+    }
+
+    private File getSpoolFile(int index) {
+        return new File(file.getPath() + "." + index);
+    }
+
+    private void append(CertificateReader reader) throws IOException {
+        try {
+            if (null == document) {
+                file.getAbsoluteFile().getParentFile().mkdirs();
+                document = new PdfDocument(new PdfWriter(file.getPath(), profile.getWriterProperties().useSmartMode()));
+            }
+            try (PdfDocument certificate = new PdfDocument(reader.open())) {
+                int first = document.getNumberOfPages() + 1;
+                certificate.copyPagesTo(1, certificate.getNumberOfPages(), document);
+                // the pages are done, they are written out instead of being kept till the batch pdf is closed
+                for (int i = first; i <= document.getNumberOfPages(); i++) {
+                    document.getPage(i).flush();
+                }
+                document.flushCopiedObjects(certificate);
+            }
+            nextIndex++;
+        } catch (IOException | RuntimeException e) {
+            discard();
+            throw new IOException("certificate " + nextIndex + " could not be appended to the batch pdf : " + e.getMessage(), e);
+        }
+    }
+}
@@ -2,38 +2,219 @@ package org.incredible.certProcessor.views;
 
 import com.itextpdf.html2pdf.ConverterProperties;
 import com.itextpdf.html2pdf.HtmlConverter;
-import com.itextpdf.io.util.FileUtil;
-import com.itextpdf.kernel.geom.PageSize;
+import com.itextpdf.html2pdf.resolver.font.DefaultFontProvider;
+import com.itextpdf.kernel.events.PdfDocumentEvent;
 import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.font.PdfFont;
 import com.itextpdf.kernel.pdf.PdfWriter;
-import com.itextpdf.layout.Document;
+import com.itextpdf.layout.font.FontInfo;
+import com.itextpdf.layout.font.FontProvider;
+import com.itextpdf.layout.font.FontSet;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 
+/**
+ * Converts certificate html to pdf. The fonts are scanned once for the process, the standard and shipped fonts of
+ * the converter and the bundled Verdana, and every conversion uses them, only its base uri differs.
+ */
 public class PdfConverter {
 
     private static Logger logger = LoggerFactory.getLogger(PdfConverter.class);
 
+    private static final String BUNDLED_FONT = "/Verdana.ttf";
+
+    /**
+     * default font family of the html converter
+     */
+    private static final String DEFAULT_FONT_FAMILY = "Times";
+
+    private static final FontSet fontSet = loadFonts();
+
+    /**
+     * loads the fonts ahead of the first conversion, like on startup
+     */
+    public static void init() {
+        logger.info("PdfConverter:init:{} fonts available", fontSet.size());
+    }
+
+    /**
+     * @return font provider over the fonts of the converter, for one document
+     */
+    static FontProvider getFontProvider() {
+        return getFontProvider(false);
+    }
+
+    /**
+     * @param subset whether every font is embedded with only the glyphs used
+     * @return font provider over the fonts of the converter, for one document
+     */
+    static FontProvider getFontProvider(boolean subset) {
+        if (!subset) {
+            return new FontProvider(fontSet, DEFAULT_FONT_FAMILY);
+        }
+        return new FontProvider(fontSet, DEFAULT_FONT_FAMILY) {
+            @Override
+            public PdfFont getPdfFont(FontInfo fontInfo, FontSet additionalFonts) {
+                PdfFont font = super.getPdfFont(fontInfo, additionalFonts);
+                font.setSubset(true);
+                return font;
+            }
+        };
+    }
+
+    /**
+     * @return fonts of the converter
+     */
+    static FontSet getFontSet() {
+        return fontSet;
+    }
+
+    private static FontSet loadFonts() {
+        long startTime = System.currentTimeMillis();
+        DefaultFontProvider fontProvider = new DefaultFontProvider(true, true, false);
+        try (InputStream in = PdfConverter.class.getResourceAsStream(BUNDLED_FONT)) {
+            if (in != null) {
+                fontProvider.addFont(IOUtils.toByteArray(in));
+            }
+        } catch (IOException e) {
+            logger.error("PdfConverter:loadFonts:could not load {} : {}", BUNDLED_FONT, e.getMessage());
+        }
+        FontSet fonts = fontProvider.getFontSet();
+        logger.info("PdfConverter:loadFonts:{} fonts loaded in {} ms", fonts.size(), System.currentTimeMillis() - startTime);
+        return fonts;
+    }
+
+    /**
+     * the font set is shared, a font provider caches the fonts it selected so every conversion gets its own
+     */
+    private static ConverterProperties getConverterProperties(String baseUri, PdfOutputProfile profile) {
+        ConverterProperties properties = new ConverterProperties();
+        properties.setFontProvider(profile.getFontProvider());
+        properties.setBaseUri(baseUri);
+        return properties;
+    }
+
     public static void convertor(File htmlSource, String id, String directory) {
-        File file = new File(directory, id + ".pdf");
+        convertor(htmlSource, id, directory, htmlSource.getAbsoluteFile().getParentFile().toURI().toString());
+    }
+
+    /**
+     * @param htmlSource html file
+     * @param id         name of the pdf file
+     * @param directory  directory of the pdf file
+     * @param baseUri    where the relative urls of the html are resolved from
+     */
+    public static void convertor(File htmlSource, String id, String directory, String baseUri) {
+        convertor(htmlSource, id, directory, baseUri, PdfRenderLimits.NONE);
+    }
+
+    /**
+     * @param htmlSource html file
+     * @param id         name of the pdf file
+     * @param directory  directory of the pdf file
+     * @param baseUri    where the relative urls of the html are resolved from
+     * @param limits     limits of the conversion
+     * @throws PdfRenderLimits.LimitExceededException when the conversion exceeds its limits or is cancelled
+     */
+    public static void convertor(File htmlSource, String id, String directory, String baseUri, PdfRenderLimits limits) {
         try {
-//            ConverterProperties converterProperties = new ConverterProperties();
-//            PdfWriter pdfWriter = new PdfWriter(file);
-//            PdfDocument pdfDocument = new PdfDocument(pdfWriter);
-//            pdfDocument.setDefaultPageSize(PageSize.A4.rotate());
-//            HtmlConverter.convertToPdf(new FileInputStream(htmlSource),
-//                    pdfDocument, converterProperties);
-            HtmlConverter.convertToPdf(htmlSource, file);
-            logger.info("Pdf file is created ");
-        } catch (FileNotFoundException e) {
-            logger.error("exception while generating pdf file {}", e.getMessage());
-            e.printStackTrace();
+            convertor(htmlSource, id, directory, baseUri, limits, PdfOutputProfile.DEFAULT);
         } catch (IOException e) {
             logger.error("exception while generating pdf file {}", e.getMessage());
-            e.printStackTrace();
         }
     }
 
+    /**
+     * @param htmlSource html file
+     * @param id         name of the pdf file
+     * @param directory  directory of the pdf file
+     * @param baseUri    where the relative urls of the html are resolved from
+     * @param limits     limits of the conversion
+     * @param profile    how the pdf is written, a compact pdf is converted in memory and written once compacted
+     * @throws IOException                            when the pdf can not be written, no pdf file is left
+     * @throws PdfRenderLimits.LimitExceededException when the conversion exceeds its limits or is cancelled
+     */
+    public static void convertor(File htmlSource, String id, String directory, String baseUri, PdfRenderLimits limits,
+                                 PdfOutputProfile profile) throws IOException {
+        File file = new File(directory, id + ".pdf");
+        try {
+            if (profile.isCompact()) {
+                ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+                try (InputStream in = new FileInputStream(htmlSource)) {
+                    convert(in, pdf, baseUri, limits, profile);
+                }
+                FileUtils.writeByteArrayToFile(file, profile.apply(pdf.toByteArray()));
+            } else {
+                try (InputStream in = new FileInputStream(htmlSource);
+                     OutputStream out = new FileOutputStream(file)) {
+                    convert(in, out, baseUri, limits, profile);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("exception while generating pdf file {}", e.getMessage());
+            FileUtils.deleteQuietly(file);
+            throw e;
+        }
+        logger.info("Pdf file is created ");
+    }
+
+    /**
+     * converts the html in memory, nothing is written to disk
+     *
+     * @param html    html content
+     * @param baseUri where the relative urls of the html, like template images and styles, are resolved from
+     * @return pdf content
+     */
+    public static byte[] convert(String html, String baseUri) throws IOException {
+        return convert(html, baseUri, PdfRenderLimits.NONE);
+    }
+
+    /**
+     * converts the html in memory within the given limits, nothing is written to disk
+     *
+     * @param html    html content
+     * @param baseUri where the relative urls of the html, like template images and styles, are resolved from
+     * @param limits  limits of the conversion
+     * @return pdf content
+     * @throws PdfRenderLimits.LimitExceededException when the conversion exceeds its limits or is cancelled
+     */
+    public static byte[] convert(String html, String baseUri, PdfRenderLimits limits) throws IOException {
+        return convert(html, baseUri, limits, PdfOutputProfile.DEFAULT);
+    }
+
+    /**
+     * converts the html in memory within the given limits and writes it for the profile, nothing is written to disk
+     *
+     * @param html    html content
+     * @param baseUri where the relative urls of the html, like template images and styles, are resolved from
+     * @param limits  limits of the conversion
+     * @param profile how the pdf is written
+     * @return pdf content
+     * @throws PdfRenderLimits.LimitExceededException when the conversion exceeds its limits or is cancelled
+     */
+    public static byte[] convert(String html, String baseUri, PdfRenderLimits limits, PdfOutputProfile profile) throws IOException {
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        convert(new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8)), pdf, baseUri, limits, profile);
+        byte[] content = profile.apply(pdf.toByteArray());
+        logger.info("Pdf is created in memory, {} bytes", content.length);
+        return content;
+    }
+
+    /**
+     * the guard is checked by the writer of the pdf and on every new page, so a conversion growing without end
+     * or running too long fails from inside the layout
+     */
+    private static void convert(InputStream html, OutputStream pdf, String baseUri, PdfRenderLimits limits,
+                                PdfOutputProfile profile) throws IOException {
+        PdfRenderLimits.Guard guard = limits.start();
+        PdfDocument pdfDocument = new PdfDocument(new PdfWriter(guard.wrap(pdf)));
+        pdfDocument.addEventHandler(PdfDocumentEvent.START_PAGE, event -> guard.checkPage(pdfDocument.getNumberOfPages()));
+        HtmlConverter.convertToPdf(html, pdfDocument, getConverterProperties(baseUri, profile));
+    }
+
 }
@@ -0,0 +1,297 @@
+package org.incredible.certProcessor.views;
+
+import com.itextpdf.io.image.ImageDataFactory;
+import com.itextpdf.kernel.geom.Matrix;
+import com.itextpdf.kernel.pdf.CompressionConstants;
+import com.itextpdf.kernel.pdf.PdfDictionary;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfIndirectReference;
+import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.PdfObject;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfStream;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.WriterProperties;
+import com.itextpdf.kernel.pdf.canvas.parser.EventType;
+import com.itextpdf.kernel.pdf.canvas.parser.PdfCanvasProcessor;
+import com.itextpdf.kernel.pdf.canvas.parser.data.IEventData;
+import com.itextpdf.kernel.pdf.canvas.parser.data.ImageRenderInfo;
+import com.itextpdf.kernel.pdf.canvas.parser.listener.IEventListener;
+import com.itextpdf.kernel.pdf.xobject.PdfImageXObject;
+import com.itextpdf.layout.font.FontProvider;
+import org.apache.commons.lang3.StringUtils;
+import org.incredible.certProcessor.JsonKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * How the pdf of a certificate is written. The default profile writes what the converter gives. The compact
+ * profile has the converter embed only the glyphs used of every font, then rewrites the pdf with full
+ * compression, one copy of identical images and, when a target dpi is set, images downsampled to the dpi they
+ * are shown at. The sizes of the pdfs before and after the rewrite are counted for the profile, one profile is
+ * used per batch.
+ */
+public class PdfOutputProfile {
+
+    private static Logger logger = LoggerFactory.getLogger(PdfOutputProfile.class);
+
+    public static final String COMPACT = "compact";
+
+    public static final PdfOutputProfile DEFAULT = new PdfOutputProfile(false, 0);
+
+    /**
+     * an image is downsampled only when it has this much more pixels than needed, so it is not encoded again for little
+     */
+    private static final float DOWNSAMPLE_THRESHOLD = 1.25f;
+
+    private final boolean compact;
+
+    private final int imageDpi;
+
+    private final LongAdder pdfCount = new LongAdder();
+
+    private final LongAdder bytesBefore = new LongAdder();
+
+    private final LongAdder bytesAfter = new LongAdder();
+
+    public PdfOutputProfile(boolean compact, int imageDpi) {
+        this.compact = compact;
+        this.imageDpi = imageDpi;
+    }
+
+    /**
+     * @param properties certificate properties
+     * @return new profile set in the properties, compact or default
+     */
+    public static PdfOutputProfile fromProperties(Map<String, String> properties) {
+        String imageDpi = properties.get(JsonKey.PDF_IMAGE_DPI);
+        return new PdfOutputProfile(COMPACT.equalsIgnoreCase(StringUtils.trim(properties.get(JsonKey.PDF_PROFILE))),
+                StringUtils.isNumeric(imageDpi) ? Integer.parseInt(imageDpi) : 0);
+    }
+
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * @return font provider of a conversion, subsetting every font in the compact profile
+     */
+    FontProvider getFontProvider() {
+        return PdfConverter.getFontProvider(compact);
+    }
+
+    /**
+     * @return new properties of a pdf written for the profile, fully compressed in the compact profile
+     */
+    public WriterProperties getWriterProperties() {
+        WriterProperties writerProperties = new WriterProperties();
+        if (compact) {
+            writerProperties.setFullCompressionMode(true).setCompressionLevel(CompressionConstants.BEST_COMPRESSION);
+        }
+        return writerProperties;
+    }
+
+    /**
+     * @param pdf pdf written by the converter
+     * @return pdf written for the profile, never larger than the given one
+     * @throws IOException when the pdf can not be read
+     */
+    public byte[] apply(byte[] pdf) throws IOException {
+        if (!compact) {
+            return pdf;
+        }
+        ByteArrayOutputStream compacted = new ByteArrayOutputStream();
+        try (PdfDocument document = new PdfDocument(new PdfReader(new ByteArrayInputStream(pdf)),
+                new PdfWriter(compacted, getWriterProperties().useSmartMode()))) {
+            Map<PdfIndirectReference, Float> scales = getImageScales(document);
+            Map<PdfIndirectReference, PdfIndirectReference> replacements = new HashMap<>();
+            deduplicate(scales.keySet(), replacements);
+            if (imageDpi > 0) {
+                downsample(document, scales, replacements);
+            }
+            if (!replacements.isEmpty()) {
+                for (int i = 1; i <= document.getNumberOfPages(); i++) {
+                    replace(document.getPage(i).getResources().getPdfObject(), replacements, new HashSet<>());
+                }
+                for (Map.Entry<PdfIndirectReference, PdfIndirectReference> replaced : replacements.entrySet()) {
+                    // the soft mask of a duplicate image goes with it, unless the kept image shares it
+                    PdfObject mask = ((PdfStream) replaced.getKey().getRefersTo()).get(PdfName.SMask, false);
+                    PdfObject keptMask = ((PdfStream) replaced.getValue().getRefersTo()).get(PdfName.SMask, false);
+                    if (mask instanceof PdfIndirectReference && !mask.equals(keptMask)) {
+                        ((PdfIndirectReference) mask).setFree();
+                    }
+                    replaced.getKey().setFree();
+                }
+            }
+        }
+        byte[] result = compacted.size() < pdf.length ? compacted.toByteArray() : pdf;
+        pdfCount.increment();
+        bytesBefore.add(pdf.length);
+        bytesAfter.add(result.length);
+        return result;
+    }
+
+    public long getPdfCount() {
+        return pdfCount.sum();
+    }
+
+    public long getBytesBefore() {
+        return bytesBefore.sum();
+    }
+
+    public long getBytesAfter() {
+        return bytesAfter.sum();
+    }
+
+    /**
+     * @return every image of the document with the largest scale it is shown at, in points per pixel
+     */
+    private static Map<PdfIndirectReference, Float> getImageScales(PdfDocument document) {
+        Map<PdfIndirectReference, Float> scales = new HashMap<>();
+        IEventListener listener = new IEventListener() {
+            @Override
+            public void eventOccurred(IEventData data, EventType type) {
+                if (type != EventType.RENDER_IMAGE) {
+                    return;
+                }
+                ImageRenderInfo imageInfo = (ImageRenderInfo) data;
+                PdfImageXObject image = imageInfo.getImage();
+                PdfIndirectReference reference = image.getPdfObject().getIndirectReference();
+                if (reference == null) {
+                    // inline image, part of the content stream
+                    return;
+                }
+                Matrix ctm = imageInfo.getImageCtm();
+                float scale = Math.max(Math.abs(ctm.get(Matrix.I11)) / image.getWidth(), Math.abs(ctm.get(Matrix.I22)) / image.getHeight());
+                scales.merge(reference, scale, Math::max);
+            }
+
+            @Override
+            public Set<EventType> getSupportedEvents() {
+                return null;
+            }
+        };
+        for (int i = 1; i <= document.getNumberOfPages(); i++) {
+            new PdfCanvasProcessor(listener).processPageContent(document.getPage(i));
+        }
+        return scales;
+    }
+
+    /**
+     * images with the same content and dictionary are replaced by the first of them
+     */
+    private static void deduplicate(Set<PdfIndirectReference> images, Map<PdfIndirectReference, PdfIndirectReference> replacements) throws IOException {
+        Map<String, PdfIndirectReference> byContent = new HashMap<>();
+        for (PdfIndirectReference reference : images) {
+            PdfStream stream = (PdfStream) reference.getRefersTo();
+            String key = contentKey(stream);
+            PdfIndirectReference first = byContent.putIfAbsent(key, reference);
+            if (first != null) {
+                replacements.put(reference, first);
+            }
+        }
+    }
+
+    private void downsample(PdfDocument document, Map<PdfIndirectReference, Float> scales,
+                            Map<PdfIndirectReference, PdfIndirectReference> replacements) {
+        for (Map.Entry<PdfIndirectReference, Float> scale : scales.entrySet()) {
+            if (replacements.containsKey(scale.getKey())) {
+                continue;
+            }
+            PdfStream stream = (PdfStream) scale.getKey().getRefersTo();
+            // masked images would need their mask downsampled alike, they are kept as they are
+            if (stream.get(PdfName.SMask) != null || stream.get(PdfName.Mask) != null) {
+                continue;
+            }
+            PdfImageXObject image = new PdfImageXObject(stream);
+            // pixels the image needs to be shown at the target dpi
+            float needed = scale.getValue() * imageDpi / 72f;
+            if (needed * DOWNSAMPLE_THRESHOLD >= 1) {
+                continue;
+            }
+            try {
+                BufferedImage original = image.getBufferedImage();
+                int width = Math.max(1, Math.round(original.getWidth() * needed));
+                int height = Math.max(1, Math.round(original.getHeight() * needed));
+                boolean gray = original.getColorModel().getNumColorComponents() == 1;
+                BufferedImage scaled = new BufferedImage(width, height, gray ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB);
+                Graphics2D graphics = scaled.createGraphics();
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.drawImage(original, 0, 0, width, height, null);
+                graphics.dispose();
+                ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+                // photos stay jpeg, other images stay lossless
+                ImageIO.write(scaled, PdfName.DCTDecode.equals(stream.get(PdfName.Filter)) ? "jpg" : "png", encoded);
+                PdfImageXObject downsampled = new PdfImageXObject(ImageDataFactory.create(encoded.toByteArray()));
+                downsampled.makeIndirect(document);
+                replacements.put(scale.getKey(), downsampled.getPdfObject().getIndirectReference());
+                logger.debug("PdfOutputProfile:downsample:image {}x{} downsampled to {}x{}", original.getWidth(), original.getHeight(), width, height);
+            } catch (IOException | RuntimeException e) {
+                logger.debug("PdfOutputProfile:downsample:image kept as it is : {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * points the xobjects of the resources, and of the forms they use, to the replacements of their images
+     */
+    private static void replace(PdfDictionary resources, Map<PdfIndirectReference, PdfIndirectReference> replacements, Set<PdfIndirectReference> visited) {
+        PdfDictionary xObjects = resources != null ? resources.getAsDictionary(PdfName.XObject) : null;
+        if (xObjects == null) {
+            return;
+        }
+        for (PdfName name : xObjects.keySet()) {
+            PdfObject xObject = xObjects.get(name, false);
+            PdfIndirectReference reference = xObject.getIndirectReference();
+            if (reference == null && xObject.isIndirectReference()) {
+                reference = (PdfIndirectReference) xObject;
+            }
+            if (reference != null && replacements.containsKey(reference)) {
+                xObjects.put(name, replacements.get(reference));
+            } else if (reference != null && visited.add(reference)) {
+                PdfObject form = reference.getRefersTo();
+                if (form instanceof PdfStream && PdfName.Form.equals(((PdfStream) form).getAsName(PdfName.Subtype))) {
+                    replace(((PdfStream) form).getAsDictionary(PdfName.Resources), replacements, visited);
+                }
+            }
+        }
+    }
+
+    private static String contentKey(PdfStream stream) throws IOException {
+        StringBuilder key = new StringBuilder();
+        for (PdfName name : new PdfName[]{PdfName.Width, PdfName.Height, PdfName.BitsPerComponent, PdfName.ColorSpace,
+                PdfName.Filter, PdfName.DecodeParms, PdfName.Decode}) {
+            key.append(stream.get(name)).append('/');
+        }
+        key.append(digest(stream.getBytes(false)));
+        PdfStream mask = stream.getAsStream(PdfName.SMask);
+        if (mask != null) {
+            key.append('/').append(digest(mask.getBytes(false)));
+        }
+        return key.toString();
+    }
+
+    private static String digest(byte[] bytes) throws IOException {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+}
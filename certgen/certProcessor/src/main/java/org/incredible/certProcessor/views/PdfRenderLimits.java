@@ -0,0 +1,122 @@
+package org.incredible.certProcessor.views;
+
+import org.apache.commons.lang3.StringUtils;
+import org.incredible.certProcessor.JsonKey;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * Limits of the pdf conversion of one certificate, so a malformed template can not make the converter run or grow
+ * without end. They are checked while the document is laid out, whenever a page is added and whenever pdf content
+ * is written, and the conversion fails as soon as one is exceeded or its thread is interrupted. A limit of 0 is
+ * no limit.
+ */
+public class PdfRenderLimits {
+
+    public static final PdfRenderLimits NONE = new PdfRenderLimits(0, 0, 0);
+
+    private final long timeoutMillis;
+
+    private final int maxPages;
+
+    private final long maxBytes;
+
+    public PdfRenderLimits(long timeoutMillis, int maxPages, long maxBytes) {
+        this.timeoutMillis = timeoutMillis;
+        this.maxPages = maxPages;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param properties certificate properties
+     * @return limits set in the properties, missing ones are no limit
+     */
+    public static PdfRenderLimits fromProperties(Map<String, String> properties) {
+        return new PdfRenderLimits(getLong(properties, JsonKey.RENDER_TIMEOUT_SECONDS) * 1000,
+                (int) getLong(properties, JsonKey.RENDER_MAX_PAGES),
+                getLong(properties, JsonKey.RENDER_MAX_MB) * 1024 * 1024);
+    }
+
+    /**
+     * @return guard of a conversion starting now
+     */
+    public Guard start() {
+        return new Guard(timeoutMillis > 0 ? System.currentTimeMillis() + timeoutMillis : Long.MAX_VALUE);
+    }
+
+    private static long getLong(Map<String, String> properties, String key) {
+        String value = properties.get(key);
+        return StringUtils.isNumeric(value) ? Long.parseLong(value) : 0;
+    }
+
+    /**
+     * thrown from inside the converter when a conversion exceeds its limits or is cancelled
+     */
+    public static class LimitExceededException extends RuntimeException {
+        public LimitExceededException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * checks the limits of one conversion
+     */
+    public class Guard {
+        private final long deadline;
+        private long written;
+
+        private Guard(long deadline) {
+            this.deadline = deadline;
+        }
+
+        /**
+         * @param pages pages of the document so far
+         */
+        public void checkPage(int pages) {
+            check();
+            if (maxPages > 0 && pages > maxPages) {
+                throw new LimitExceededException("pdf has more than " + maxPages + " pages");
+            }
+        }
+
+        /**
+         * @param out stream the pdf is written to
+         * @return stream counting and checking what is written
+         */
+        public OutputStream wrap(OutputStream out) {
+            return new FilterOutputStream(out) {
+                @Override
+                public void write(int b) throws IOException {
+                    written(1);
+                    out.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    written(len);
+                    out.write(b, off, len);
+                }
+            };
+        }
+
+        private void written(int length) {
+            written += length;
+            check();
+            if (maxBytes > 0 && written > maxBytes) {
+                throw new LimitExceededException("pdf is larger than " + maxBytes / (1024 * 1024) + " MB");
+            }
+        }
+
+        private void check() {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new LimitExceededException("pdf conversion cancelled");
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new LimitExceededException("pdf conversion took longer than " + timeoutMillis + " ms");
+            }
+        }
+    }
+}
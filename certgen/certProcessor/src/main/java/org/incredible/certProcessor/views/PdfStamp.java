@@ -0,0 +1,518 @@
+package org.incredible.certProcessor.views;
+
+import com.itextpdf.io.image.ImageDataFactory;
+import com.itextpdf.kernel.colors.Color;
+import com.itextpdf.kernel.colors.DeviceCmyk;
+import com.itextpdf.kernel.colors.DeviceGray;
+import com.itextpdf.kernel.colors.DeviceRgb;
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.geom.Matrix;
+import com.itextpdf.kernel.geom.PageSize;
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.geom.Vector;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfPage;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.canvas.CanvasGraphicsState;
+import com.itextpdf.kernel.pdf.canvas.PdfCanvas;
+import com.itextpdf.kernel.pdf.canvas.parser.EventType;
+import com.itextpdf.kernel.pdf.canvas.parser.PdfCanvasProcessor;
+import com.itextpdf.kernel.pdf.canvas.parser.data.IEventData;
+import com.itextpdf.kernel.pdf.canvas.parser.data.ImageRenderInfo;
+import com.itextpdf.kernel.pdf.canvas.parser.data.TextRenderInfo;
+import com.itextpdf.kernel.pdf.canvas.parser.listener.IEventListener;
+import com.itextpdf.layout.font.FontInfo;
+import com.itextpdf.layout.font.FontProvider;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Background of the certificates of a batch with the places of their per recipient fields, so a certificate is
+ * made by stamping its name, dates and qr code on the background instead of converting its html again.
+ * The template is converted once with every recipient field blank, which is the background, and with markers
+ * of two widths in place of the fields, which tells where every field is, with which font and alignment. The
+ * variables every recipient shares, like the course name, are part of the background.
+ * Only a plain template of one page whose layout does not move with the width of its fields can be stamped,
+ * and a recipient whose values the stamp can not reproduce, like a name too wide for the place measured or
+ * having a glyph missing from the font, is left to the html conversion.
+ */
+public class PdfStamp {
+
+    private static Logger logger = LoggerFactory.getLogger(PdfStamp.class);
+
+    private static final List<HTMLVars.SupportedVars> TEXT_FIELDS = Arrays.asList(
+            HTMLVars.SupportedVars.$recipientName, HTMLVars.SupportedVars.$dated, HTMLVars.SupportedVars.$issuedDate);
+
+    private static final HTMLVars.SupportedVars IMAGE_FIELD = HTMLVars.SupportedVars.$qrCodeImage;
+
+    /**
+     * value of a blank field, it keeps the line of the field so the layout does not collapse around it
+     */
+    private static final String BLANK = "&nbsp;";
+
+    /**
+     * the wide marker is tried with these many markers, the wider it is the wider values are stamped
+     */
+    private static final int[] WIDE_MARKER_COUNTS = {4, 2};
+
+    private static final float TOLERANCE = 0.5f;
+
+    private enum Align {
+        LEFT, CENTER, RIGHT
+    }
+
+    private static class TextField {
+        private HTMLVars.SupportedVars supportedVar;
+        private Align align;
+        private float start;
+        private float end;
+        private float baseline;
+        private float maxWidth;
+        private FontInfo font;
+        private float fontSize;
+        private Color color;
+    }
+
+    /**
+     * text run of a converted template
+     */
+    private static class Run {
+        private String text;
+        private float start;
+        private float end;
+        private float baseline;
+        private String fontName;
+        private float fontSize;
+        private Color color;
+        private boolean plain;
+
+        private String key() {
+            return text + "@" + Math.round(start / TOLERANCE) + "," + Math.round(baseline / TOLERANCE);
+        }
+    }
+
+    /**
+     * image of a converted template, with its size in pixels and its place on the page
+     */
+    private static class Placed {
+        private float pixelWidth;
+        private float pixelHeight;
+        private Rectangle rect;
+
+        private String key() {
+            return Math.round(rect.getX() / TOLERANCE) + "," + Math.round(rect.getY() / TOLERANCE) + ","
+                    + Math.round(rect.getWidth() / TOLERANCE) + "," + Math.round(rect.getHeight() / TOLERANCE);
+        }
+    }
+
+    private static class Layout {
+        private byte[] pdf;
+        private int pages;
+        private final List<Run> runs = new ArrayList<>();
+        private final List<Placed> images = new ArrayList<>();
+    }
+
+    private final byte[] background;
+
+    private final Map<HTMLVars.SupportedVars, String> constants;
+
+    private final List<TextField> textFields;
+
+    private final List<Rectangle> imageSlots;
+
+    private final PdfOutputProfile profile;
+
+    private PdfStamp(byte[] background, Map<HTMLVars.SupportedVars, String> constants, List<TextField> textFields,
+                     List<Rectangle> imageSlots, PdfOutputProfile profile) {
+        this.background = background;
+        this.constants = constants;
+        this.textFields = textFields;
+        this.imageSlots = imageSlots;
+        this.profile = profile;
+    }
+
+    /**
+     * works out the stamp of a batch from one of its certificates
+     *
+     * @param analysis      analysis of the template
+     * @param sample        resolver of a certificate of the batch, its shared variables go into the background
+     * @param qrCode        qr code png of the same certificate, its size is the size of every qr code
+     * @param resourceCache cache the remote resources of the template are taken from
+     * @param baseUri       where the relative urls of the template are resolved from
+     * @param limits        limits of every conversion of the template
+     * @param profile       how the stamped pdfs are written
+     * @return stamp of the batch, null when the template can not be stamped
+     * @throws IOException                            when the template could not be converted, it may be prepared again
+     * @throws PdfRenderLimits.LimitExceededException when a conversion exceeds its limits or is cancelled
+     */
+    public static PdfStamp prepare(TemplateAnalysis analysis, HTMLVarResolver sample, byte[] qrCode, RemoteResourceCache resourceCache,
+                                   String baseUri, PdfRenderLimits limits, PdfOutputProfile profile) throws IOException {
+        long startTime = System.currentTimeMillis();
+        String templateId = analysis.getTemplateId();
+        if (!(analysis.getEngine() instanceof SpliceTemplateEngine)) {
+            logger.info("PdfStamp:prepare:{} has velocity directives, it is not stamped", templateId);
+            return null;
+        }
+        SpliceTemplateEngine engine = (SpliceTemplateEngine) analysis.getEngine();
+        try {
+            Map<HTMLVars.SupportedVars, String> constants = new EnumMap<>(HTMLVars.SupportedVars.class);
+            Map<HTMLVars.SupportedVars, String> markers = new EnumMap<>(HTMLVars.SupportedVars.class);
+            for (HTMLVars.SupportedVars supportedVar : analysis.getResolvers()) {
+                if (TEXT_FIELDS.contains(supportedVar)) {
+                    String marker = "Qmk" + (char) ('A' + supportedVar.ordinal()) + "xZ";
+                    if (analysis.getContent().contains(marker)) {
+                        logger.info("PdfStamp:prepare:{} contains the marker {}, it is not stamped", templateId, marker);
+                        return null;
+                    }
+                    markers.put(supportedVar, marker);
+                } else if (supportedVar != IMAGE_FIELD) {
+                    constants.put(supportedVar, supportedVar.resolve(sample));
+                }
+            }
+            int qrCodeSlots = engine.count(IMAGE_FIELD);
+            BufferedImage qrCodeImage = ImageIO.read(new ByteArrayInputStream(qrCode));
+            String qrCodeUri = toDataUri(qrCode);
+            String blankQrCodeUri = toDataUri(blankImage(qrCodeImage.getWidth(), qrCodeImage.getHeight()));
+
+            Map<HTMLVars.SupportedVars, String> values = new EnumMap<>(constants);
+            values.putAll(markers);
+            values.put(IMAGE_FIELD, qrCodeUri);
+            Layout marked = render(engine, values, resourceCache, baseUri, limits);
+            for (HTMLVars.SupportedVars supportedVar : markers.keySet()) {
+                values.put(supportedVar, BLANK);
+            }
+            values.put(IMAGE_FIELD, blankQrCodeUri);
+            Layout blank = render(engine, values, resourceCache, baseUri, limits);
+            if (marked.pages != 1 || blank.pages != 1) {
+                logger.info("PdfStamp:prepare:{} is not a single page, it is not stamped", templateId);
+                return null;
+            }
+            if (!stable(blank, marked, markers.values())) {
+                logger.info("PdfStamp:prepare:{} layout moves with its fields, it is not stamped", templateId);
+                return null;
+            }
+            List<Rectangle> imageSlots = new ArrayList<>();
+            for (Placed image : marked.images) {
+                if (image.pixelWidth == qrCodeImage.getWidth() && image.pixelHeight == qrCodeImage.getHeight()) {
+                    imageSlots.add(image.rect);
+                }
+            }
+            if (imageSlots.size() != qrCodeSlots) {
+                logger.info("PdfStamp:prepare:{} qr code is not found on the page, it is not stamped", templateId);
+                return null;
+            }
+            for (int count : WIDE_MARKER_COUNTS) {
+                for (Map.Entry<HTMLVars.SupportedVars, String> marker : markers.entrySet()) {
+                    values.put(marker.getKey(), StringUtils.repeat(marker.getValue(), " ", count));
+                }
+                values.put(IMAGE_FIELD, qrCodeUri);
+                Layout wide = render(engine, values, resourceCache, baseUri, limits);
+                List<String> wideMarkers = new ArrayList<>();
+                for (String marker : markers.values()) {
+                    wideMarkers.add(StringUtils.repeat(marker, " ", count));
+                }
+                if (wide.pages != 1 || !stable(blank, wide, wideMarkers)) {
+                    continue;
+                }
+                List<TextField> textFields = getTextFields(engine, markers, count, marked, wide);
+                if (textFields != null) {
+                    logger.info("PdfStamp:prepare:{} stamped with {} text fields and {} images, prepared in {} ms", templateId,
+                            textFields.size(), imageSlots.size(), System.currentTimeMillis() - startTime);
+                    return new PdfStamp(blank.pdf, constants, textFields, imageSlots, profile);
+                }
+            }
+            logger.info("PdfStamp:prepare:{} fields can not be placed, it is not stamped", templateId);
+        } catch (PdfRenderLimits.LimitExceededException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            logger.error("PdfStamp:prepare:{} could not be laid out for stamping, it is not stamped : {}", templateId, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * stamps the fields of a certificate on the background
+     *
+     * @param resolver resolver of the certificate
+     * @param qrCode   qr code png of the certificate
+     * @return pdf content, null when the certificate can not be stamped and has to be converted from html
+     * @throws IOException when the pdf can not be written
+     */
+    public byte[] stamp(HTMLVarResolver resolver, byte[] qrCode) throws IOException {
+        for (Map.Entry<HTMLVars.SupportedVars, String> constant : constants.entrySet()) {
+            if (!Objects.equals(constant.getValue(), constant.getKey().resolve(resolver))) {
+                return null;
+            }
+        }
+        // values are checked before the pdf is opened, a pdf closed without its page can not be written
+        FontProvider fontProvider = profile.getFontProvider();
+        Map<FontInfo, PdfFont> fonts = new HashMap<>();
+        List<String> texts = new ArrayList<>();
+        for (TextField field : textFields) {
+            String text = normalize(field.supportedVar.resolve(resolver));
+            PdfFont font = fonts.computeIfAbsent(field.font, fontProvider::getPdfFont);
+            if (text == null || !canShow(font, text) || font.getWidth(text, field.fontSize) > field.maxWidth + TOLERANCE) {
+                return null;
+            }
+            texts.add(text);
+        }
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        try (PdfDocument backgroundDocument = new PdfDocument(new PdfReader(new ByteArrayInputStream(background)));
+             PdfDocument document = new PdfDocument(new PdfWriter(pdf))) {
+            PdfPage backgroundPage = backgroundDocument.getFirstPage();
+            PdfPage page = document.addNewPage(new PageSize(backgroundPage.getPageSize()));
+            PdfCanvas canvas = new PdfCanvas(page);
+            canvas.addXObject(backgroundPage.copyAsFormXObject(document), 0, 0);
+            for (int i = 0; i < textFields.size(); i++) {
+                TextField field = textFields.get(i);
+                String text = texts.get(i);
+                if (text.isEmpty()) {
+                    continue;
+                }
+                PdfFont font = fonts.get(field.font);
+                float width = font.getWidth(text, field.fontSize);
+                float x = field.align == Align.LEFT ? field.start
+                        : field.align == Align.RIGHT ? field.end - width : (field.start + field.end - width) / 2;
+                canvas.beginText()
+                        .setFontAndSize(font, field.fontSize)
+                        .setFillColor(field.color)
+                        .moveText(x, field.baseline)
+                        .showText(text)
+                        .endText();
+            }
+            for (Rectangle imageSlot : imageSlots) {
+                canvas.addImage(ImageDataFactory.create(qrCode), imageSlot, false);
+            }
+        }
+        return profile.apply(pdf.toByteArray());
+    }
+
+    private static Layout render(SpliceTemplateEngine engine, Map<HTMLVars.SupportedVars, String> values, RemoteResourceCache resourceCache,
+                                 String baseUri, PdfRenderLimits limits) throws IOException {
+        String html = engine.splice(values::get);
+        Layout layout = new Layout();
+        layout.pdf = PdfConverter.convert(resourceCache != null ? resourceCache.inline(html) : html, baseUri, limits);
+        try (PdfDocument document = new PdfDocument(new PdfReader(new ByteArrayInputStream(layout.pdf)))) {
+            layout.pages = document.getNumberOfPages();
+            new PdfCanvasProcessor(new LayoutListener(layout)).processPageContent(document.getFirstPage());
+        }
+        return layout;
+    }
+
+    /**
+     * true when every run and image of the blank layout is at the same place in the other layout, and the other
+     * layout has nothing more than its markers
+     */
+    private static boolean stable(Layout blank, Layout other, Collection<String> markers) {
+        List<String> blankRuns = new ArrayList<>();
+        for (Run run : blank.runs) {
+            blankRuns.add(run.key());
+        }
+        List<String> otherRuns = new ArrayList<>();
+        for (Run run : other.runs) {
+            if (!markers.contains(run.text)) {
+                otherRuns.add(run.key());
+            }
+        }
+        List<String> blankImages = new ArrayList<>();
+        for (Placed image : blank.images) {
+            blankImages.add(image.key());
+        }
+        List<String> otherImages = new ArrayList<>();
+        for (Placed image : other.images) {
+            otherImages.add(image.key());
+        }
+        Collections.sort(blankRuns);
+        Collections.sort(otherRuns);
+        Collections.sort(blankImages);
+        Collections.sort(otherImages);
+        return blankRuns.equals(otherRuns) && blankImages.equals(otherImages);
+    }
+
+    /**
+     * places the text fields from the runs of their markers in the marked and the wide layout, the run of a
+     * field starts at the same place in both when the field is left aligned, ends at the same place when it is
+     * right aligned and is centered at the same place when it is centered
+     *
+     * @return fields, null when a field can not be placed
+     */
+    private static List<TextField> getTextFields(SpliceTemplateEngine engine, Map<HTMLVars.SupportedVars, String> markers, int count,
+                                                 Layout marked, Layout wide) {
+        List<TextField> textFields = new ArrayList<>();
+        for (Map.Entry<HTMLVars.SupportedVars, String> marker : markers.entrySet()) {
+            List<Run> markedRuns = findRuns(marked, marker.getValue());
+            List<Run> wideRuns = findRuns(wide, StringUtils.repeat(marker.getValue(), " ", count));
+            int slots = engine.count(marker.getKey());
+            if (markedRuns.size() != slots || wideRuns.size() != slots) {
+                return null;
+            }
+            for (int i = 0; i < slots; i++) {
+                Run markedRun = markedRuns.get(i);
+                Run wideRun = wideRuns.get(i);
+                if (!markedRun.plain || !wideRun.plain || Math.abs(markedRun.baseline - wideRun.baseline) > TOLERANCE) {
+                    return null;
+                }
+                TextField field = new TextField();
+                field.supportedVar = marker.getKey();
+                field.start = markedRun.start;
+                field.end = markedRun.end;
+                field.baseline = markedRun.baseline;
+                field.maxWidth = wideRun.end - wideRun.start;
+                field.fontSize = markedRun.fontSize;
+                field.color = markedRun.color;
+                field.font = findFont(markedRun.fontName);
+                if (Math.abs(markedRun.start - wideRun.start) <= TOLERANCE) {
+                    field.align = Align.LEFT;
+                } else if (Math.abs(markedRun.end - wideRun.end) <= TOLERANCE) {
+                    field.align = Align.RIGHT;
+                } else if (Math.abs(markedRun.start + markedRun.end - wideRun.start - wideRun.end) <= 2 * TOLERANCE) {
+                    field.align = Align.CENTER;
+                } else {
+                    return null;
+                }
+                if (field.font == null) {
+                    return null;
+                }
+                textFields.add(field);
+            }
+        }
+        return textFields;
+    }
+
+    private static List<Run> findRuns(Layout layout, String text) {
+        List<Run> runs = new ArrayList<>();
+        for (Run run : layout.runs) {
+            if (run.text.equals(text)) {
+                runs.add(run);
+            }
+        }
+        return runs;
+    }
+
+    /**
+     * @param fontName name of a font in a converted pdf, with its subset prefix
+     * @return font of the converter with that name, null when there is none
+     */
+    private static FontInfo findFont(String fontName) {
+        String name = fontName.contains("+") ? StringUtils.substringAfter(fontName, "+") : fontName;
+        for (FontInfo fontInfo : PdfConverter.getFontSet().getFonts()) {
+            if (name.equals(fontInfo.getDescriptor().getFontName())) {
+                return fontInfo;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * whitespace is collapsed like the html conversion does, and a value with markup is left to the conversion
+     */
+    private static String normalize(String value) {
+        if (value == null || value.indexOf('<') >= 0 || value.indexOf('&') >= 0) {
+            return null;
+        }
+        return value.trim().replaceAll("\\s+", " ");
+    }
+
+    private static boolean canShow(PdfFont font, String text) {
+        return text.codePoints().allMatch(codePoint -> codePoint == ' ' || font.containsGlyph(codePoint));
+    }
+
+    private static String strip(String text) {
+        return StringUtils.strip(text.replace('\u00A0', ' '));
+    }
+
+    private static String toDataUri(byte[] png) {
+        return "data:image/png;base64," + Base64.getEncoder().encodeToString(png);
+    }
+
+    private static byte[] blankImage(int width, int height) throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB), "png", png);
+        return png.toByteArray();
+    }
+
+    /**
+     * collects the text runs and images of a page
+     */
+    private static class LayoutListener implements IEventListener {
+        private final Layout layout;
+
+        private LayoutListener(Layout layout) {
+            this.layout = layout;
+        }
+
+        @Override
+        public void eventOccurred(IEventData data, EventType type) {
+            if (type == EventType.RENDER_TEXT) {
+                addRun((TextRenderInfo) data);
+            } else if (type == EventType.RENDER_IMAGE) {
+                ImageRenderInfo imageInfo = (ImageRenderInfo) data;
+                Matrix ctm = imageInfo.getImageCtm();
+                Placed image = new Placed();
+                image.pixelWidth = imageInfo.getImage().getWidth();
+                image.pixelHeight = imageInfo.getImage().getHeight();
+                image.rect = new Rectangle(ctm.get(Matrix.I31), ctm.get(Matrix.I32), ctm.get(Matrix.I11), ctm.get(Matrix.I22));
+                layout.images.add(image);
+            }
+        }
+
+        private void addRun(TextRenderInfo textInfo) {
+            String text = strip(textInfo.getText());
+            if (text.isEmpty()) {
+                return;
+            }
+            List<TextRenderInfo> characters = textInfo.getCharacterRenderInfos();
+            int first = 0;
+            int last = characters.size() - 1;
+            while (first < last && strip(characters.get(first).getText()).isEmpty()) {
+                first++;
+            }
+            while (last > first && strip(characters.get(last).getText()).isEmpty()) {
+                last--;
+            }
+            CanvasGraphicsState graphicsState = textInfo.getGraphicsState();
+            Matrix matrix = textInfo.getTextMatrix().multiply(graphicsState.getCtm());
+            Color color = textInfo.getFillColor();
+            Run run = new Run();
+            run.text = text;
+            run.start = characters.get(first).getBaseline().getStartPoint().get(Vector.I1);
+            run.end = characters.get(last).getBaseline().getEndPoint().get(Vector.I1);
+            run.baseline = textInfo.getBaseline().getStartPoint().get(Vector.I2);
+            run.fontName = textInfo.getFont().getFontProgram().getFontNames().getFontName();
+            run.fontSize = textInfo.getFontSize() * matrix.get(Matrix.I22);
+            run.color = color;
+            // text drawn upright, unscaled, unspaced and filled in a device color can be drawn again the same way
+            run.plain = Math.abs(matrix.get(Matrix.I12)) < 1e-3f && Math.abs(matrix.get(Matrix.I21)) < 1e-3f
+                    && Math.abs(matrix.get(Matrix.I11) - matrix.get(Matrix.I22)) < 1e-3f && matrix.get(Matrix.I22) > 0
+                    && graphicsState.getCharSpacing() == 0 && graphicsState.getWordSpacing() == 0
+                    && Math.abs(graphicsState.getHorizontalScaling() - 100) < 1e-3f && textInfo.getRise() == 0
+                    && textInfo.getTextRenderMode() == 0
+                    && (color instanceof DeviceRgb || color instanceof DeviceGray || color instanceof DeviceCmyk);
+            layout.runs.add(run);
+        }
+
+        @Override
+        public Set<EventType> getSupportedEvents() {
+            return null;
+        }
+    }
+}
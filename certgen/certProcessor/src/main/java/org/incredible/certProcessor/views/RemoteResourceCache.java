@@ -0,0 +1,245 @@
+package org.incredible.certProcessor.views;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.incredible.certProcessor.JsonKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Process wide cache of the remote images, styles and fonts referenced by certificates, like signatory images,
+ * the certificate logo or styles linked by a template. The html of a certificate is rewritten before it is
+ * converted to pdf, so every remote url it references is replaced by the cached content as a data uri and the
+ * converter does not fetch it again for every certificate. Resources are kept for a limited time, then
+ * revalidated with their etag, the cache is bounded by size and the least recently used resources are dropped
+ * first. Concurrent certificates needing a resource not cached yet wait for a single download. A resource
+ * which can not be downloaded is left to the converter, as before.
+ */
+public class RemoteResourceCache {
+
+    private static Logger logger = LoggerFactory.getLogger(RemoteResourceCache.class);
+
+    private static final long DEFAULT_MAX_MB = 64;
+
+    private static final long DEFAULT_TTL_MINUTES = 10;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+    private static final int READ_TIMEOUT_MILLIS = 15000;
+
+    private static final Pattern SRC = Pattern.compile("(\\ssrc\\s*=\\s*)([\"'])(https?://[^\"']+)\\2", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern LINK = Pattern.compile("<link\\b[^>]*>", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern HREF = Pattern.compile("(\\shref\\s*=\\s*)([\"'])(https?://[^\"']+)\\2", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern CSS_URL = Pattern.compile("url\\(\\s*([\"']?)([^\"')]+)\\1\\s*\\)", Pattern.CASE_INSENSITIVE);
+
+    private static RemoteResourceCache instance;
+
+    private final long maxBytes;
+
+    private final long ttlMillis;
+
+    private long totalBytes;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Map<String, CompletableFuture<Entry>> downloads = new ConcurrentHashMap<>();
+
+    private static class Entry {
+        private final String dataUri;
+        private final String etag;
+        private volatile long expiresAt;
+
+        private Entry(String dataUri, String etag, long expiresAt) {
+            this.dataUri = dataUri;
+            this.etag = etag;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private RemoteResourceCache(long maxBytes, long ttlMillis) {
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @param properties certificate properties, the cache size and time to live are read on first use
+     * @return cache shared by the process
+     */
+    public static synchronized RemoteResourceCache getInstance(Map<String, String> properties) {
+        if (instance == null) {
+            String maxMb = properties.get(JsonKey.RESOURCE_CACHE_MAX_MB);
+            String ttlMinutes = properties.get(JsonKey.RESOURCE_CACHE_TTL_MINUTES);
+            instance = new RemoteResourceCache((StringUtils.isNumeric(maxMb) ? Long.parseLong(maxMb) : DEFAULT_MAX_MB) * 1024 * 1024,
+                    (StringUtils.isNumeric(ttlMinutes) ? Long.parseLong(ttlMinutes) : DEFAULT_TTL_MINUTES) * 60000);
+        }
+        return instance;
+    }
+
+    /**
+     * replaces the remote urls of images, linked styles and style urls of the html by their cached content
+     *
+     * @param html html of a certificate
+     * @return html referencing the cached content, urls which could not be downloaded are left as they are
+     */
+    public String inline(String html) {
+        String inlined = replace(SRC, html, 3, this::getDataUri);
+        inlined = replace(LINK, inlined, 0, link -> replace(HREF, link, 3, this::getDataUri));
+        return replace(CSS_URL, inlined, 2, url -> isRemote(url) ? getDataUri(url) : null);
+    }
+
+    /**
+     * @param url remote url
+     * @return cached content of the url as a data uri, null when it can not be downloaded
+     */
+    public String getDataUri(String url) {
+        String resourceUrl = url.replace("&amp;", "&");
+        Entry entry = lookup(resourceUrl);
+        if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+            return entry.dataUri;
+        }
+        CompletableFuture<Entry> download = new CompletableFuture<>();
+        CompletableFuture<Entry> running = downloads.putIfAbsent(resourceUrl, download);
+        if (running != null) {
+            return dataUriOf(running.join());
+        }
+        try {
+            Entry fetched = fetch(resourceUrl, entry);
+            download.complete(fetched);
+            return dataUriOf(fetched);
+        } catch (Exception e) {
+            // a stale copy is better than a certificate without the resource
+            logger.error("RemoteResourceCache:getDataUri:could not download {} : {}", resourceUrl, e.getMessage());
+            download.complete(entry);
+            return dataUriOf(entry);
+        } finally {
+            downloads.remove(resourceUrl);
+        }
+    }
+
+    private Entry fetch(String url, Entry stale) throws IOException {
+        long startTime = System.currentTimeMillis();
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        if (stale != null && stale.etag != null) {
+            connection.setRequestProperty("If-None-Match", stale.etag);
+        }
+        try {
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED && stale != null) {
+                stale.expiresAt = System.currentTimeMillis() + ttlMillis;
+                logger.info("RemoteResourceCache:fetch:{} not modified", url);
+                return stale;
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("status " + status);
+            }
+            byte[] data;
+            try (InputStream in = connection.getInputStream()) {
+                data = IOUtils.toByteArray(in);
+            }
+            String contentType = StringUtils.substringBefore(StringUtils.defaultIfBlank(connection.getContentType(), guessContentType(url)), ";").trim();
+            if (contentType.contains("css")) {
+                // urls of a style sheet resolve against it, they are inlined as well before it becomes a data uri
+                data = inlineStyleSheet(url, new String(data, StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8);
+            }
+            Entry entry = new Entry("data:" + contentType + ";base64," + Base64.getEncoder().encodeToString(data),
+                    connection.getHeaderField("ETag"), System.currentTimeMillis() + ttlMillis);
+            store(url, entry);
+            logger.info("RemoteResourceCache:fetch:{} cached, {} bytes in {} ms", url, data.length, System.currentTimeMillis() - startTime);
+            return entry;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private String inlineStyleSheet(String styleSheetUrl, String css) {
+        return replace(CSS_URL, css, 2, url -> {
+            if (url.startsWith("data:")) {
+                return null;
+            }
+            try {
+                String resolved = new URL(new URL(styleSheetUrl), url).toString();
+                // imported style sheets are left to the converter, so style sheets never wait on each other
+                return isRemote(resolved) && !StringUtils.substringBefore(resolved, "?").endsWith(".css") ? getDataUri(resolved) : null;
+            } catch (IOException e) {
+                return null;
+            }
+        });
+    }
+
+    private synchronized Entry lookup(String url) {
+        return entries.get(url);
+    }
+
+    private synchronized void store(String url, Entry entry) {
+        long size = entry.dataUri.length();
+        if (size > maxBytes / 4) {
+            // too big to share the cache with other resources, left to the converter
+            return;
+        }
+        Entry previous = entries.put(url, entry);
+        totalBytes += size - (previous != null ? previous.dataUri.length() : 0);
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Entry> evicted = eldest.next();
+            if (evicted.getKey().equals(url)) {
+                continue;
+            }
+            totalBytes -= evicted.getValue().dataUri.length();
+            eldest.remove();
+        }
+    }
+
+    private static String dataUriOf(Entry entry) {
+        return entry != null ? entry.dataUri : null;
+    }
+
+    private static boolean isRemote(String url) {
+        return StringUtils.startsWithIgnoreCase(url, "http://") || StringUtils.startsWithIgnoreCase(url, "https://");
+    }
+
+    private static String guessContentType(String url) {
+        String guessed = URLConnection.guessContentTypeFromName(StringUtils.substringBefore(url, "?"));
+        return guessed != null ? guessed : "application/octet-stream";
+    }
+
+    /**
+     * replaces a group of every match by the value computed for it, matches without a value are kept
+     */
+    private static String replace(Pattern pattern, String text, int group, Function<String, String> value) {
+        Matcher matcher = pattern.matcher(text);
+        StringBuffer result = new StringBuffer();
+        while (matcher.find()) {
+            String replacement = value.apply(matcher.group(group));
+            String match = matcher.group();
+            if (replacement != null && !replacement.equals(matcher.group(group))) {
+                int start = matcher.start(group) - matcher.start();
+                int end = matcher.end(group) - matcher.start();
+                match = match.substring(0, start) + replacement + match.substring(end);
+            }
+            matcher.appendReplacement(result, Matcher.quoteReplacement(match));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+}
@@ -0,0 +1,172 @@
+package org.incredible.certProcessor.views;
+
+import org.apache.velocity.runtime.RuntimeInstance;
+import org.apache.velocity.runtime.parser.node.ASTDirective;
+import org.apache.velocity.runtime.parser.node.ASTReference;
+import org.apache.velocity.runtime.parser.node.ASTText;
+import org.apache.velocity.runtime.parser.node.Node;
+import org.apache.velocity.runtime.parser.node.SimpleNode;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Engine of the templates having only plain $var references of supported variables and no velocity directive,
+ * which is what most templates are. The template is split once into literal chunks and variable slots, and a
+ * certificate is written by splicing its values between the chunks into a single buffer of the exact size,
+ * with the same output velocity would give.
+ */
+public class SpliceTemplateEngine implements TemplateEngine {
+
+    public static final String NAME = "splice";
+
+    private static final int VAR_COUNT = HTMLVars.SupportedVars.values().length;
+
+    private static final Pattern REFERENCE = Pattern.compile("\\$!?\\{?[a-zA-Z][a-zA-Z0-9_-]*}?");
+
+    /**
+     * literal chunks, one more than the slots
+     */
+    private final String[] chunks;
+
+    /**
+     * variable of every slot
+     */
+    private final HTMLVars.SupportedVars[] slots;
+
+    /**
+     * reference of every slot as written in the template, written for a missing value like velocity does
+     */
+    private final String[] references;
+
+    private final int literalLength;
+
+    private SpliceTemplateEngine(String[] chunks, HTMLVars.SupportedVars[] slots, String[] references) {
+        this.chunks = chunks;
+        this.slots = slots;
+        this.references = references;
+        int length = 0;
+        for (String chunk : chunks) {
+            length += chunk.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * compiles the template when it has no directive, comment or escape and references supported variables only.
+     * a # name which is neither a directive nor a macro, like a css colour #fff, is written by velocity as it is, so
+     * it is text here too
+     *
+     * @param content html content of the template
+     * @param root    root node of the parsed template
+     * @param runtime velocity runtime the template was parsed by
+     * @return splice engine of the template, null when the template needs velocity
+     */
+    static SpliceTemplateEngine compile(String content, SimpleNode root, RuntimeInstance runtime) {
+        if (content.contains("\\$") || content.contains("\\#")) {
+            return null;
+        }
+        List<String> parsedReferences = new ArrayList<>();
+        for (int i = 0; i < root.jjtGetNumChildren(); i++) {
+            Node node = root.jjtGetChild(i);
+            if (node instanceof ASTReference && node.jjtGetNumChildren() == 0) {
+                parsedReferences.add(node.literal());
+            } else if (!(node instanceof ASTText) && !isLiteral(node, runtime)) {
+                return null;
+            }
+        }
+        List<String> chunks = new ArrayList<>();
+        List<HTMLVars.SupportedVars> slots = new ArrayList<>();
+        List<String> references = new ArrayList<>();
+        Matcher matcher = REFERENCE.matcher(content);
+        int position = 0;
+        while (matcher.find()) {
+            String reference = matcher.group();
+            HTMLVars.SupportedVars supportedVar = HTMLVars.of(reference.replace("!", ""));
+            if (supportedVar == null) {
+                return null;
+            }
+            chunks.add(content.substring(position, matcher.start()));
+            slots.add(supportedVar);
+            references.add(reference);
+            position = matcher.end();
+        }
+        chunks.add(content.substring(position));
+        // the references found here must be the ones velocity parsed, otherwise the output could differ
+        if (!references.equals(parsedReferences)) {
+            return null;
+        }
+        return new SpliceTemplateEngine(chunks.toArray(new String[0]), slots.toArray(new HTMLVars.SupportedVars[0]),
+                references.toArray(new String[0]));
+    }
+
+    private static boolean isLiteral(Node node, RuntimeInstance runtime) {
+        if (!(node instanceof ASTDirective) || node.jjtGetNumChildren() != 0) {
+            return false;
+        }
+        String name = ((ASTDirective) node).getDirectiveName();
+        return !name.startsWith("@") && runtime.getDirective(name) == null
+                && !runtime.isVelocimacro(name, node.getTemplateName());
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void merge(HTMLVarResolver htmlVarResolver, Writer writer) throws IOException {
+        writer.append(splice(supportedVar -> supportedVar.resolve(htmlVarResolver)));
+    }
+
+    /**
+     * @param supportedVar variable
+     * @return slots of the variable in the template
+     */
+    int count(HTMLVars.SupportedVars supportedVar) {
+        int count = 0;
+        for (HTMLVars.SupportedVars slot : slots) {
+            if (slot == supportedVar) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param valueOf value of every variable, written as it is
+     * @return html of the template with the values spliced in
+     */
+    String splice(Function<HTMLVars.SupportedVars, String> valueOf) {
+        String[] values = new String[slots.length];
+        // a variable used in several slots is resolved once
+        boolean[] resolved = new boolean[VAR_COUNT];
+        String[] resolvedValues = new String[VAR_COUNT];
+        int length = literalLength;
+        for (int i = 0; i < slots.length; i++) {
+            int ordinal = slots[i].ordinal();
+            if (!resolved[ordinal]) {
+                resolved[ordinal] = true;
+                resolvedValues[ordinal] = valueOf.apply(slots[i]);
+            }
+            String value = resolvedValues[ordinal];
+            if (value == null) {
+                // velocity writes a reference without value as it is, and nothing for a quiet $! reference
+                value = references[i].startsWith("$!") ? "" : references[i];
+            }
+            values[i] = value;
+            length += value.length();
+        }
+        StringBuilder html = new StringBuilder(length);
+        for (int i = 0; i < slots.length; i++) {
+            html.append(chunks[i]).append(values[i]);
+        }
+        html.append(chunks[slots.length]);
+        return html.toString();
+    }
+}
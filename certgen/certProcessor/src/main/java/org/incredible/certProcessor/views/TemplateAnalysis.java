@@ -0,0 +1,149 @@
+package org.incredible.certProcessor.views;
+
+import org.apache.velocity.Template;
+import org.apache.velocity.runtime.RuntimeInstance;
+import org.apache.velocity.runtime.parser.node.ASTReference;
+import org.apache.velocity.runtime.parser.node.SimpleNode;
+import org.apache.velocity.runtime.visitor.BaseVisitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * What is known of one version of an html template: the parsed template, the variables it references, the
+ * resolvers of those variables, the engine rendering it and whether the template is valid. Templates without
+ * velocity directives are rendered by the {@link SpliceTemplateEngine}, others by the {@link VelocityTemplateEngine}. It is computed once per template version
+ * by {@link VelocityTemplateCache} and never changes, so any number of threads can render with it.
+ */
+public class TemplateAnalysis {
+
+    private final String templateId;
+
+    private final String content;
+
+    private final Template template;
+
+    private final Set<String> variables;
+
+    private final Set<String> invalidVariables;
+
+    private final List<HTMLVars.SupportedVars> resolvers;
+
+    private final String parseError;
+
+    private final TemplateEngine engine;
+
+    private TemplateAnalysis(String templateId, String content, Template template, Set<String> variables,
+                             Set<String> invalidVariables, List<HTMLVars.SupportedVars> resolvers, String parseError,
+                             TemplateEngine engine) {
+        this.templateId = templateId;
+        this.content = content;
+        this.template = template;
+        this.variables = Collections.unmodifiableSet(variables);
+        this.invalidVariables = Collections.unmodifiableSet(invalidVariables);
+        this.resolvers = Collections.unmodifiableList(resolvers);
+        this.parseError = parseError;
+        this.engine = engine;
+    }
+
+    /**
+     * @param templateId identity of the template
+     * @param content    html content of the template
+     * @param template   template parsed from the content
+     * @param runtime    velocity runtime the template was parsed by
+     * @return analysis of the parsed template
+     */
+    static TemplateAnalysis of(String templateId, String content, Template template, RuntimeInstance runtime) {
+        Set<String> variables = new LinkedHashSet<>();
+        new BaseVisitor() {
+            @Override
+            public Object visit(final ASTReference node, final Object data) {
+                variables.add(node.literal());
+                return null;
+            }
+        }.visit((SimpleNode) template.getData(), null);
+        Set<String> invalidVariables = new LinkedHashSet<>();
+        List<HTMLVars.SupportedVars> resolvers = new ArrayList<>();
+        for (String variable : variables) {
+            HTMLVars.SupportedVars supportedVar = HTMLVars.of(variable);
+            if (supportedVar != null) {
+                resolvers.add(supportedVar);
+            } else {
+                invalidVariables.add(variable);
+            }
+        }
+        TemplateEngine engine = SpliceTemplateEngine.compile(content, (SimpleNode) template.getData(), runtime);
+        if (engine == null) {
+            engine = new VelocityTemplateEngine(template, Collections.unmodifiableList(resolvers));
+        }
+        return new TemplateAnalysis(templateId, content, template, variables, invalidVariables, resolvers, null, engine);
+    }
+
+    /**
+     * @param templateId identity of the template
+     * @param content    html content of the template
+     * @param parseError why the content could not be parsed
+     * @return analysis of a template which is not valid velocity
+     */
+    static TemplateAnalysis invalid(String templateId, String content, String parseError) {
+        return new TemplateAnalysis(templateId, content, null, Collections.emptySet(), Collections.emptySet(),
+                Collections.emptyList(), parseError, null);
+    }
+
+    public String getTemplateId() {
+        return templateId;
+    }
+
+    String getContent() {
+        return content;
+    }
+
+    /**
+     * @return parsed template, safe to merge from several threads, null when the template could not be parsed
+     */
+    public Template getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return variables referenced by the template, like $recipientName
+     */
+    public Set<String> getVariables() {
+        return variables;
+    }
+
+    /**
+     * @return referenced variables which are not supported
+     */
+    public Set<String> getInvalidVariables() {
+        return invalidVariables;
+    }
+
+    /**
+     * @return resolvers of the variables referenced by the template
+     */
+    public List<HTMLVars.SupportedVars> getResolvers() {
+        return resolvers;
+    }
+
+    /**
+     * @return true when the template parses and references only supported variables
+     */
+    public boolean isValid() {
+        return template != null && invalidVariables.isEmpty();
+    }
+
+    /**
+     * @return engine rendering the template, null when the template could not be parsed
+     */
+    public TemplateEngine getEngine() {
+        return engine;
+    }
+
+    public String getParseError() {
+        return parseError;
+    }
+}
@@ -0,0 +1,84 @@
+package org.incredible.certProcessor.views;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A template zip opened read only, its entries are read in place and never extracted. The images, styles and
+ * fonts of the template are resolved by the pdf converter through the jar url of the zip, so rendering reads
+ * them straight from the archive.
+ */
+public class TemplateArchive {
+
+    private static Logger logger = LoggerFactory.getLogger(TemplateArchive.class);
+
+    public static final String INDEX_HTML = "index.html";
+
+    private final File zipFile;
+
+    private TemplateArchive(File zipFile) {
+        this.zipFile = zipFile;
+    }
+
+    /**
+     * opens a template zip, entries which would resolve outside of the archive are rejected
+     *
+     * @param zipFile template zip
+     * @return archive of the zip
+     * @throws IOException when the zip can not be read, has no index.html or has an invalid entry
+     */
+    public static TemplateArchive open(File zipFile) throws IOException {
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (name.startsWith("/") || name.startsWith("\\") || name.contains("../") || name.contains("..\\")) {
+                    throw new IOException("zip entry " + name + " is outside of the template archive");
+                }
+            }
+            if (zip.getEntry(INDEX_HTML) == null) {
+                throw new IOException("template archive " + zipFile.getName() + " has no " + INDEX_HTML);
+            }
+        }
+        return new TemplateArchive(zipFile);
+    }
+
+    /**
+     * @param name entry name, like index.html
+     * @return content of the entry read as utf-8
+     * @throws IOException when the entry is missing or can not be read
+     */
+    public String readEntry(String name) throws IOException {
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            ZipEntry entry = zip.getEntry(name);
+            if (entry == null) {
+                throw new IOException("template archive " + zipFile.getName() + " has no " + name);
+            }
+            try (InputStream in = zip.getInputStream(entry)) {
+                String content = IOUtils.toString(in, StandardCharsets.UTF_8);
+                logger.info("TemplateArchive:readEntry:{} read from {}", name, zipFile.getName());
+                return content;
+            }
+        }
+    }
+
+    /**
+     * @return base uri resolving the relative urls of the template inside the archive, like jar:file:/t.zip!/
+     */
+    public String getBaseUri() {
+        return "jar:" + zipFile.toURI().toString() + "!/";
+    }
+
+    public File getZipFile() {
+        return zipFile;
+    }
+}
@@ -0,0 +1,439 @@
+package org.incredible.certProcessor.views;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.incredible.certProcessor.JsonKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * On disk cache of the html template zips, shared by all the orgs, tags and requests using a template.
+ * A zip is kept as it was downloaded in a file named by the digest of its content and is never extracted, its
+ * entries are read in place through a {@link TemplateArchive}. Template urls with the same content share one
+ * copy, and every url remembers the digest, the etag and the last modified date it was downloaded with. Urls
+ * having those are revalidated from time to time, and downloaded again only when their template changed.
+ * The cache is bounded by size, the least recently used templates are removed first, except templates pinned
+ * by a registration which stay until they are unpinned. Concurrent requests for
+ * a template not cached yet wait for a single download. The index is kept in a file in the cache directory
+ * so the cache is still warm after a restart.
+ */
+public class TemplateCache {
+
+    private static Logger logger = LoggerFactory.getLogger(TemplateCache.class);
+
+    private static final String INDEX_FILE = "index.json";
+
+    private static final String DOWNLOAD_PREFIX = "download-";
+
+    private static final String ZIP_SUFFIX = ".zip";
+
+    private static final String DEFAULT_CACHE_DIR = "conf/template-cache/";
+
+    private static final long DEFAULT_MAX_MB = 512;
+
+    private static final long REVALIDATE_MILLIS = 5 * 60 * 1000;
+
+    private static TemplateCache instance;
+
+    private static ObjectMapper mapper = new ObjectMapper();
+
+    private final File cacheDir;
+
+    private final long maxBytes;
+
+    private final Map<String, Entry> index = new HashMap<>();
+
+    private final Map<String, CompletableFuture<File>> downloads = new ConcurrentHashMap<>();
+
+    private final Set<String> pinned = new HashSet<>();
+
+    /**
+     * downloads the zip of a template
+     */
+    public interface TemplateSource {
+        /**
+         * @param directory empty directory to download the zip into
+         * @param cached    what the cache knows of the url when its template is revalidated, null otherwise
+         * @return downloaded zip and its validators, null when the cached template was not modified
+         * @throws Exception when the zip can not be downloaded
+         */
+        Download download(File directory, Entry cached) throws Exception;
+    }
+
+    public static class Download {
+        private final File zipFile;
+        private final String digest;
+        private final String etag;
+        private final String lastModified;
+
+        public Download(File zipFile, String etag) {
+            this(zipFile, null, etag, null);
+        }
+
+        /**
+         * @param digest digest of the zip when it was computed while downloading, see {@link #write}
+         */
+        public Download(File zipFile, String digest, String etag, String lastModified) {
+            this.zipFile = zipFile;
+            this.digest = digest;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * what the cache knows of a template url, kept in the index file
+     */
+    public static class Entry {
+        public String digest;
+        public String etag;
+        public String lastModified;
+        public long checkedAt;
+        public long size;
+        public long lastUsed;
+        public boolean pinned;
+    }
+
+    /**
+     * @param cacheDir directory of the zips and of the index
+     * @param maxBytes size the cache is evicted down to
+     */
+    TemplateCache(File cacheDir, long maxBytes) {
+        this.cacheDir = cacheDir;
+        this.maxBytes = maxBytes;
+        cacheDir.mkdirs();
+        // downloads interrupted by a restart, and templates extracted by earlier versions
+        File[] leftovers = cacheDir.listFiles((dir, name) -> name.startsWith(DOWNLOAD_PREFIX) || new File(dir, name).isDirectory());
+        if (leftovers != null) {
+            for (File leftover : leftovers) {
+                FileUtils.deleteQuietly(leftover);
+            }
+        }
+        loadIndex();
+    }
+
+    /**
+     * @param properties certificate properties, the cache directory and size are read on first use
+     * @return cache shared by the process
+     */
+    public static synchronized TemplateCache getInstance(Map<String, String> properties) {
+        if (instance == null) {
+            String dir = properties.get(JsonKey.TEMPLATE_CACHE_DIR);
+            String maxMb = properties.get(JsonKey.TEMPLATE_CACHE_MAX_MB);
+            instance = new TemplateCache(new File(StringUtils.isNotBlank(dir) ? dir : DEFAULT_CACHE_DIR),
+                    (StringUtils.isNumeric(maxMb) ? Long.parseLong(maxMb) : DEFAULT_MAX_MB) * 1024 * 1024);
+        }
+        return instance;
+    }
+
+    /**
+     * gets the zip of the template, downloading it only when the url is not cached or its template changed
+     *
+     * @param url    template url
+     * @param source downloads the template zip
+     * @return cached zip of the template, not to be modified
+     * @throws Exception when the template can not be downloaded or is not a valid template archive
+     */
+    public File get(String url, TemplateSource source) throws Exception {
+        Entry cached = lookup(url);
+        if (cached != null && !isStale(cached)) {
+            return zipOf(cached);
+        }
+        CompletableFuture<File> download = new CompletableFuture<>();
+        CompletableFuture<File> running = downloads.putIfAbsent(url, download);
+        if (running != null) {
+            logger.info("TemplateCache:get:waiting for the running download of {}", url);
+            return await(running);
+        }
+        try {
+            download.complete(fetch(url, source, cached));
+        } catch (Exception e) {
+            if (cached != null) {
+                // the cached template is still used when it can not be revalidated, it is checked again later
+                logger.error("TemplateCache:get:could not revalidate {}, using the cached template : {}", url, e.getMessage());
+                markChecked(cached);
+                download.complete(zipOf(cached));
+            } else {
+                download.completeExceptionally(e);
+            }
+        } finally {
+            downloads.remove(url);
+        }
+        return await(download);
+    }
+
+    /**
+     * keeps the template of the url in the cache until it is unpinned, also across restarts
+     *
+     * @param url template url, cached already or cached on its next download
+     */
+    public synchronized void pin(String url) {
+        pinned.add(url);
+        Entry entry = index.get(url);
+        if (entry != null) {
+            entry.pinned = true;
+            saveIndex();
+        }
+        logger.info("TemplateCache:pin:{} pinned", url);
+    }
+
+    /**
+     * lets the template of the url be evicted again
+     *
+     * @param url template url
+     * @return true when the url was pinned
+     */
+    public synchronized boolean unpin(String url) {
+        boolean wasPinned = pinned.remove(url);
+        Entry entry = index.get(url);
+        if (entry != null && entry.pinned) {
+            entry.pinned = false;
+            saveIndex();
+        }
+        logger.info("TemplateCache:unpin:{} unpinned", url);
+        return wasPinned;
+    }
+
+    /**
+     * @return urls of the pinned templates
+     */
+    public synchronized Set<String> getPinned() {
+        return new HashSet<>(pinned);
+    }
+
+    /**
+     * streams a downloaded zip into a file, computing its digest on the way so the zip is not read again
+     *
+     * @param in   zip content
+     * @param file file to write
+     * @return digest of the zip
+     * @throws IOException when the zip can not be read or written
+     */
+    public static String write(InputStream in, File file) throws IOException {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        try (InputStream digestIn = new DigestInputStream(in, messageDigest);
+             OutputStream out = new FileOutputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = digestIn.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return toHex(messageDigest.digest());
+    }
+
+    private synchronized Entry lookup(String url) {
+        Entry entry = index.get(url);
+        if (entry == null) {
+            return null;
+        }
+        if (!zipOf(entry).isFile()) {
+            index.remove(url);
+            return null;
+        }
+        entry.lastUsed = System.currentTimeMillis();
+        return entry;
+    }
+
+    /**
+     * urls without etag or last modified date can not be revalidated, their template is kept as it is
+     */
+    private static boolean isStale(Entry entry) {
+        return (entry.etag != null || entry.lastModified != null)
+                && System.currentTimeMillis() - entry.checkedAt >= REVALIDATE_MILLIS;
+    }
+
+    private synchronized void markChecked(Entry entry) {
+        entry.checkedAt = System.currentTimeMillis();
+        saveIndex();
+    }
+
+    private File zipOf(Entry entry) {
+        return new File(cacheDir, entry.digest + ZIP_SUFFIX);
+    }
+
+    private File fetch(String url, TemplateSource source, Entry cached) throws Exception {
+        long startTime = System.currentTimeMillis();
+        Path downloadDir = Files.createTempDirectory(cacheDir.toPath(), DOWNLOAD_PREFIX);
+        try {
+            Download download = source.download(downloadDir.toFile(), cached);
+            if (download == null) {
+                if (cached == null || !zipOf(cached).isFile()) {
+                    throw new IOException("template " + url + " was not modified but is not cached");
+                }
+                markChecked(cached);
+                logger.info("TemplateCache:fetch:{} not modified, revalidated in {} ms", url, System.currentTimeMillis() - startTime);
+                return zipOf(cached);
+            }
+            String digest = download.digest != null ? download.digest : digest(download.zipFile);
+            File zip = new File(cacheDir, digest + ZIP_SUFFIX);
+            long size;
+            synchronized (this) {
+                size = sizeOf(digest);
+            }
+            if (size < 0) {
+                // same content under another url is cached already, otherwise check the zip and move it in
+                TemplateArchive.open(download.zipFile);
+                size = download.zipFile.length();
+                try {
+                    Files.move(download.zipFile.toPath(), zip.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    if (!zip.isFile()) {
+                        throw e;
+                    }
+                }
+            }
+            Entry entry = new Entry();
+            entry.digest = digest;
+            entry.etag = download.etag;
+            entry.lastModified = download.lastModified;
+            entry.size = size;
+            entry.lastUsed = System.currentTimeMillis();
+            entry.checkedAt = entry.lastUsed;
+            synchronized (this) {
+                entry.pinned = pinned.contains(url);
+                Entry previous = index.put(url, entry);
+                if (previous != null && !previous.digest.equals(digest) && sizeOf(previous.digest) < 0) {
+                    // the template of the url changed and no other url has its old content
+                    FileUtils.deleteQuietly(zipOf(previous));
+                }
+                evict(digest);
+                saveIndex();
+            }
+            logger.info("TemplateCache:fetch:{} cached as {} in {} ms", url, digest, System.currentTimeMillis() - startTime);
+            return zip;
+        } finally {
+            FileUtils.deleteQuietly(downloadDir.toFile());
+        }
+    }
+
+    /**
+     * removes least recently used templates till the cache fits in its size, the given one and the pinned ones are kept
+     */
+    private void evict(String keepDigest) {
+        Map<String, Long> lastUsed = new HashMap<>();
+        Map<String, Long> sizes = new HashMap<>();
+        Set<String> keep = new HashSet<>();
+        keep.add(keepDigest);
+        for (Entry entry : index.values()) {
+            if (entry.pinned) {
+                keep.add(entry.digest);
+            }
+            lastUsed.merge(entry.digest, entry.lastUsed, Math::max);
+            sizes.put(entry.digest, entry.size);
+        }
+        long total = sizes.values().stream().mapToLong(Long::longValue).sum();
+        List<String> digests = new ArrayList<>(lastUsed.keySet());
+        digests.sort(Comparator.comparing(lastUsed::get));
+        for (String digest : digests) {
+            if (total <= maxBytes) {
+                break;
+            }
+            if (keep.contains(digest)) {
+                continue;
+            }
+            index.values().removeIf(entry -> entry.digest.equals(digest));
+            FileUtils.deleteQuietly(new File(cacheDir, digest + ZIP_SUFFIX));
+            total -= sizes.get(digest);
+            logger.info("TemplateCache:evict:removed template {}", digest);
+        }
+    }
+
+    private long sizeOf(String digest) {
+        for (Entry entry : index.values()) {
+            if (entry.digest.equals(digest) && new File(cacheDir, digest + ZIP_SUFFIX).isFile()) {
+                return entry.size;
+            }
+        }
+        return -1;
+    }
+
+    private void loadIndex() {
+        File indexFile = new File(cacheDir, INDEX_FILE);
+        if (!indexFile.exists()) {
+            return;
+        }
+        try {
+            Map<String, Entry> entries = mapper.readValue(indexFile, new TypeReference<Map<String, Entry>>() {
+            });
+            entries.forEach((url, entry) -> {
+                if (new File(cacheDir, entry.digest + ZIP_SUFFIX).isFile()) {
+                    index.put(url, entry);
+                }
+                if (entry.pinned) {
+                    pinned.add(url);
+                }
+            });
+            logger.info("TemplateCache:loadIndex:{} templates cached in {}", index.size(), cacheDir.getAbsolutePath());
+        } catch (IOException e) {
+            logger.error("TemplateCache:loadIndex:ignoring unreadable index {}", e.getMessage());
+        }
+    }
+
+    private void saveIndex() {
+        try {
+            File tempFile = File.createTempFile("index", ".json", cacheDir);
+            mapper.writeValue(tempFile, index);
+            Files.move(tempFile.toPath(), new File(cacheDir, INDEX_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.error("TemplateCache:saveIndex:could not save index {}", e.getMessage());
+        }
+    }
+
+    private static File await(CompletableFuture<File> download) throws Exception {
+        try {
+            return download.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    private static String digest(File file) throws Exception {
+        MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+        try (InputStream in = new DigestInputStream(new FileInputStream(file), messageDigest)) {
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) != -1) {
+                // read only to update the digest
+            }
+        }
+        return toHex(messageDigest.digest());
+    }
+
+    private static String toHex(byte[] digest) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,25 @@
+package org.incredible.certProcessor.views;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Renders one analysed html template for any number of certificates. The engine of a template is picked once by
+ * {@link TemplateAnalysis}, and must be safe to use from several threads at the same time.
+ */
+public interface TemplateEngine {
+
+    /**
+     * @return name of the engine, like velocity
+     */
+    String getName();
+
+    /**
+     * writes the template with the values of the certificate merged in
+     *
+     * @param htmlVarResolver values of the certificate
+     * @param writer          where the html is written
+     * @throws IOException when the html can not be written
+     */
+    void merge(HTMLVarResolver htmlVarResolver, Writer writer) throws IOException;
+}
@@ -0,0 +1,159 @@
+package org.incredible.certProcessor.views;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Http client shared by the template downloads, keeping connections to the template hosts open between
+ * batches. Requests have connect and read timeouts, and a template downloaded before is revalidated with the
+ * etag and last modified date it was downloaded with, so an unchanged template is not downloaded again.
+ */
+public class TemplateHttpClient {
+
+    private static Logger logger = LoggerFactory.getLogger(TemplateHttpClient.class);
+
+    private static final int MAX_CONNECTIONS = 20;
+
+    private static final int MAX_CONNECTIONS_PER_HOST = 5;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+    private static final int READ_TIMEOUT_MILLIS = 30000;
+
+    private static final int POOL_TIMEOUT_MILLIS = 10000;
+
+    private static TemplateHttpClient instance = new TemplateHttpClient();
+
+    private final CloseableHttpClient client;
+
+    /**
+     * reads the body of a response
+     */
+    public interface BodyReader<T> {
+        T read(InputStream body, String charset) throws IOException;
+    }
+
+    /**
+     * response of a template url, without a body when the template was not modified
+     */
+    public static class Fetched<T> {
+        private final boolean modified;
+        private final T body;
+        private final String etag;
+        private final String lastModified;
+
+        private Fetched(boolean modified, T body, String etag, String lastModified) {
+            this.modified = modified;
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        public boolean isModified() {
+            return modified;
+        }
+
+        public T getBody() {
+            return body;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+    }
+
+    private TemplateHttpClient() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(MAX_CONNECTIONS);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_HOST);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(CONNECT_TIMEOUT_MILLIS)
+                .setSocketTimeout(READ_TIMEOUT_MILLIS)
+                .setConnectionRequestTimeout(POOL_TIMEOUT_MILLIS)
+                .build();
+        client = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+    }
+
+    public static TemplateHttpClient getInstance() {
+        return instance;
+    }
+
+    /**
+     * gets a template url, conditionally when the validators of an earlier download are given
+     *
+     * @param url          template url
+     * @param etag         etag of the earlier download, or null
+     * @param lastModified last modified date of the earlier download, or null
+     * @param reader       reads the body while the response is open
+     * @return response, not modified when the server answered 304
+     * @throws IOException when the url can not be read or answers with an error
+     */
+    public <T> Fetched<T> get(String url, String etag, String lastModified, BodyReader<T> reader) throws IOException {
+        long startTime = System.currentTimeMillis();
+        HttpGet httpGet = new HttpGet(url);
+        if (etag != null) {
+            httpGet.setHeader(HttpHeaders.IF_NONE_MATCH, etag);
+        }
+        if (lastModified != null) {
+            httpGet.setHeader(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+        }
+        try (CloseableHttpResponse response = client.execute(httpGet)) {
+            int status = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            if (status == HttpStatus.SC_NOT_MODIFIED) {
+                EntityUtils.consumeQuietly(entity);
+                logger.info("TemplateHttpClient:get:{} not modified", url);
+                return new Fetched<>(false, null, etag, lastModified);
+            }
+            if (status != HttpStatus.SC_OK || entity == null) {
+                EntityUtils.consumeQuietly(entity);
+                throw new IOException("template url " + url + " answered with status " + status);
+            }
+            String charset = entity.getContentType() != null ? getCharset(entity.getContentType()) : null;
+            T body;
+            try (InputStream in = entity.getContent()) {
+                body = reader.read(in, charset);
+            }
+            logger.info("TemplateHttpClient:get:{} downloaded in {} ms", url, System.currentTimeMillis() - startTime);
+            return new Fetched<>(true, body, headerValue(response.getFirstHeader(HttpHeaders.ETAG)),
+                    headerValue(response.getFirstHeader(HttpHeaders.LAST_MODIFIED)));
+        }
+    }
+
+    private static String getCharset(Header contentType) {
+        for (HeaderElement element : contentType.getElements()) {
+            NameValuePair charset = element.getParameterByName("charset");
+            if (charset != null) {
+                return charset.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static String headerValue(Header header) {
+        return header != null ? header.getValue() : null;
+    }
+}
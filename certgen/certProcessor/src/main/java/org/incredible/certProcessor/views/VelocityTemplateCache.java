@@ -0,0 +1,141 @@
+package org.incredible.certProcessor.views;
+
+import org.apache.velocity.Template;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.RuntimeInstance;
+import org.apache.velocity.runtime.parser.ParseException;
+import org.apache.velocity.runtime.parser.node.SimpleNode;
+import org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps html templates parsed by a velocity engine of its own, so a template is parsed and analysed once and
+ * every certificate only merges its context into the parsed template. Templates are keyed by their identity and
+ * a hash of their content, a changed template under the same identity is analysed again, and the least recently
+ * used templates are dropped once the cache is full.
+ */
+public class VelocityTemplateCache {
+
+    private static Logger logger = LoggerFactory.getLogger(VelocityTemplateCache.class);
+
+    private static final int MAX_TEMPLATES = 64;
+
+    private static final String DEFAULT_TEMPLATE_ID = "velocity";
+
+    private static VelocityTemplateCache instance = new VelocityTemplateCache(MAX_TEMPLATES);
+
+    private final RuntimeInstance engine = new RuntimeInstance();
+
+    private final Map<String, TemplateAnalysis> analyses;
+
+    /**
+     * latest analysis of every template identity, found without hashing while the content is the same string
+     */
+    private final Map<String, TemplateAnalysis> latest = new ConcurrentHashMap<>();
+
+    private VelocityTemplateCache(int maxTemplates) {
+        engine.setProperty(RuntimeConstants.RESOURCE_LOADER, "classpath");
+        engine.setProperty("classpath.resource.loader.class", ClasspathResourceLoader.class.getName());
+        engine.init();
+        analyses = new LinkedHashMap<String, TemplateAnalysis>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TemplateAnalysis> eldest) {
+                if (size() > maxTemplates) {
+                    latest.remove(eldest.getValue().getTemplateId(), eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static VelocityTemplateCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * gets the analysis of the template, parsing it on first use
+     *
+     * @param templateId identity of the template, like its url, can be null
+     * @param content    html content of the template
+     * @return analysis of the template, invalid when the content is not valid velocity
+     */
+    public TemplateAnalysis getAnalysis(String templateId, String content) {
+        String id = templateId != null ? templateId : DEFAULT_TEMPLATE_ID;
+        TemplateAnalysis analysis = latest.get(id);
+        if (analysis != null && analysis.getContent() == content) {
+            return analysis;
+        }
+        String key = id + ":" + hash(content);
+        synchronized (analyses) {
+            analysis = analyses.get(key);
+        }
+        if (analysis == null) {
+            long startTime = System.currentTimeMillis();
+            analysis = analyse(id, content);
+            logger.info("VelocityTemplateCache:getAnalysis:template {} analysed in {} ms, valid {}, unsupported variables {}, engine {}", id,
+                    System.currentTimeMillis() - startTime, analysis.isValid(), analysis.getInvalidVariables(),
+                    analysis.getEngine() != null ? analysis.getEngine().getName() : null);
+            synchronized (analyses) {
+                TemplateAnalysis existing = analyses.putIfAbsent(key, analysis);
+                analysis = existing != null ? existing : analysis;
+            }
+        }
+        latest.put(id, analysis);
+        return analysis;
+    }
+
+    /**
+     * gets the parsed template, parsing it on first use
+     *
+     * @param templateId identity of the template, like its url
+     * @param content    html content of the template
+     * @return parsed template, safe to merge from several threads
+     * @throws ParseException when the template is not valid velocity
+     */
+    public Template getTemplate(String templateId, String content) throws ParseException {
+        TemplateAnalysis analysis = getAnalysis(templateId, content);
+        if (analysis.getTemplate() == null) {
+            throw new ParseException(analysis.getParseError());
+        }
+        return analysis.getTemplate();
+    }
+
+    private TemplateAnalysis analyse(String templateId, String content) {
+        try {
+            SimpleNode node = engine.parse(new StringReader(content), templateId);
+            Template template = new Template();
+            template.setName(templateId);
+            template.setRuntimeServices(engine);
+            template.setData(node);
+            template.initDocument();
+            return TemplateAnalysis.of(templateId, content, template, engine);
+        } catch (ParseException e) {
+            logger.error("VelocityTemplateCache:analyse:template {} is not valid velocity {}", templateId, e.getMessage());
+            return TemplateAnalysis.invalid(templateId, content, e.getMessage());
+        }
+    }
+
+    private static String hash(String content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every jvm has sha-256, fall back to the string hash anyway
+            return Integer.toHexString(content.hashCode()) + "-" + content.length();
+        }
+    }
+}
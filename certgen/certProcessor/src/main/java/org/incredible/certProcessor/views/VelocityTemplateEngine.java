@@ -0,0 +1,39 @@
+package org.incredible.certProcessor.views;
+
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Engine of the templates using velocity directives, the template is parsed once and every certificate only
+ * merges its context into it.
+ */
+public class VelocityTemplateEngine implements TemplateEngine {
+
+    public static final String NAME = "velocity";
+
+    private final Template template;
+
+    private final List<HTMLVars.SupportedVars> resolvers;
+
+    VelocityTemplateEngine(Template template, List<HTMLVars.SupportedVars> resolvers) {
+        this.template = template;
+        this.resolvers = resolvers;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void merge(HTMLVarResolver htmlVarResolver, Writer writer) {
+        VelocityContext context = new VelocityContext();
+        for (HTMLVars.SupportedVars templateVar : resolvers) {
+            context.put(templateVar.getContextKey(), templateVar.resolve(htmlVarResolver));
+        }
+        template.merge(context, writer);
+    }
+}
@@ -4,6 +4,7 @@ public class CertificateResponse {
     private String uuid;
     private String accessCode;
     private String jsonData;
+    private byte[] pdfData;
 
     public CertificateResponse() {
     }
@@ -14,6 +15,14 @@ public class CertificateResponse {
         this.jsonData = jsonData;
     }
 
+    /**
+     * response of a certificate rendered in memory, its pdf is kept in the response instead of a file
+     */
+    public CertificateResponse(String uuid, String accessCode, String jsonData, byte[] pdfData) {
+        this(uuid, accessCode, jsonData);
+        this.pdfData = pdfData;
+    }
+
     public String getUuid() {
         return uuid;
     }
@@ -37,4 +46,12 @@ public class CertificateResponse {
     public void setJsonData(String jsonData) {
         this.jsonData = jsonData;
     }
+
+    public byte[] getPdfData() {
+        return pdfData;
+    }
+
+    public void setPdfData(byte[] pdfData) {
+        this.pdfData = pdfData;
+    }
 }
@@ -0,0 +1,115 @@
+package org.incredible.certProcessor.views;
+
+import com.itextpdf.io.image.ImageDataFactory;
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.PdfObject;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfStream;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.canvas.PdfCanvas;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PdfOutputProfileTest {
+
+    private static final int PAGES = 3;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCompactKeepsOneCopyOfDuplicatedImage() throws IOException {
+        byte[] pdf = pdfWithImageOnEveryPage(png(120, 80));
+        assertEquals(PAGES, countImages(pdf));
+        PdfOutputProfile profile = new PdfOutputProfile(true, 0);
+
+        byte[] compacted = profile.apply(pdf);
+
+        assertEquals(1, countImages(compacted));
+        assertTrue(compacted.length < pdf.length);
+        assertEquals(PAGES, countPages(compacted));
+        assertEquals(1, profile.getPdfCount());
+        assertEquals(pdf.length, profile.getBytesBefore());
+        assertEquals(compacted.length, profile.getBytesAfter());
+    }
+
+    @Test
+    public void testDefaultLeavesPdfAsItIs() throws IOException {
+        byte[] pdf = pdfWithImageOnEveryPage(png(40, 40));
+
+        assertSame(pdf, PdfOutputProfile.DEFAULT.apply(pdf));
+    }
+
+    @Test
+    public void testCompactConversionFailureIsThrown() throws IOException {
+        File directory = folder.newFolder();
+        try {
+            PdfConverter.convertor(new File(directory, "missing.html"), "certificate", directory.getPath(), directory.toURI().toString(),
+                    PdfRenderLimits.NONE, new PdfOutputProfile(true, 0));
+            fail("conversion of a missing html file succeeded");
+        } catch (IOException e) {
+            assertFalse(new File(directory, "certificate.pdf").exists());
+        }
+    }
+
+    /**
+     * the image is added on every page as an image of its own, like the converter does for every certificate
+     */
+    private static byte[] pdfWithImageOnEveryPage(byte[] png) {
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        try (PdfDocument document = new PdfDocument(new PdfWriter(pdf))) {
+            for (int i = 0; i < PAGES; i++) {
+                new PdfCanvas(document.addNewPage()).addImage(ImageDataFactory.create(png), new Rectangle(36, 36, 240, 160), false);
+            }
+        }
+        return pdf.toByteArray();
+    }
+
+    private static int countImages(byte[] pdf) throws IOException {
+        int images = 0;
+        try (PdfDocument document = new PdfDocument(new PdfReader(new ByteArrayInputStream(pdf)))) {
+            for (int i = 1; i < document.getNumberOfPdfObjects(); i++) {
+                PdfObject object = document.getPdfObject(i);
+                if (object instanceof PdfStream && PdfName.Image.equals(((PdfStream) object).getAsName(PdfName.Subtype))) {
+                    images++;
+                }
+            }
+        }
+        return images;
+    }
+
+    private static int countPages(byte[] pdf) throws IOException {
+        try (PdfDocument document = new PdfDocument(new PdfReader(new ByteArrayInputStream(pdf)))) {
+            return document.getNumberOfPages();
+        }
+    }
+
+    /**
+     * png of random pixels, which does not compress, so a duplicate of it shows in the size of the pdf
+     */
+    private static byte[] png(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        return png.toByteArray();
+    }
+}
@@ -0,0 +1,108 @@
+package org.incredible.certProcessor.views;
+
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.canvas.parser.PdfTextExtractor;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Base64;
+
+import static org.junit.Assert.*;
+
+public class PdfStampTest {
+
+    private static final String TEMPLATE = "<html><head><style>"
+            + "body { font-family: Times; font-size: 20px; } div { text-align: center; }"
+            + "</style></head><body>"
+            + "<div>Certificate of completion</div>"
+            + "<div>$courseName</div>"
+            + "<div>$recipientName</div>"
+            + "<div>$issuedDate</div>"
+            + "<div><img src=\"$qrCodeImage\"/></div>"
+            + "</body></html>";
+
+    private TemplateAnalysis analysis;
+
+    private byte[] qrCode;
+
+    private PdfStamp pdfStamp;
+
+    @Before
+    public void setUp() throws Exception {
+        analysis = VelocityTemplateCache.getInstance().getAnalysis("pdf-stamp-test", TEMPLATE);
+        qrCode = qrCode();
+        pdfStamp = PdfStamp.prepare(analysis, resolver("Jane Doe", "Java Basics"), qrCode, null, null,
+                PdfRenderLimits.NONE, PdfOutputProfile.DEFAULT);
+    }
+
+    @Test
+    public void testPlainTemplateIsStamped() {
+        assertTrue(analysis.getEngine() instanceof SpliceTemplateEngine);
+        assertNotNull(pdfStamp);
+    }
+
+    @Test
+    public void testStampedPdfMatchesConvertedPdf() throws IOException {
+        HTMLVarResolver resolver = resolver("John Smith", "Java Basics");
+        byte[] stamped = pdfStamp.stamp(resolver, qrCode);
+        StringWriter html = new StringWriter();
+        analysis.getEngine().merge(resolver, html);
+        byte[] converted = PdfConverter.convert(html.toString(), null);
+
+        assertNotNull(stamped);
+        try (PdfDocument stampedDocument = new PdfDocument(new PdfReader(new ByteArrayInputStream(stamped)));
+             PdfDocument convertedDocument = new PdfDocument(new PdfReader(new ByteArrayInputStream(converted)))) {
+            assertEquals(convertedDocument.getNumberOfPages(), stampedDocument.getNumberOfPages());
+            assertEquals(convertedDocument.getFirstPage().getPageSize().getWidth(), stampedDocument.getFirstPage().getPageSize().getWidth(), 0.01f);
+            assertEquals(convertedDocument.getFirstPage().getPageSize().getHeight(), stampedDocument.getFirstPage().getPageSize().getHeight(), 0.01f);
+            // the background keeps the blank fields as no-break spaces, which draw nothing
+            assertEquals(PdfTextExtractor.getTextFromPage(convertedDocument.getFirstPage()),
+                    PdfTextExtractor.getTextFromPage(stampedDocument.getFirstPage()).replace("\u00a0", ""));
+        }
+    }
+
+    @Test
+    public void testSharedValueDifferentFromBackgroundIsNotStamped() throws IOException {
+        assertNull(pdfStamp.stamp(resolver("John Smith", "Advanced Java"), qrCode));
+    }
+
+    @Test
+    public void testGlyphMissingFromFontIsNotStamped() throws IOException {
+        assertNull(pdfStamp.stamp(resolver("\u738b\u5c0f\u660e", "Java Basics"), qrCode));
+    }
+
+    @Test
+    public void testValueWiderThanFieldIsNotStamped() throws IOException {
+        assertNull(pdfStamp.stamp(resolver(StringUtils.repeat("Johnathan Smithson", " ", 8), "Java Basics"), qrCode));
+    }
+
+    private HTMLVarResolver resolver(String recipientName, String courseName) {
+        HTMLVarResolver resolver = Mockito.mock(HTMLVarResolver.class);
+        Mockito.when(resolver.getRecipientName()).thenReturn(recipientName);
+        Mockito.when(resolver.getCourseName()).thenReturn(courseName);
+        Mockito.when(resolver.getIssuedDate()).thenReturn("17 October 2026");
+        Mockito.when(resolver.getQrCodeImage()).thenReturn("data:image/png;base64," + Base64.getEncoder().encodeToString(qrCode));
+        return resolver;
+    }
+
+    private static byte[] qrCode() throws IOException {
+        BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < 64; x++) {
+            for (int y = 0; y < 64; y++) {
+                image.setRGB(x, y, (x / 8 + y / 8) % 2 == 0 ? 0x000000 : 0xFFFFFF);
+            }
+        }
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        return png.toByteArray();
+    }
+}
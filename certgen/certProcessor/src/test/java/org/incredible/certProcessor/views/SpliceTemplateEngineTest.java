@@ -0,0 +1,82 @@
+package org.incredible.certProcessor.views;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class SpliceTemplateEngineTest {
+
+    private static final String TEMPLATE = "<html><head><style>body { color: #fff; background: #000000; }</style></head>"
+            + "<body><h1>$recipientName</h1><p>$recipientName completed $courseName for US$5</p>"
+            + "<p>$!recipientName / $!courseName / $!dated</p><p>$issuedDate $dated</p>"
+            + "<img src=\"$qrCodeImage\"/><footer>$courseName</footer></body></html>";
+
+    @Test
+    public void testPlainTemplateIsSpliced() {
+        assertTrue(analyse("splice-plain", TEMPLATE).getEngine() instanceof SpliceTemplateEngine);
+    }
+
+    @Test
+    public void testCssColourIsText() {
+        TemplateAnalysis analysis = analyse("splice-colour", "<style>p { color: #fff; }</style><p>$recipientName</p>");
+        assertTrue(analysis.isValid());
+        assertTrue(analysis.getEngine() instanceof SpliceTemplateEngine);
+    }
+
+    @Test
+    public void testSpliceMatchesVelocity() throws IOException {
+        assertSameOutput(TEMPLATE, resolver("Jane Doe", "Java Basics", "2026-10-17T00:00:00Z", "17 October 2026"));
+    }
+
+    @Test
+    public void testSpliceMatchesVelocityForMissingValues() throws IOException {
+        assertSameOutput(TEMPLATE, resolver(null, "Java Basics", null, "17 October 2026"));
+        assertSameOutput(TEMPLATE, resolver("", null, null, null));
+    }
+
+    @Test
+    public void testSpliceMatchesVelocityForValuesLookingLikeTemplates() throws IOException {
+        assertSameOutput(TEMPLATE, resolver("$courseName #if", "US$5 & <b>co</b>", "#end", "\\$dated"));
+    }
+
+    @Test
+    public void testDirectiveIsLeftToVelocity() {
+        TemplateAnalysis analysis = analyse("splice-directive", "<p>#if($recipientName)$recipientName#end</p>");
+        assertTrue(analysis.getEngine() instanceof VelocityTemplateEngine);
+    }
+
+    @Test
+    public void testMethodCallIsLeftToVelocity() {
+        TemplateAnalysis analysis = analyse("splice-method", "<p>$recipientName.toUpperCase() $courseName</p>");
+        assertTrue(analysis.getEngine() instanceof VelocityTemplateEngine);
+    }
+
+    private static void assertSameOutput(String content, HTMLVarResolver resolver) throws IOException {
+        // $! references are spliced, though the template validation reports them as unsupported
+        TemplateAnalysis analysis = analyse("splice-" + content.hashCode(), content);
+        assertTrue(analysis.getEngine() instanceof SpliceTemplateEngine);
+        StringWriter spliced = new StringWriter();
+        analysis.getEngine().merge(resolver, spliced);
+        StringWriter merged = new StringWriter();
+        new VelocityTemplateEngine(analysis.getTemplate(), analysis.getResolvers()).merge(resolver, merged);
+        assertEquals(merged.toString(), spliced.toString());
+    }
+
+    private static TemplateAnalysis analyse(String templateId, String content) {
+        return VelocityTemplateCache.getInstance().getAnalysis(templateId, content);
+    }
+
+    private static HTMLVarResolver resolver(String recipientName, String courseName, String dated, String issuedDate) {
+        HTMLVarResolver resolver = Mockito.mock(HTMLVarResolver.class);
+        Mockito.when(resolver.getRecipientName()).thenReturn(recipientName);
+        Mockito.when(resolver.getCourseName()).thenReturn(courseName);
+        Mockito.when(resolver.getDated()).thenReturn(dated);
+        Mockito.when(resolver.getIssuedDate()).thenReturn(issuedDate);
+        Mockito.when(resolver.getQrCodeImage()).thenReturn("0f3c.png");
+        return resolver;
+    }
+}
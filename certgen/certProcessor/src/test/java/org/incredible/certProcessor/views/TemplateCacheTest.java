@@ -0,0 +1,156 @@
+package org.incredible.certProcessor.views;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class TemplateCacheTest {
+
+    private static final String URL_A = "https://templates/a.zip";
+
+    private static final String URL_B = "https://templates/b.zip";
+
+    private static final String URL_C = "https://templates/c.zip";
+
+    private static final long MAX_BYTES = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testConcurrentGetsDownloadOnce() throws Exception {
+        TemplateCache cache = new TemplateCache(folder.newFolder("cache"), MAX_BYTES);
+        AtomicInteger downloads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        TemplateCache.TemplateSource source = (directory, cached) -> {
+            downloads.incrementAndGet();
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return new TemplateCache.Download(zip(directory, "a", 100), "v1");
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<File> first = executor.submit(() -> cache.get(URL_A, source));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            Future<File> second = executor.submit(() -> cache.get(URL_A, source));
+            Thread.sleep(100);
+            release.countDown();
+
+            assertEquals(first.get(10, TimeUnit.SECONDS), second.get(10, TimeUnit.SECONDS));
+            assertEquals(1, downloads.get());
+            assertTrue(first.get().isFile());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testEvictionKeepsPinnedAndCurrentTemplates() throws Exception {
+        TemplateCache cache = new TemplateCache(folder.newFolder("cache"), 1500);
+        cache.pin(URL_A);
+        File a = cache.get(URL_A, source("a", 1000, "a1"));
+        File b = cache.get(URL_B, source("b", 1000, "b1"));
+        File c = cache.get(URL_C, source("c", 1000, "c1"));
+
+        assertTrue("pinned template is kept", a.isFile());
+        assertFalse("least recently used template is evicted", b.isFile());
+        assertTrue("template just downloaded is kept", c.isFile());
+        assertEquals(a, cache.get(URL_A, failingSource()));
+
+        cache.unpin(URL_A);
+        cache.get(URL_B, source("b", 1000, "b2"));
+
+        assertFalse("unpinned template is evicted again", a.isFile());
+    }
+
+    @Test
+    public void testNewInstanceLoadsIndex() throws Exception {
+        File cacheDir = folder.newFolder("cache");
+        TemplateCache cache = new TemplateCache(cacheDir, MAX_BYTES);
+        cache.pin(URL_B);
+        File a = cache.get(URL_A, source("a", 100, "a1"));
+        cache.get(URL_B, source("b", 100, "b1"));
+
+        TemplateCache restarted = new TemplateCache(cacheDir, MAX_BYTES);
+
+        assertTrue(new File(cacheDir, "index.json").isFile());
+        assertEquals(a, restarted.get(URL_A, failingSource()));
+        assertTrue(restarted.getPinned().contains(URL_B));
+        assertFalse(restarted.getPinned().contains(URL_A));
+    }
+
+    @Test
+    public void testNotModifiedReusesCachedZip() throws Exception {
+        File cacheDir = folder.newFolder("cache");
+        File a = new TemplateCache(cacheDir, MAX_BYTES).get(URL_A, source("a", 100, "a1"));
+        // the template was checked long ago, so the next get revalidates it
+        File indexFile = new File(cacheDir, "index.json");
+        ObjectMapper mapper = new ObjectMapper();
+        Map<String, TemplateCache.Entry> index = mapper.readValue(indexFile, new TypeReference<Map<String, TemplateCache.Entry>>() {
+        });
+        index.get(URL_A).checkedAt = 0;
+        mapper.writeValue(indexFile, index);
+        TemplateCache cache = new TemplateCache(cacheDir, MAX_BYTES);
+        AtomicInteger revalidations = new AtomicInteger();
+
+        File revalidated = cache.get(URL_A, (directory, cached) -> {
+            revalidations.incrementAndGet();
+            assertNotNull(cached);
+            assertEquals("a1", cached.etag);
+            return null;
+        });
+
+        assertEquals(1, revalidations.get());
+        assertEquals(a, revalidated);
+        assertTrue(revalidated.isFile());
+        assertEquals(a, cache.get(URL_A, failingSource()));
+    }
+
+    private static TemplateCache.TemplateSource source(String name, int size, String etag) {
+        return (directory, cached) -> new TemplateCache.Download(zip(directory, name, size), etag);
+    }
+
+    private static TemplateCache.TemplateSource failingSource() {
+        return (directory, cached) -> {
+            throw new IOException("template is expected to be cached");
+        };
+    }
+
+    /**
+     * zip of a template with an image of random bytes, so its size is about the given size and its digest is its own
+     */
+    private static File zip(File directory, String name, int size) throws IOException {
+        File file = new File(directory, name + ".zip");
+        byte[] image = new byte[size];
+        new Random().nextBytes(image);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            out.putNextEntry(new ZipEntry(TemplateArchive.INDEX_HTML));
+            out.write(("<html><body>" + name + "</body></html>").getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("image.bin"));
+            out.write(image);
+            out.closeEntry();
+        }
+        return file;
+    }
+}
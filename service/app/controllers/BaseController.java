@@ -117,6 +117,31 @@ public class BaseController extends Controller {
 
 	}
 
+	/**
+	 * this method is used to handle the requests whose body is too large to be
+	 * mapped in memory, the body is read as raw bytes and only its header is
+	 * mapped and validated, the actor reads the rest of it from the body file
+	 *
+	 * @param req
+	 * @param validatorFunction
+	 * @param operation
+	 * @return
+	 */
+	public CompletionStage<Result> handleStreamedRequest(play.mvc.Http.Request req, RequestValidatorFunction validatorFunction,
+			String operation) {
+		Request request = null;
+		try {
+			request = RequestMapper.mapStreamedRequest(req);
+			if (validatorFunction != null) {
+				validatorFunction.apply(request);
+			}
+			return new RequestHandler().handleRequest(request, httpExecutionContext, operation);
+		} catch (Exception ex) {
+			RequestMapper.deleteStreamedBody(request);
+			return RequestHandler.handleFailureResponse(ex, httpExecutionContext);
+		}
+	}
+
 	/**
 	 * this method is used to handle the only GET requests.
 	 *
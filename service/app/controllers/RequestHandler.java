@@ -1,7 +1,11 @@
 package controllers;
 
-import akka.pattern.Patterns;
+import akka.pattern.AskTimeoutException;
+import akka.pattern.PatternsCS;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
 import akka.util.Timeout;
+import org.sunbird.ActorServiceException;
 import org.sunbird.BaseException;
 import org.sunbird.message.IResponseMessage;
 import org.sunbird.message.ResponseCode;
@@ -14,13 +18,13 @@ import play.libs.Json;
 import play.libs.concurrent.HttpExecutionContext;
 import play.mvc.Result;
 import play.mvc.Results;
-import scala.concurrent.Await;
-import scala.concurrent.Future;
 import org.sunbird.JsonKey;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 
 /**
@@ -28,9 +32,13 @@ import java.util.concurrent.TimeUnit;
  * @author amitkumar
  */
 public class RequestHandler extends BaseController {
+    private static final String RETRY_AFTER = "Retry-After";
+    private static final String NDJSON = "application/x-ndjson";
 
     /**
-     * this methis responsible to handle the request and ask from actor
+     * this methis responsible to handle the request and ask from actor.
+     * The ask is never awaited on the calling thread, the actor reply (or the ask timeout) completes the
+     * returned stage so Play threads are released as soon as the request is handed over to the actor.
      * @param request
      * @param httpExecutionContext
      * @param operation
@@ -38,16 +46,14 @@ public class RequestHandler extends BaseController {
      * @throws Exception
      */
     public CompletionStage<Result> handleRequest(Request request, HttpExecutionContext httpExecutionContext, String operation) throws Exception {
-        Object obj;
-        CompletableFuture<String> cf = new CompletableFuture<>();
         request.setOperation(operation);
-        //ProjectLogger.log(String.format("%s:%s:Requested operation %s",this.getClass().getSimpleName(),"handleRequest",operation), LoggerEnum.DEBUG.name());
-        //startTrace("handleRequest");
-        Timeout t = new Timeout(Long.valueOf(request.getTimeout()), TimeUnit.SECONDS);
-        Future<Object> future = Patterns.ask(getActorRef(operation), request, t);
-        obj = Await.result(future, t.duration());
-        //endTrace("handleRequest");
-        return handleResponse(obj,httpExecutionContext);
+        Timeout timeout = new Timeout(request.getTimeout(), TimeUnit.SECONDS);
+        CompletionStage<Object> future = PatternsCS.ask(getActorRef(operation), request, timeout);
+        return future
+                .handleAsync((obj, exception) -> null != exception
+                        ? handleFailureResponse(exception, httpExecutionContext)
+                        : handleResponse(obj, httpExecutionContext), httpExecutionContext.current())
+                .thenCompose(Function.identity());
     }
 
     /**
@@ -60,13 +66,32 @@ public class RequestHandler extends BaseController {
 
         Response response = new Response();
         CompletableFuture<JsonNode> future = new CompletableFuture<>();
-        if (exception instanceof BaseException) {
+        if (exception instanceof CompletionException && null != ((CompletionException) exception).getCause()) {
+            exception = ((CompletionException) exception).getCause();
+        }
+        if (exception instanceof AskTimeoutException) {
+            response.setResponseCode(ResponseCode.SERVICE_UNAVAILABLE);
+            response.put(JsonKey.MESSAGE, localizerObject.getMessage(IResponseMessage.REQUEST_TIMEOUT, null));
+            future.complete(Json.toJson(response));
+            return future.thenApplyAsync(json -> Results.status(ResponseCode.SERVICE_UNAVAILABLE.getCode(), json), httpExecutionContext.current());
+        } else if (exception instanceof ActorServiceException.TooManyRequests) {
+            ActorServiceException.TooManyRequests ex = (ActorServiceException.TooManyRequests) exception;
+            response.setResponseCode(ResponseCode.TOO_MANY_REQUESTS);
+            response.put(JsonKey.MESSAGE, ex.getMessage());
+            future.complete(Json.toJson(response));
+            return future.thenApplyAsync(json -> Results.status(ResponseCode.TOO_MANY_REQUESTS.getCode(), json)
+                    .withHeader(RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds())), httpExecutionContext.current());
+        } else if (exception instanceof BaseException) {
             BaseException ex = (BaseException) exception;
             response.setResponseCode(ResponseCode.BAD_REQUEST);
             response.put(JsonKey.MESSAGE, ex.getMessage());
             future.complete(Json.toJson(response));
             if (ex.getResponseCode() == Results.badRequest().status()) {
                 return future.thenApplyAsync(Results::badRequest, httpExecutionContext.current());
+            } else if (ex.getResponseCode() == ResponseCode.RESOURCE_NOT_FOUND.getCode()) {
+                response.setResponseCode(ResponseCode.RESOURCE_NOT_FOUND);
+                return CompletableFuture.completedFuture(Json.toJson(response))
+                        .thenApplyAsync(Results::notFound, httpExecutionContext.current());
             } else {
                 return future.thenApplyAsync(Results::internalServerError, httpExecutionContext.current());
             }
@@ -102,8 +127,22 @@ public class RequestHandler extends BaseController {
      */
 
     public static CompletionStage<Result> handleSuccessResponse(Response response, HttpExecutionContext httpExecutionContext) {
+        if (response.get(JsonKey.STREAM) instanceof Source) {
+            return handleStreamResponse((Source<Object, ?>) response.get(JsonKey.STREAM), httpExecutionContext);
+        }
         CompletableFuture<JsonNode> future = new CompletableFuture<>();
         future.complete(Json.toJson(response));
         return future.thenApplyAsync(Results::ok, httpExecutionContext.current());
     }
+
+    /**
+     * This method will send every record of the source as one line of json, with chunked transfer encoding.
+     *
+     * @param records
+     * @return
+     */
+    public static CompletionStage<Result> handleStreamResponse(Source<Object, ?> records, HttpExecutionContext httpExecutionContext) {
+        Source<ByteString, ?> body = records.map(record -> ByteString.fromString(Json.stringify(Json.toJson(record)) + "\n"));
+        return CompletableFuture.supplyAsync(() -> Results.ok().chunked(body).as(NDJSON), httpExecutionContext.current());
+    }
 }
@@ -37,6 +37,39 @@ public class CertValidator {
         }
     }
 
+    /**
+     * This method will validate generate certificate request read from a streamed body, data entries are
+     * validated one by one while generating so only their count is checked here
+     *
+     * @param request
+     * @throws BaseException
+     */
+    public static void validateGenerateCertStreamRequest(Request request) throws BaseException {
+
+        Map<String, Object> certReq = (Map<String, Object>) request.getRequest().get(JsonKey.CERTIFICATE);
+        checkMandatoryParamsPresent(certReq, JsonKey.CERTIFICATE, Arrays.asList(JsonKey.COURSE_NAME, JsonKey.NAME, JsonKey.HTML_TEMPLATE, JsonKey.TAG, JsonKey.ORG_ID));
+        if (!(certReq.get(JsonKey.DATA_COUNT) instanceof Integer) || (int) certReq.get(JsonKey.DATA_COUNT) == 0) {
+            throw new BaseException("MANDATORY_PARAMETER_MISSING",
+                    MessageFormat.format(IResponseMessage.MANDATORY_PARAMETER_MISSING, JsonKey.CERTIFICATE + "." + JsonKey.DATA),
+                    ResponseCode.CLIENT_ERROR.getCode());
+        }
+        validateCertIssuer((Map<String, Object>) certReq.get(JsonKey.ISSUER));
+        validateCertSignatoryList((List<Map<String, Object>>) certReq.get(JsonKey.SIGNATORY_LIST));
+        if (certReq.containsKey(JsonKey.KEYS)) {
+            validateKeys((Map<String, Object>) certReq.get(JsonKey.KEYS));
+        }
+    }
+
+    /**
+     * This method will validate register and unregister template request
+     *
+     * @param request
+     * @throws BaseException
+     */
+    public static void validateTemplateRequest(Request request) throws BaseException {
+        checkMandatoryParamsPresent(request.getRequest(), JsonKey.REQUEST, Arrays.asList(JsonKey.HTML_TEMPLATE));
+    }
+
     private static void validateCertSignatoryList(List<Map<String, Object>> signatoryList) throws BaseException {
         checkMandatoryParamsPresent(signatoryList, JsonKey.CERTIFICATE + "." + JsonKey.SIGNATORY_LIST, Arrays.asList(JsonKey.NAME, JsonKey.ID, JsonKey.DESIGNATION, JsonKey.SIGNATORY_IMAGE));
     }
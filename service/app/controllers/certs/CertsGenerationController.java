@@ -2,10 +2,13 @@ package controllers.certs;
 
 import java.util.concurrent.CompletionStage;
 
+import org.sunbird.JsonKey;
 import org.sunbird.cert.actor.operation.CertActorOperation;
+import org.sunbird.cert.idempotency.IdempotencyCache;
 
 import controllers.BaseController;
 import org.sunbird.request.Request;
+import play.mvc.BodyParser;
 import play.mvc.Result;
 
 /**
@@ -16,22 +19,116 @@ import play.mvc.Result;
 public class CertsGenerationController  extends BaseController{
 
 
+	private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
 	/**
 	   * This method will accept request for certificate generation.
 	   * it will do request validation and processing of request.
+	   * A request with an Idempotency-Key header, or with a params.msgid, which repeats a running or recently
+	   * finished request gets the reply of that request instead of generating again.
 	   * @return a CompletableFuture of success response
 	   */
 	  public CompletionStage<Result> generateCerificate() {
+		String headerKey = request().getHeaders().get(IDEMPOTENCY_KEY_HEADER).orElse(null);
 		CompletionStage<Result> response = handleRequest(request(),
 				request -> {
 					Request req = (Request) request;
 					new CertValidator().validateGenerateCertRequest(req);
+					req.getRequest().remove(JsonKey.IDEMPOTENCY_KEY);
+					String idempotencyKey = IdempotencyCache.getKey(headerKey, req);
+					if (null != idempotencyKey) {
+						req.getRequest().put(JsonKey.IDEMPOTENCY_KEY, idempotencyKey);
+					}
 					return null;
 					},
 				CertActorOperation.GENERATE_CERTIFICATE.getOperation());
 	    return response;
 	  }
 	
+	  /**
+	   * This method will accept request for certificate generation with a streamed response.
+	   * The result of every recipient is sent as a newline delimited json record as soon as it is uploaded,
+	   * followed by a summary record.
+	   * The body is not parsed in memory, recipients are read from it one at a time while generating.
+	   * @return a CompletableFuture of chunked response
+	   */
+	  @BodyParser.Of(BodyParser.Raw.class)
+	  public CompletionStage<Result> generateCertificateStream() {
+		CompletionStage<Result> response = handleStreamedRequest(request(),
+				request -> {
+					Request req = (Request) request;
+					CertValidator.validateGenerateCertStreamRequest(req);
+					return null;
+					},
+				CertActorOperation.GENERATE_CERTIFICATE_STREAM.getOperation());
+	    return response;
+	  }
+
+	  /**
+	   * This method will accept request for certificate generation as a background job.
+	   * it will do request validation and return the job id without waiting for the generation.
+	   * @return a CompletableFuture of job accepted response
+	   */
+	  public CompletionStage<Result> generateCertificateAsync() {
+		CompletionStage<Result> response = handleRequest(request(),
+				request -> {
+					Request req = (Request) request;
+					new CertValidator().validateGenerateCertRequest(req);
+					return null;
+					},
+				CertActorOperation.GENERATE_CERTIFICATE_ASYNC.getOperation());
+	    return response;
+	  }
+
+	  /**
+	   * This method will return the status and the results so far of a certificate generation job.
+	   * @param jobId id returned by the async generate api
+	   * @return a CompletableFuture of job status response
+	   */
+	  public CompletionStage<Result> getJobStatus(String jobId) {
+		Request request = new Request();
+		request.put(JsonKey.JOB_ID, jobId);
+		return handleRequest(request, CertActorOperation.GET_JOB_STATUS.getOperation());
+	  }
+
+	  /**
+	   * This method will register an html template ahead of the batches using it.
+	   * The template is downloaded, analysed and one dummy certificate is rendered with it, the time taken is
+	   * returned and the template is kept in the template cache until it is unregistered.
+	   * @return a CompletableFuture of warm up report response
+	   */
+	  public CompletionStage<Result> registerTemplate() {
+		CompletionStage<Result> response = handleRequest(request(),
+				request -> {
+					CertValidator.validateTemplateRequest((Request) request);
+					return null;
+					},
+				CertActorOperation.REGISTER_TEMPLATE.getOperation());
+	    return response;
+	  }
+
+	  /**
+	   * This method will unregister an html template, it can be evicted from the template cache again.
+	   * @return a CompletableFuture of success response
+	   */
+	  public CompletionStage<Result> unregisterTemplate() {
+		CompletionStage<Result> response = handleRequest(request(),
+				request -> {
+					CertValidator.validateTemplateRequest((Request) request);
+					return null;
+					},
+				CertActorOperation.UNREGISTER_TEMPLATE.getOperation());
+	    return response;
+	  }
+
+	  /**
+	   * This method will return the registered html templates.
+	   * @return a CompletableFuture of templates response
+	   */
+	  public CompletionStage<Result> getTemplates() {
+		return handleRequest(new Request(), CertActorOperation.GET_TEMPLATES.getOperation());
+	  }
+
 	  public CompletionStage<Result> generateSignUrl() {
 			CompletionStage<Result> response = handleRequest(request(),
 					null,
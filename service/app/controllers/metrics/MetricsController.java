@@ -0,0 +1,24 @@
+package controllers.metrics;
+
+import controllers.BaseController;
+import java.util.concurrent.CompletionStage;
+
+import org.sunbird.JsonKey;
+import org.sunbird.request.Request;
+
+import play.mvc.Result;
+
+/**
+ * This controller class will expose the metrics of the service, like the throughput of the generation stages.
+ */
+public class MetricsController extends BaseController {
+
+  /**
+   * This action method returns the current metrics of the service.
+   *
+   * @return a CompletableFuture of metrics response
+   */
+  public CompletionStage<Result> getMetrics() {
+    return handleRequest(new Request(), JsonKey.GET_METRICS);
+  }
+}
@@ -4,13 +4,23 @@
 package utils;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.commons.io.FileUtils;
 import org.sunbird.ActorServiceException;
 import org.sunbird.BaseException;
+import org.sunbird.JsonKey;
+import org.sunbird.cert.processor.CertificateRequestReader;
 import org.sunbird.message.IResponseMessage;
 import org.sunbird.message.Localizer;
 import org.sunbird.message.ResponseCode;
+import org.sunbird.request.Request;
 import play.libs.Json;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
 /**
  * This class will map the requested json data into custom class.
  *
@@ -46,5 +56,47 @@ public class RequestMapper {
                     ResponseCode.CLIENT_ERROR.getCode());
         }
     }
-}
 
+    /**
+     * Method to map a request whose body is read as raw bytes, the body is kept in a file owned by the request
+     * and only the part without certificate.data is mapped, data entries are read from the file while generating.
+     *
+     * @param req play mvc request
+     * @exception BaseException when the body is not a valid request
+     * @return request with the body file path in requestBodyFile
+     */
+    public static Request mapStreamedRequest(play.mvc.Http.Request req) throws BaseException {
+        if (req == null || req.body() == null || req.body().asRaw() == null) throw new ActorServiceException.InvalidRequestData(
+                IResponseMessage.INVALID_REQUESTED_DATA,
+                Localizer.getInstance().getMessage(IResponseMessage.INVALID_REQUESTED_DATA, null),
+                ResponseCode.CLIENT_ERROR.getCode());
+        Path bodyFile = null;
+        try {
+            bodyFile = Files.createTempFile("cert-request", ".json");
+            Files.move(req.body().asRaw().asFile().toPath(), bodyFile, StandardCopyOption.REPLACE_EXISTING);
+            Map<String, Object> header = new CertificateRequestReader(bodyFile.toFile()).readHeader();
+            Request request = Json.fromJson(Json.toJson(header), Request.class);
+            request.getRequest().put(JsonKey.REQUEST_BODY_FILE, bodyFile.toString());
+            return request;
+        } catch (Exception e) {
+            if (null != bodyFile) {
+                FileUtils.deleteQuietly(bodyFile.toFile());
+            }
+            throw new ActorServiceException.InvalidRequestData(
+                    IResponseMessage.INVALID_REQUESTED_DATA,
+                    Localizer.getInstance().getMessage(IResponseMessage.INVALID_REQUESTED_DATA, null),
+                    ResponseCode.CLIENT_ERROR.getCode());
+        }
+    }
+
+    /**
+     * Method to delete the body file of a streamed request which will not reach the actor
+     *
+     * @param request request mapped by mapStreamedRequest
+     */
+    public static void deleteStreamedBody(Request request) {
+        if (null != request && null != request.getRequest().get(JsonKey.REQUEST_BODY_FILE)) {
+            FileUtils.deleteQuietly(new File((String) request.getRequest().get(JsonKey.REQUEST_BODY_FILE)));
+        }
+    }
+}
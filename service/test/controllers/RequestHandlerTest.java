@@ -0,0 +1,129 @@
+package controllers;
+
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.actor.UntypedAbstractActor;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sunbird.actor.core.ActorCache;
+import org.sunbird.request.Request;
+import org.sunbird.response.Response;
+import play.libs.concurrent.HttpExecutionContext;
+import play.mvc.Result;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test for the controller to actor path, it keeps many slow generations in flight at once and
+ * times every task run on the "Play" threads while they run.
+ */
+public class RequestHandlerTest {
+
+    private static final String SLOW_OPERATION = "slowGenerateCert";
+    private static final int PLAY_THREADS = 4;
+    private static final int CONCURRENT_REQUESTS = 200;
+    private static final long GENERATION_DELAY_MILLIS = 500;
+
+    private ActorSystem system;
+    private ExecutorService playPool;
+
+    /**
+     * Replies only after a delay, the way a long certificate generation would.
+     */
+    public static class SlowGenerationActor extends UntypedAbstractActor {
+        @Override
+        public void onReceive(Object message) {
+            Response response = new Response();
+            response.put("response", "Success");
+            getContext().getSystem().scheduler().scheduleOnce(
+                    FiniteDuration.create(GENERATION_DELAY_MILLIS, TimeUnit.MILLISECONDS),
+                    getSender(), response, getContext().dispatcher(), getSelf());
+        }
+    }
+
+    @Before
+    public void setUp() {
+        system = ActorSystem.create("requestHandlerTest");
+        ActorCache.getActorCache().put(SLOW_OPERATION, system.actorOf(Props.create(SlowGenerationActor.class)));
+        playPool = Executors.newFixedThreadPool(PLAY_THREADS);
+    }
+
+    @After
+    public void tearDown() {
+        ActorCache.getActorCache().remove(SLOW_OPERATION);
+        playPool.shutdownNow();
+        system.terminate();
+    }
+
+    @Test
+    public void testSlowGenerationsDoNotHoldPlayThreads() throws Exception {
+        // every task run on the play pool is timed, the ones handing requests over as well as the ones writing replies
+        AtomicLong longestTaskNanos = new AtomicLong();
+        AtomicLong busyNanos = new AtomicLong();
+        Executor timedPlayPool = task -> playPool.execute(() -> {
+            long taskStart = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                long taskNanos = System.nanoTime() - taskStart;
+                longestTaskNanos.accumulateAndGet(taskNanos, Math::max);
+                busyNanos.addAndGet(taskNanos);
+            }
+        });
+        HttpExecutionContext httpExecutionContext = new HttpExecutionContext(timedPlayPool);
+        // one request first, so class loading is not timed as if it were waiting on the generation
+        submit(timedPlayPool, httpExecutionContext).get(30, TimeUnit.SECONDS);
+        longestTaskNanos.set(0);
+        busyNanos.set(0);
+
+        List<CompletableFuture<Result>> results = new ArrayList<>();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+            results.add(submit(timedPlayPool, httpExecutionContext));
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+        long totalMillis = System.currentTimeMillis() - start;
+        long longestTaskMillis = TimeUnit.NANOSECONDS.toMillis(longestTaskNanos.get());
+        long busyMillis = TimeUnit.NANOSECONDS.toMillis(busyNanos.get());
+        String stats = CONCURRENT_REQUESTS + " slow generations on " + PLAY_THREADS + " play threads, completed in "
+                + totalMillis + " ms, play threads busy " + busyMillis + " ms in all, longest task " + longestTaskMillis + " ms";
+
+        for (CompletableFuture<Result> result : results) {
+            Assert.assertEquals(stats, 200, result.get().status());
+        }
+        // a blocking ask would hold its play thread for the whole generation
+        Assert.assertTrue(stats, longestTaskMillis < GENERATION_DELAY_MILLIS);
+        Assert.assertTrue(stats, busyMillis < CONCURRENT_REQUESTS * GENERATION_DELAY_MILLIS / 10);
+        // A blocking ask would need CONCURRENT_REQUESTS / PLAY_THREADS rounds of GENERATION_DELAY_MILLIS.
+        Assert.assertTrue(stats, totalMillis < (CONCURRENT_REQUESTS / PLAY_THREADS) * GENERATION_DELAY_MILLIS / 4);
+    }
+
+    private static CompletableFuture<Result> submit(Executor playPool, HttpExecutionContext httpExecutionContext) {
+        CompletableFuture<Result> result = new CompletableFuture<>();
+        playPool.execute(() -> {
+            try {
+                new RequestHandler().handleRequest(new Request(), httpExecutionContext, SLOW_OPERATION)
+                        .whenComplete((res, ex) -> {
+                            if (null != ex) {
+                                result.completeExceptionally(ex);
+                            } else {
+                                result.complete(res);
+                            }
+                        });
+            } catch (Exception ex) {
+                result.completeExceptionally(ex);
+            }
+        });
+        return result;
+    }
+}
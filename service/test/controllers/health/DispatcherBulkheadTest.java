@@ -0,0 +1,100 @@
+package controllers.health;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.actor.UntypedAbstractActor;
+import akka.pattern.PatternsCS;
+import akka.util.Timeout;
+import com.typesafe.config.ConfigFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sunbird.actor.core.ActorConfig;
+import org.sunbird.cert.actor.CertificateGeneratorActor;
+import org.sunbird.health.actor.HealthActor;
+import org.sunbird.request.Request;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saturates the generation dispatcher with blocking work and checks that health calls, which run on their
+ * own dispatcher, keep the latency they have without load.
+ */
+public class DispatcherBulkheadTest {
+
+    private static final int GENERATION_ACTORS = 16;
+    private static final int GENERATIONS_PER_ACTOR = 10;
+    private static final long GENERATION_MILLIS = 200;
+    private static final int HEALTH_CALLS = 20;
+
+    private ActorSystem system;
+
+    /**
+     * Holds its thread the way a generation blocking on its batch would.
+     */
+    public static class BlockingGenerationActor extends UntypedAbstractActor {
+        @Override
+        public void onReceive(Object message) throws Exception {
+            Thread.sleep(GENERATION_MILLIS);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        system = ActorSystem.create("dispatcherBulkheadTest", ConfigFactory.load().getConfig("certActorSystem"));
+    }
+
+    @After
+    public void tearDown() {
+        system.terminate();
+    }
+
+    @Test
+    public void testHealthLatencyStaysFlatUnderGenerationLoad() throws Exception {
+        String generationDispatcher = CertificateGeneratorActor.class.getAnnotation(ActorConfig.class).dispatcher();
+        String healthDispatcher = HealthActor.class.getAnnotation(ActorConfig.class).dispatcher();
+        Assert.assertNotEquals(generationDispatcher, healthDispatcher);
+
+        ActorRef health = system.actorOf(Props.create(HealthActor.class).withDispatcher(healthDispatcher));
+        // same health actor placed on the generation dispatcher, to show the load really saturates it
+        ActorRef sharedHealth = system.actorOf(Props.create(HealthActor.class).withDispatcher(generationDispatcher));
+        long idleMillis = maxLatency(health);
+
+        List<ActorRef> generations = new ArrayList<>();
+        for (int i = 0; i < GENERATION_ACTORS; i++) {
+            generations.add(system.actorOf(Props.create(BlockingGenerationActor.class).withDispatcher(generationDispatcher)));
+        }
+        for (int i = 0; i < GENERATIONS_PER_ACTOR; i++) {
+            generations.forEach(generation -> generation.tell(new Request(), ActorRef.noSender()));
+        }
+        Thread.sleep(GENERATION_MILLIS / 2);
+
+        long loadedMillis = maxLatency(health);
+        long sharedMillis = latency(sharedHealth);
+        String latencies = "health max latency idle " + idleMillis + " ms, under generation load " + loadedMillis
+                + " ms, on generation dispatcher " + sharedMillis + " ms";
+
+        Assert.assertTrue(latencies, sharedMillis >= GENERATION_MILLIS);
+        Assert.assertTrue(latencies, loadedMillis < Math.max(50, idleMillis * 5));
+    }
+
+    private long maxLatency(ActorRef health) throws Exception {
+        long max = 0;
+        for (int i = 0; i < HEALTH_CALLS; i++) {
+            max = Math.max(max, latency(health));
+        }
+        return max;
+    }
+
+    private long latency(ActorRef health) throws Exception {
+        Request request = new Request();
+        request.setOperation("health");
+        long start = System.nanoTime();
+        PatternsCS.ask(health, request, new Timeout(30, TimeUnit.SECONDS)).toCompletableFuture().get();
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}